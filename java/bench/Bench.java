@@ -0,0 +1,79 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A small timing harness for the benchmarks in this directory.
+ *
+ * Each case is run WARMUP times untimed so the JIT, the statement caches
+ * and the Postgres buffers settle, then ITERATIONS times with every call
+ * timed on its own.  The results are printed as one table at the end.
+ */
+public class Bench {
+
+   // untimed calls before measuring, -Dairline.bench.warmup
+   public static final int WARMUP = Integer.getInteger("airline.bench.warmup", 200);
+
+   // timed calls per case, -Dairline.bench.iterations
+   public static final int ITERATIONS = Integer.getInteger("airline.bench.iterations", 1000);
+
+   /**
+    * One benchmarked call.  Throwing counts the call as failed.
+    */
+   public interface Op {
+      void run() throws Exception;
+   }
+
+   private final List<List<String>> _results = new ArrayList<List<String>>();
+
+   public Bench() {
+      this._results.add(Arrays.asList("benchmark", "ops/s", "mean_us", "p50_us", "p99_us", "max_us", "failed"));
+   }
+
+   /**
+    * Times the operation and records a result line under the given name.
+    */
+   public void run(String name, Op op) {
+      for (int i = 0; i < WARMUP; i++) {
+         try {
+            op.run();
+         } catch (Exception e) {
+            // counted in the measured calls.
+         }
+      }
+      long[] nanos = new long[ITERATIONS];
+      long total = 0;
+      int failed = 0;
+      for (int i = 0; i < ITERATIONS; i++) {
+         long start = System.nanoTime();
+         try {
+            op.run();
+         } catch (Exception e) {
+            failed++;
+         }
+         nanos[i] = System.nanoTime() - start;
+         total += nanos[i];
+      }
+      Arrays.sort(nanos);
+      this._results.add(Arrays.asList(
+         name,
+         String.format("%.0f", ITERATIONS / (total / 1e9)),
+         micros(total / ITERATIONS),
+         micros(nanos[ITERATIONS / 2]),
+         micros(nanos[Math.min(ITERATIONS - 1, (int) Math.ceil(ITERATIONS * 0.99) - 1)]),
+         micros(nanos[ITERATIONS - 1]),
+         String.valueOf(failed)));
+   }//end run
+
+   /**
+    * Prints every result recorded so far.
+    */
+   public void report() {
+      System.out.printf("warmup=%d iterations=%d%n", WARMUP, ITERATIONS);
+      TableRenderer.render(this._results, System.out);
+   }
+
+   private static String micros(long nanos) {
+      return String.format("%.1f", nanos / 1e3);
+   }
+}//end Bench
@@ -0,0 +1,111 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hammers BookingEngine from many threads and checks that no flight was
+ * oversold.
+ *
+ * The benchmark creates its own flight instances (IDs from 900000 up) on
+ * an existing flight, books them from every thread until the requested
+ * number of bookings is done, then compares SeatsSold with the reserved
+ * Reservation rows and removes everything it created.  Run it against a
+ * scratch copy of the database, see java/scripts/bench.sh.
+ *
+ * Usage: BookingLoadBenchmark <dbname> <port> <user> [threads] [bookings] [batch] [flights] [seats]
+ */
+public class BookingLoadBenchmark {
+
+   private static final int FIRST_INSTANCE = 900000;
+
+   public static void main(String[] args) throws Exception {
+      if (args.length < 3) {
+         System.err.println("Usage: java BookingLoadBenchmark <dbname> <port> <user> [threads] [bookings] [batch] [flights] [seats]");
+         return;
+      }
+      final int threads = args.length > 3 ? Integer.parseInt(args[3]) : 16;
+      final int bookings = args.length > 4 ? Integer.parseInt(args[4]) : 20000;
+      final int batch = args.length > 5 ? Integer.parseInt(args[5]) : 20;
+      final int flights = args.length > 6 ? Integer.parseInt(args[6]) : 10;
+      final int seats = args.length > 7 ? Integer.parseInt(args[7]) : 500;
+
+      Class.forName("org.postgresql.Driver");
+      final AirlineManagement esql = new AirlineManagement(args[0], args[1], args[2], "");
+      try {
+         String flightNumber = esql.executeQueryAndReturnResult("SELECT MIN(FlightNumber) FROM Flight").get(0).get(0);
+         for (int f = 0; f < flights; f++) {
+            esql.executeUpdate("INSERT INTO FlightInstance (FlightInstanceID, FlightNumber, FlightDate, SeatsTotal, SeatsSold, NumOfStops, TicketCost) " +
+                               "VALUES (" + (FIRST_INSTANCE + f) + ", '" + flightNumber + "', CURRENT_DATE, " + seats + ", 0, 0, 100.00)");
+         }
+
+         final AtomicInteger remaining = new AtomicInteger(bookings);
+         final AtomicInteger reserved = new AtomicInteger();
+         final AtomicInteger waitlisted = new AtomicInteger();
+         final AtomicLong failures = new AtomicLong();
+         List<Thread> workers = new ArrayList<Thread>();
+         long start = System.nanoTime();
+         for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+               ThreadLocalRandom random = ThreadLocalRandom.current();
+               int take;
+               while ((take = Math.min(batch, remaining.getAndAdd(-batch))) > 0) {
+                  List<BookingEngine.Request> group = new ArrayList<BookingEngine.Request>(take);
+                  for (int i = 0; i < take; i++) {
+                     group.add(new BookingEngine.Request("Load", "Test", "F", "1990-01-01", "1 Bench Way",
+                                                         "000-000-0000", "00000", FIRST_INSTANCE + random.nextInt(flights)));
+                  }
+                  try {
+                     for (BookingEngine.Booking b : esql.bookings().bookAll(group)) {
+                        if (b.outcome == BookingEngine.Outcome.RESERVED) {
+                           reserved.incrementAndGet();
+                        } else {
+                           waitlisted.incrementAndGet();
+                        }
+                     }
+                  } catch (Exception e) {
+                     failures.incrementAndGet();
+                  }
+               }
+            });
+            workers.add(worker);
+            worker.start();
+         }
+         for (Thread worker : workers) {
+            worker.join();
+         }
+         double seconds = (System.nanoTime() - start) / 1e9;
+
+         // move the seats booked so far from SeatDelta into SeatsSold
+         esql.seats().flush();
+         String range = "BETWEEN " + FIRST_INSTANCE + " AND " + (FIRST_INSTANCE + flights - 1);
+         List<List<String>> check = esql.executeQueryAndReturnResult(
+            "SELECT fi.FlightInstanceID, fi.SeatsTotal, fi.SeatsSold, " +
+            "(SELECT COUNT(*) FROM Reservation r WHERE r.FlightInstanceID = fi.FlightInstanceID AND r.Status = 'reserved') " +
+            "FROM FlightInstance fi WHERE fi.FlightInstanceID " + range);
+         int oversold = 0;
+         for (List<String> row : check) {
+            int total = Integer.parseInt(row.get(1));
+            int sold = Integer.parseInt(row.get(2));
+            int rows = Integer.parseInt(row.get(3));
+            if (sold > total || sold != rows) {
+               oversold++;
+               System.out.println("MISMATCH instance " + row.get(0) + ": total=" + total + " sold=" + sold + " reserved rows=" + rows);
+            }
+         }
+
+         System.out.printf("threads=%d batch=%d bookings=%d reserved=%d waitlisted=%d failed_groups=%d%n",
+                           threads, batch, bookings, reserved.get(), waitlisted.get(), failures.get());
+         System.out.printf("elapsed=%.2fs throughput=%.0f bookings/s%n", seconds, (reserved.get() + waitlisted.get()) / seconds);
+         System.out.println(oversold == 0 ? "OK: no flight instance oversold" : "FAIL: " + oversold + " flight instances inconsistent");
+         System.out.println(esql.poolMetrics());
+      } finally {
+         esql.executeUpdate("DELETE FROM SeatDelta WHERE FlightInstanceID BETWEEN " + FIRST_INSTANCE + " AND " + (FIRST_INSTANCE + flights - 1));
+         esql.executeUpdate("DELETE FROM Reservation WHERE FlightInstanceID BETWEEN " + FIRST_INSTANCE + " AND " + (FIRST_INSTANCE + flights - 1));
+         esql.executeUpdate("DELETE FROM Customer WHERE FirstName = 'Load' AND LastName = 'Test' AND Address = '1 Bench Way'");
+         esql.executeUpdate("DELETE FROM FlightInstance WHERE FlightInstanceID BETWEEN " + FIRST_INSTANCE + " AND " + (FIRST_INSTANCE + flights - 1));
+         esql.cleanup();
+      }
+   }//end main
+}//end BookingLoadBenchmark
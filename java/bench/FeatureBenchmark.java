@@ -0,0 +1,247 @@
+import java.io.BufferedReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Measures the read paths of the menu through the Java layer.
+ *
+ *  - feature1 .. feature16: the feature method end to end, fed scripted
+ *    input, with its output thrown away.  The writing features (14, 17,
+ *    18) are left out; BookingLoadBenchmark covers feature14.
+ *  - statement vs prepared: the same query sent as a literal string and
+ *    as a bound SqlStatement.
+ *  - materialization: one result counted, collected into lists, read
+ *    in keyset pages, and streamed through the table renderer; the seat
+ *    counts collected into lists and read as typed columns.
+ *  - printTable: rendering tables of growing size, no database involved.
+ *
+ * The arguments for each feature are taken from the data already in the
+ * database, so it runs against the stock data/ load or any scaled-up one.
+ * Only one thread is used; see BookingLoadBenchmark for concurrency.
+ *
+ * Usage: FeatureBenchmark <dbname> <port> <user> [name filter]
+ */
+public class FeatureBenchmark {
+
+   // output of the features under test goes here
+   private static final class Sink extends OutputStream {
+      long bytes = 0;
+
+      public void write(int b) {
+         this.bytes++;
+      }
+
+      public void write(byte[] b, int off, int len) {
+         this.bytes += len;
+      }
+   }//end Sink
+
+   private final AirlineManagement _esql;
+   private final Bench _bench = new Bench();
+   private final String _filter;
+   private final PrintStream _out = new PrintStream(new Sink(), false);
+   private final Sink _errors = new Sink();
+   private final PrintStream _err = new PrintStream(this._errors, true);
+
+   // sample arguments read from the database
+   private String _flight;
+   private String _date;
+   private String _busyFlight;
+   private String _busyDate;
+   private String _firstDate;
+   private String _lastDate;
+   private String _reservation;
+   private String _plane;
+   private String _technician;
+   private String _pilot;
+   private String _departureCity;
+   private String _arrivalCity;
+
+   FeatureBenchmark(AirlineManagement esql, String filter) {
+      this._esql = esql;
+      this._filter = filter;
+   }
+
+   public static void main(String[] args) throws Exception {
+      if (args.length < 3) {
+         System.err.println("Usage: java FeatureBenchmark <dbname> <port> <user> [name filter]");
+         return;
+      }
+      Class.forName("org.postgresql.Driver");
+      AirlineManagement esql = new AirlineManagement(args[0], args[1], args[2], "");
+      Session.install();
+      try {
+         FeatureBenchmark benchmark = new FeatureBenchmark(esql, args.length > 3 ? args[3] : "");
+         benchmark.sample();
+         benchmark.features();
+         benchmark.statementVsPrepared();
+         benchmark.materialization();
+         benchmark.rendering();
+         benchmark._bench.report();
+         System.out.println(esql.poolMetrics());
+      } finally {
+         esql.cleanup();
+      }
+   }//end main
+
+   private void sample() throws Exception {
+      List<String> row = first("SELECT FlightNumber, TO_CHAR(FlightDate, 'MM/DD/YY') FROM FlightInstance ORDER BY FlightInstanceID LIMIT 1");
+      this._flight = row.get(0);
+      this._date = row.get(1);
+      row = first("SELECT fi.FlightNumber, TO_CHAR(fi.FlightDate, 'MM/DD/YY') FROM FlightInstance fi " +
+                  "JOIN Reservation r ON r.FlightInstanceID = fi.FlightInstanceID " +
+                  "GROUP BY fi.FlightInstanceID, fi.FlightNumber, fi.FlightDate ORDER BY COUNT(*) DESC LIMIT 1");
+      this._busyFlight = row.get(0);
+      this._busyDate = row.get(1);
+      row = first("SELECT TO_CHAR(MIN(FlightDate), 'MM/DD/YY'), TO_CHAR(MAX(FlightDate), 'MM/DD/YY') FROM FlightInstance");
+      this._firstDate = row.get(0);
+      this._lastDate = row.get(1);
+      this._reservation = first("SELECT MIN(ReservationID) FROM Reservation").get(0);
+      this._plane = first("SELECT MIN(PlaneID) FROM Repair").get(0);
+      this._technician = first("SELECT MIN(TechnicianID) FROM Repair").get(0);
+      this._pilot = first("SELECT MIN(PilotID) FROM MaintenanceRequest").get(0);
+      row = first("SELECT DepartureCity, ArrivalCity FROM Flight WHERE FlightNumber = '" + this._flight + "'");
+      this._departureCity = row.get(0);
+      this._arrivalCity = row.get(1);
+   }
+
+   private List<String> first(String query) throws Exception {
+      List<List<String>> rows = this._esql.executeQueryAndReturnResult(query);
+      if (rows.isEmpty()) {
+         throw new IllegalStateException("No sample data for: " + query);
+      }
+      return rows.get(0);
+   }
+
+   private void features() {
+      String from = "2000-01-01";
+      String to = "2099-12-31";
+      feature("feature1", AirlineManagement::feature1, this._flight);
+      feature("feature2", AirlineManagement::feature2, this._flight, this._date);
+      feature("feature3", AirlineManagement::feature3, this._flight, this._date);
+      feature("feature4", AirlineManagement::feature4, this._date);
+      feature("feature5", AirlineManagement::feature5, this._busyFlight, this._busyDate);
+      feature("feature6", AirlineManagement::feature6, this._reservation);
+      feature("feature7", AirlineManagement::feature7, this._plane);
+      feature("feature8", AirlineManagement::feature8, this._technician);
+      feature("feature9", AirlineManagement::feature9, this._plane, from, to);
+      feature("feature10", AirlineManagement::feature10, this._flight, this._firstDate, this._lastDate);
+      feature("feature11", AirlineManagement::feature11, this._departureCity, this._arrivalCity);
+      feature("feature12", AirlineManagement::feature12, this._flight);
+      feature("feature13", AirlineManagement::feature13, this._flight);
+      feature("feature15", AirlineManagement::feature15, this._plane, from, to);
+      feature("feature16", AirlineManagement::feature16, this._pilot);
+   }
+
+   private interface Feature {
+      void run(AirlineManagement esql);
+   }
+
+   /*
+    * Runs a feature with the given lines as its keyboard input.  Anything
+    * it prints to System.err counts as a failure.
+    */
+   private void feature(String name, Feature feature, String... input) {
+      final String script = String.join("\n", input) + "\n";
+      measure(name, () -> {
+         long errors = this._errors.bytes;
+         Session.bind(new Session(new BufferedReader(new StringReader(script)), this._out, this._err));
+         try {
+            feature.run(this._esql);
+         } finally {
+            Session.unbind();
+         }
+         if (this._errors.bytes != errors) {
+            throw new IllegalStateException(name + " reported an error");
+         }
+      });
+   }
+
+   private void statementVsPrepared() {
+      compare("ticket_costs", SqlStatement.TICKET_COSTS, this._flight);
+      compare("flight_status", SqlStatement.FLIGHT_STATUS, this._flight, this._date);
+      compare("flight_passengers", SqlStatement.FLIGHT_PASSENGERS, this._busyFlight, this._busyDate);
+   }
+
+   private void compare(String name, SqlStatement stmt, String... params) {
+      final String literal = literal(stmt, params);
+      final Object[] bound = params;
+      measure(name + "/statement", () -> this._esql.executeQueryAndReturnResult(literal));
+      measure(name + "/prepared", () -> this._esql.executeQueryAndReturnResult(stmt, bound));
+   }
+
+   // the statement text with every placeholder replaced by a quoted literal
+   private static String literal(SqlStatement stmt, String... params) {
+      StringBuilder sql = new StringBuilder();
+      int p = 0;
+      for (char c : stmt.sql().toCharArray()) {
+         if (c == '?') {
+            sql.append('\'').append(params[p++].replace("'", "''")).append('\'');
+         } else {
+            sql.append(c);
+         }
+      }
+      return sql.toString();
+   }
+
+   private void materialization() {
+      final SqlStatement stmt = SqlStatement.FLIGHT_PASSENGERS;
+      final String flight = this._busyFlight;
+      final String date = this._busyDate;
+      measure("passengers/count", () -> this._esql.executeQuery(stmt, flight, date));
+      measure("passengers/lists", () -> this._esql.executeQueryAndReturnResult(stmt, flight, date));
+      measure("passengers/lists_with_headers", () -> this._esql.executeQueryAndReturnResultHeaders(stmt, flight, date));
+      measure("passengers/keyset_pages", () -> {
+         List<Integer> instances = new ArrayList<Integer>();
+         for (SeatInventory.Seats s : this._esql.seats().seats(flight, AirlineManagement.shortDate(date))) {
+            instances.add(s.flightInstanceID);
+         }
+         PassengerManifest manifest = new PassengerManifest(this._esql, instances, null, PassengerManifest.PAGE_SIZE);
+         while (manifest.hasMore()) {
+            manifest.next();
+         }
+      });
+      measure("seat_counts/lists", () -> this._esql.executeQueryAndReturnResult(SqlStatement.SEAT_COUNTS));
+      measure("seat_counts/typed", () -> {
+         final long[] sold = new long[1];
+         this._esql.executeQueryForEach(SqlStatement.SEAT_COUNTS, rs -> sold[0] += Rows.getInt(rs, 5, 0));
+      });
+      measure("passengers/stream_table", () -> {
+         Session.bind(new Session(null, this._out, this._err));
+         try {
+            this._esql.executeQueryAndPrintTable(stmt, flight, date);
+         } finally {
+            Session.unbind();
+         }
+      });
+   }
+
+   private void rendering() {
+      for (int rows : new int[] { 10, 1000, 10000 }) {
+         final List<List<String>> table = new ArrayList<List<String>>(rows + 1);
+         table.add(Arrays.asList("flight_number", "flight_date", "first_name", "last_name", "status"));
+         for (int r = 0; r < rows; r++) {
+            table.add(Arrays.asList("F" + (100 + r % 50), "2025-05-" + (10 + r % 20), "First" + r, "Last" + r,
+                                    r % 3 == 0 ? "waitlist" : "reserved"));
+         }
+         measure("printTable/" + rows + "_rows", () -> {
+            Session.bind(new Session(null, this._out, this._err));
+            try {
+               AirlineManagement.printTable(table);
+            } finally {
+               Session.unbind();
+            }
+         });
+      }
+   }
+
+   private void measure(String name, Bench.Op op) {
+      if (name.contains(this._filter)) {
+         this._bench.run(name, op);
+      }
+   }
+}//end FeatureBenchmark
@@ -0,0 +1,14 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+
+# usage: source java/scripts/advise.sh <output directory> [--apply]
+# runs the feature queries under EXPLAIN ANALYZE, reports sequential scans
+# and redundant indexes, and checks the proposed indexes before/after.
+# -Dairline.advisor.runs sets how many times each query is timed.
+
+# compile the java program
+javac -cp $DIR/../lib/pg73jdbc3.jar -d $DIR/../classes $DIR/../src/*.java
+
+#run the advisor
+#Use your database name, port number and login
+java -cp $DIR/../classes:$DIR/../lib/pg73jdbc3.jar IndexAdvisor $USER"_project_phase_3_DB" $PGPORT $USER "${1:-plans}" $2
@@ -0,0 +1,14 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+
+# usage: source java/scripts/batch.sh <command file | -> > results.jsonl
+# runs one feature per line of the command file (e.g. "feature2 F100 5/5/25")
+# and writes one JSON result per line; -Dairline.batch.threads sets how many
+# commands run at the same time.
+
+# compile the java program
+javac -cp $DIR/../lib/pg73jdbc3.jar -d $DIR/../classes $DIR/../src/*.java
+
+#run the commands
+#Use your database name, port number and login
+java -cp $DIR/../classes:$DIR/../lib/pg73jdbc3.jar BatchRunner $USER"_project_phase_3_DB" $PGPORT $USER "${1:--}"
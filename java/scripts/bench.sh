@@ -0,0 +1,13 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+
+# usage: source java/scripts/bench.sh <BenchmarkClass> [benchmark arguments]
+# point it at a scratch database, the benchmarks write to the tables.
+
+# compile the program together with the benchmarks
+mkdir -p $DIR/../bench-classes
+javac -cp $DIR/../lib/pg73jdbc3.jar -d $DIR/../bench-classes $DIR/../src/*.java $DIR/../bench/*.java
+
+#run the benchmark
+#Use your database name, port number and login
+java -cp $DIR/../bench-classes:$DIR/../lib/pg73jdbc3.jar "$1" $USER"_project_phase_3_DB" $PGPORT $USER "${@:2}"
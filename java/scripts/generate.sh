@@ -0,0 +1,18 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+
+# usage: source java/scripts/generate.sh csv <output directory> [name=value ...]
+#        source java/scripts/generate.sh copy [name=value ...]
+# e.g. reservations=10000000 instances=1000000; "copy" loads the generated
+# rows straight into empty tables of the database below.
+
+# compile the java program
+javac -cp $DIR/../lib/pg73jdbc3.jar -d $DIR/../classes $DIR/../src/*.java
+
+#run the generator
+#Use your database name, port number and login
+if [ "$1" = "copy" ]; then
+   java -cp $DIR/../classes:$DIR/../lib/pg73jdbc3.jar DataGenerator copy $USER"_project_phase_3_DB" $PGPORT $USER "${@:2}"
+else
+   java -cp $DIR/../classes:$DIR/../lib/pg73jdbc3.jar DataGenerator "$@"
+fi
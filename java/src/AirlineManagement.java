@@ -11,8 +11,8 @@
  */
 
 
-import java.sql.DriverManager;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.Statement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
@@ -20,9 +20,20 @@ import java.sql.SQLException;
 import java.io.File;
 import java.io.FileReader;
 import java.io.BufferedReader;
-import java.io.InputStreamReader;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.ResolverStyle;
+import java.time.temporal.ChronoField;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.ArrayList;
+import java.util.function.ToLongFunction;
 import java.lang.Math;
 
 /**
@@ -32,13 +43,109 @@ import java.lang.Math;
  */
 public class AirlineManagement {
 
-   // reference to physical database connection.
-   private Connection _connection = null;
+   // pool sizing and timeouts, overridable with -D on the command line
+   private static final int POOL_SIZE = Integer.getInteger("airline.pool.size", 8);
+   private static final long POOL_ACQUIRE_TIMEOUT_MS = Long.getLong("airline.pool.acquireTimeoutMs", 5000L);
+   private static final long POOL_MAX_LIFETIME_MS = Long.getLong("airline.pool.maxLifetimeMs", 30L * 60 * 1000);
+   private static final long POOL_VALIDATION_INTERVAL_MS = Long.getLong("airline.pool.validationIntervalMs", 30L * 1000);
+
+   // terminals served at once in server mode when virtual threads are unavailable
+   private static final int MAX_SESSIONS = Integer.getInteger("airline.server.maxSessions", 256);
+
+   // database calls at least this slow are logged to the console
+   private static final long SLOW_QUERY_MS = Long.getLong("airline.metrics.slowQueryMs", 500L);
+
+   // local port of the Prometheus scrape endpoint; 0 leaves it off
+   private static final int METRICS_PORT = Integer.getInteger("airline.metrics.port", 0);
+
+   // latency, row and error counts of every database call and feature
+   private final QueryMetrics _metrics = new QueryMetrics(SLOW_QUERY_MS, Session.console().err());
+
+   // pool of physical database connections shared by every session.
+   private ConnectionPool _pool = null;
+
+   // block allocator for the generated primary keys
+   private final IdAllocator _ids = new IdAllocator(this);
+
+   // seat reservations for feature14
+   private final BookingEngine _bookings = new BookingEngine(this);
+
+   // seats sold per flight instance, counted in memory (feature2, feature14)
+   private final SeatInventory _seats = new SeatInventory(this);
+
+   // waitlisted reservations promoted into freed seats (feature19)
+   private final WaitlistPromoter _waitlist = new WaitlistPromoter(this);
+
+   // repairs and maintenance requests per plane, in date order (feature9/15)
+   private final MaintenanceTimeline _timeline = new MaintenanceTimeline(this, REFERENCE_TTL_MS);
+
+   // each maintenance request linked to the repair that fulfilled it (feature22)
+   private final MaintenanceMatcher _matcher = new MaintenanceMatcher(this, REFERENCE_TTL_MS);
+
+   // group commit for the Repair and MaintenanceRequest rows of feature17/18
+   private final WriteBatcher _writes = new WriteBatcher(this);
+
+   // how long the reference tables are served from memory between reloads
+   private static final long REFERENCE_TTL_MS = Long.getLong("airline.cache.referenceTtlMs", 5L * 60 * 1000);
+
+   // Plane, Flight, Schedule, Pilot and Technician held in memory
+   private final ReferenceCache _references = new ReferenceCache(this, REFERENCE_TTL_MS);
+
+   // how long a day of departures is served from memory between reads
+   private static final long BOARD_TTL_MS = Long.getLong("airline.cache.boardTtlMs", 30L * 1000);
+
+   // the flights of a day in departure order (feature4)
+   private final DeparturesBoard _board = new DeparturesBoard(this, BOARD_TTL_MS);
+
+   // FlightInstance by column for feature3, feature10 and feature11
+   private final FlightColumns _columns = new FlightColumns(this, REFERENCE_TTL_MS);
 
    // handling the keyboard inputs through a BufferedReader
    // This variable can be global for convenience.
-   static BufferedReader in = new BufferedReader(
-                                new InputStreamReader(System.in));
+   // Reads from the session bound to the calling thread (see Session).
+   static BufferedReader in = Session.input();
+
+   // connection held by the calling thread while it runs a transaction
+   private final ThreadLocal<ConnectionPool.PooledConnection> _pinned =
+      new ThreadLocal<ConnectionPool.PooledConnection>();
+
+   /**
+    * Work that runs against one borrowed connection.
+    */
+   private interface ConnectionWork<T> {
+      T run(ConnectionPool.PooledConnection conn) throws SQLException;
+   }
+
+   /**
+    * Work that needs the JDBC connection itself, e.g. for SQL built at run
+    * time.
+    */
+   public interface JdbcWork<T> {
+      T run(Connection c) throws SQLException;
+   }
+
+   /**
+    * Turns the current row of a result set into an object, reading the
+    * columns as their own types (see Rows) rather than as strings.
+    */
+   public interface RowMapper<T> {
+      T map(ResultSet rs) throws SQLException;
+   }
+
+   /**
+    * Takes the rows of a result set one at a time, e.g. into primitive
+    * column arrays, so nothing is kept per row.
+    */
+   public interface RowHandler {
+      void row(ResultSet rs) throws SQLException;
+   }
+
+   /**
+    * Work whose statements must commit or roll back together.
+    */
+   public interface Transaction<T> {
+      T run() throws SQLException;
+   }
 
    /**
     * Creates a new instance of AirlineManagement
@@ -57,8 +164,11 @@ public class AirlineManagement {
          String url = "jdbc:postgresql://localhost:" + dbport + "/" + dbname;
          System.out.println ("Connection URL: " + url + "\n");
 
-         // obtain a physical connection
-         this._connection = DriverManager.getConnection(url, user, passwd);
+         // open the first physical connection up front so a bad URL or a
+         // stopped server is reported here rather than on the first query
+         this._pool = new ConnectionPool(url, user, passwd, POOL_SIZE,
+                                         POOL_ACQUIRE_TIMEOUT_MS, POOL_MAX_LIFETIME_MS, POOL_VALIDATION_INTERVAL_MS);
+         this._pool.release(this._pool.acquire(), false);
          System.out.println("Done");
       }catch (Exception e){
          System.err.println("Error - Unable to Connect to Database: " + e.getMessage() );
@@ -67,6 +177,206 @@ public class AirlineManagement {
       }//end catch
    }//end AirlineManagement
 
+   /**
+    * Borrows a connection from the pool for the duration of the work and
+    * hands it back afterwards.  A connection that failed at the network
+    * level (SQLState class 08) is dropped instead of being reused.  The
+    * call is timed and counted in the query metrics under the given shape.
+    */
+   private <T> T withConnection(String shape, ConnectionWork<T> work) throws SQLException {
+      return withConnection(shape, AirlineManagement::rowsOf, work);
+   }
+
+   private <T> T withConnection(String shape, ToLongFunction<T> rows, ConnectionWork<T> work) throws SQLException {
+      long start = System.nanoTime();
+      boolean failed = true;
+      long count = 0;
+      try {
+         T result = onConnection(work);
+         failed = false;
+         count = result != null ? rows.applyAsLong(result) : 0;
+         return result;
+      } finally {
+         this._metrics.query(shape, System.nanoTime() - start, count, failed);
+      }
+   }//end withConnection
+
+   private <T> T onConnection(ConnectionWork<T> work) throws SQLException {
+      ConnectionPool.PooledConnection pinned = this._pinned.get();
+      if (pinned != null) {
+         // inside executeTransaction: stay on the transaction's connection
+         return work.run(pinned);
+      }
+      ConnectionPool.PooledConnection conn = this._pool.acquire();
+      boolean broken = false;
+      try {
+         return work.run(conn);
+      } catch (SQLException e) {
+         broken = e.getSQLState() != null && e.getSQLState().startsWith("08");
+         throw e;
+      } finally {
+         this._pool.release(conn, broken);
+      }
+   }//end onConnection
+
+   // rows returned or changed, judged from what the execute* method returns
+   private static long rowsOf(Object result) {
+      if (result instanceof Integer) {
+         return (Integer) result;
+      }
+      if (result instanceof List) {
+         return ((List<?>) result).size();
+      }
+      if (result instanceof int[]) {
+         long total = 0;
+         for (int n : (int[]) result) {
+            total += Math.max(n, 0);
+         }
+         return total;
+      }
+      return 0;
+   }
+
+   /**
+    * Runs the work in a single database transaction.  Every execute* call
+    * the work makes on this thread goes to the same connection; the
+    * transaction commits when the work returns and rolls back when it
+    * throws.  A nested call joins the transaction already in progress.
+    *
+    * @param work the statements to run atomically
+    * @return the value returned by the work
+    * @throws java.sql.SQLException when the work or the commit fails
+    */
+   public <T> T executeTransaction(Transaction<T> work) throws SQLException {
+      if (this._pinned.get() != null) {
+         return work.run();
+      }
+      ConnectionPool.PooledConnection conn = this._pool.acquire();
+      Connection c = conn.connection();
+      boolean broken = false;
+      this._pinned.set(conn);
+      try {
+         c.setAutoCommit(false);
+         T result = work.run();
+         c.commit();
+         return result;
+      } catch (SQLException | RuntimeException e) {
+         try {
+            c.rollback();
+         } catch (SQLException rollbackFailure) {
+            broken = true;
+         }
+         throw e;
+      } finally {
+         this._pinned.remove();
+         try {
+            c.setAutoCommit(true);
+         } catch (SQLException e) {
+            broken = true;
+         }
+         this._pool.release(conn, broken);
+      }
+   }//end executeTransaction
+
+   /**
+    * Runs the work on a borrowed connection, or on the transaction's
+    * connection when called inside executeTransaction.  The work must not
+    * close the connection or change its autocommit mode.
+    *
+    * @param work the JDBC calls to make
+    * @return the value returned by the work
+    * @throws java.sql.SQLException when the work fails
+    */
+   public <T> T executeWithConnection(JdbcWork<T> work) throws SQLException {
+      return withConnection("adhoc", result -> 0, conn -> work.run(conn.connection()));
+   }
+
+   /**
+    * @return the allocator for new Customer, Reservation, Repair and
+    *         MaintenanceRequest keys
+    */
+   public IdAllocator ids() {
+      return this._ids;
+   }
+
+   /**
+    * @return the in-memory seat counts of the flight instances
+    */
+   public SeatInventory seats() {
+      return this._seats;
+   }
+
+   /**
+    * @return the per-flight waitlists and their background promotion
+    */
+   public WaitlistPromoter waitlist() {
+      return this._waitlist;
+   }
+
+   /**
+    * @return the group commit queue for Repair and MaintenanceRequest rows
+    */
+   public WriteBatcher writes() {
+      return this._writes;
+   }
+
+   /**
+    * @return the maintenance history of every plane
+    */
+   public MaintenanceTimeline timeline() {
+      return this._timeline;
+   }
+
+   /**
+    * @return the requests matched to their repairs
+    */
+   public MaintenanceMatcher matcher() {
+      return this._matcher;
+   }
+
+   /**
+    * @return the in-memory copy of the reference tables
+    */
+   public ReferenceCache references() {
+      return this._references;
+   }
+
+   /**
+    * @return the departures of a day, used by feature4
+    */
+   public DeparturesBoard board() {
+      return this._board;
+   }
+
+   /**
+    * @return the columnar FlightInstance used by feature3, feature10 and
+    *         feature11
+    */
+   public FlightColumns columns() {
+      return this._columns;
+   }
+
+   /**
+    * @return the reservation engine used by feature14
+    */
+   public BookingEngine bookings() {
+      return this._bookings;
+   }
+
+   /**
+    * @return the latency, row and error counts of the database calls
+    */
+   public QueryMetrics metrics() {
+      return this._metrics;
+   }
+
+   /**
+    * @return the connection pool statistics as a single line
+    */
+   public String poolMetrics() {
+      return this._pool.metrics();
+   }
+
    /**
     * Method to execute an update SQL statement.  Update SQL instructions
     * includes CREATE, INSERT, UPDATE, DELETE, and DROP.
@@ -75,14 +385,17 @@ public class AirlineManagement {
     * @throws java.sql.SQLException when update failed
     */
    public void executeUpdate (String sql) throws SQLException {
-      // creates a statement object
-      Statement stmt = this._connection.createStatement ();
+      withConnection("adhoc", conn -> {
+         // creates a statement object
+         Statement stmt = conn.connection().createStatement ();
 
-      // issues the update instruction
-      stmt.executeUpdate (sql);
+         // issues the update instruction
+         stmt.executeUpdate (sql);
 
-      // close the instruction
-      stmt.close ();
+         // close the instruction
+         stmt.close ();
+         return null;
+      });
    }//end executeUpdate
 
    /**
@@ -95,37 +408,39 @@ public class AirlineManagement {
     * @throws java.sql.SQLException when failed to execute the query
     */
    public int executeQueryAndPrintResult (String query) throws SQLException {
-      // creates a statement object
-      Statement stmt = this._connection.createStatement ();
-
-      // issues the query instruction
-      ResultSet rs = stmt.executeQuery (query);
-
-      /*
-       ** obtains the metadata object for the returned result set.  The metadata
-       ** contains row and column info.
-       */
-      ResultSetMetaData rsmd = rs.getMetaData ();
-      int numCol = rsmd.getColumnCount ();
-      int rowCount = 0;
-
-      // iterates through the result set and output them to standard out.
-      boolean outputHeader = true;
-      while (rs.next()){
-		 if(outputHeader){
-			for(int i = 1; i <= numCol; i++){
-			System.out.print(rsmd.getColumnName(i) + "\t");
-			}
-			System.out.println();
-			outputHeader = false;
-		 }
-         for (int i=1; i<=numCol; ++i)
-            System.out.print (rs.getString (i) + "\t");
-         System.out.println ();
-         ++rowCount;
-      }//end while
-      stmt.close();
-      return rowCount;
+      return withConnection("adhoc", conn -> {
+         // creates a statement object
+         Statement stmt = conn.connection().createStatement ();
+
+         // issues the query instruction
+         ResultSet rs = stmt.executeQuery (query);
+
+         /*
+          ** obtains the metadata object for the returned result set.  The metadata
+          ** contains row and column info.
+          */
+         ResultSetMetaData rsmd = rs.getMetaData ();
+         int numCol = rsmd.getColumnCount ();
+         int rowCount = 0;
+
+         // iterates through the result set and output them to standard out.
+         boolean outputHeader = true;
+         while (rs.next()){
+            if(outputHeader){
+               for(int i = 1; i <= numCol; i++){
+                  System.out.print(rsmd.getColumnName(i) + "\t");
+               }
+               System.out.println();
+               outputHeader = false;
+            }
+            for (int i=1; i<=numCol; ++i)
+               System.out.print (rs.getString (i) + "\t");
+            System.out.println ();
+            ++rowCount;
+         }//end while
+         stmt.close();
+         return rowCount;
+      });
    }//end executeQuery
 
    /**
@@ -138,115 +453,338 @@ public class AirlineManagement {
     * @throws java.sql.SQLException when failed to execute the query
     */
    public List<List<String>> executeQueryAndReturnResult (String query) throws SQLException {
-      // creates a statement object
-      Statement stmt = this._connection.createStatement ();
+      return withConnection("adhoc", conn -> {
+         // creates a statement object
+         Statement stmt = conn.connection().createStatement ();
+
+         // issues the query instruction
+         ResultSet rs = stmt.executeQuery (query);
+         List<List<String>> result = readRecords(rs, false);
+         stmt.close ();
+         return result;
+      });
+   }
+
+   public List<List<String>> executeQueryAndReturnResultHeaders (String query) throws SQLException {
+      return withConnection("adhoc", result -> result.size() - 1, conn -> {
+         Statement stmt = conn.connection().createStatement ();
+         ResultSet rs = stmt.executeQuery (query);
+         List<List<String>> result = readRecords(rs, true);
+         stmt.close ();
+         return result;
+      });
+   }
+
+   //end executeQueryAndReturnResultHeaders
+
+   /**
+    * Method to execute an input query SQL instruction (i.e. SELECT).  This
+    * method issues the query to the DBMS and returns the number of results
+    *
+    * @param query the input query string
+    * @return the number of rows returned
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public int executeQuery (String query) throws SQLException {
+      return withConnection("adhoc", conn -> {
+         // creates a statement object
+         Statement stmt = conn.connection().createStatement ();
+
+         // issues the query instruction
+         ResultSet rs = stmt.executeQuery (query);
+         int rowCount = countRows(rs);
+         stmt.close ();
+         return rowCount;
+      });
+   }
+
+   /**
+    * Method to execute a registered update statement (INSERT, UPDATE,
+    * DELETE) with the given parameters bound to its placeholders.
+    *
+    * @param stmt the registered statement
+    * @param params the values for the statement placeholders
+    * @return the number of rows affected
+    * @throws java.sql.SQLException when update failed
+    */
+   public int executeUpdate (SqlStatement stmt, Object... params) throws SQLException {
+      return withConnection(stmt.name(), conn -> {
+         return conn.statements().bind(stmt, params).executeUpdate ();
+      });
+   }//end executeUpdate
+
+   /**
+    * Method to execute a registered update statement once per parameter
+    * row, sending all rows to the server in a single batch.
+    *
+    * @param stmt the registered statement
+    * @param rows one array of placeholder values per execution
+    * @return the number of rows affected by each execution
+    * @throws java.sql.SQLException when update failed
+    */
+   public int[] executeBatch (SqlStatement stmt, List<Object[]> rows) throws SQLException {
+      if (rows.isEmpty()) {
+         return new int[0];
+      }
+      return withConnection(stmt.name(), conn -> {
+         PreparedStatement ps = null;
+         try {
+            for (Object[] row : rows) {
+               ps = conn.statements().bind(stmt, row);
+               ps.addBatch();
+            }
+            return ps.executeBatch();
+         } finally {
+            // a failed batch must not leak into the next use of the statement
+            if (ps != null) {
+               ps.clearBatch();
+            }
+         }
+      });
+   }//end executeBatch
+
+   /**
+    * Method to execute a registered query and return the results as a
+    * list of records.  Each record in turn is a list of attribute values
+    *
+    * @param stmt the registered query
+    * @param params the values for the query placeholders
+    * @return the query result as a list of records
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public List<List<String>> executeQueryAndReturnResult (SqlStatement stmt, Object... params) throws SQLException {
+      return withConnection(stmt.name(), conn -> {
+         ResultSet rs = conn.statements().bind(stmt, params).executeQuery ();
+         List<List<String>> result = readRecords(rs, false);
+         rs.close ();
+         return result;
+      });
+   }//end executeQueryAndReturnResult
 
-      // issues the query instruction
-      ResultSet rs = stmt.executeQuery (query);
+   /**
+    * Method to execute a registered query and return the results with the
+    * column labels as the first record.
+    *
+    * @param stmt the registered query
+    * @param params the values for the query placeholders
+    * @return the column labels followed by the query records
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public List<List<String>> executeQueryAndReturnResultHeaders (SqlStatement stmt, Object... params) throws SQLException {
+      return withConnection(stmt.name(), result -> result.size() - 1, conn -> {
+         ResultSet rs = conn.statements().bind(stmt, params).executeQuery ();
+         List<List<String>> result = readRecords(rs, true);
+         rs.close ();
+         return result;
+      });
+   }//end executeQueryAndReturnResultHeaders
 
+   /**
+    * Method to execute a registered query and return the number of results
+    *
+    * @param stmt the registered query
+    * @param params the values for the query placeholders
+    * @return the number of rows returned
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public int executeQuery (SqlStatement stmt, Object... params) throws SQLException {
+      return withConnection(stmt.name(), conn -> {
+         ResultSet rs = conn.statements().bind(stmt, params).executeQuery ();
+         int rowCount = countRows(rs);
+         rs.close ();
+         return rowCount;
+      });
+   }//end executeQuery
+
+   /**
+    * Method to execute a registered query and map every row to an object
+    * as it is read.  Unlike executeQueryAndReturnResult no string is made
+    * per column; strings are only made when a value is printed.
+    *
+    * @param stmt the registered query
+    * @param mapper turns the current row into an object
+    * @param params the values for the query placeholders
+    * @return one object per row, in query order
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public <T> List<T> executeQueryAndMap (SqlStatement stmt, RowMapper<T> mapper, Object... params) throws SQLException {
+      return withConnection(stmt.name(), conn -> {
+         ResultSet rs = conn.statements().bind(stmt, params).executeQuery ();
+         List<T> result = new ArrayList<T>();
+         while (rs.next()) {
+            result.add(mapper.map(rs));
+         }
+         rs.close ();
+         return result;
+      });
+   }//end executeQueryAndMap
+
+   /**
+    * Method to execute a registered query and hand every row to the
+    * handler as it is read, keeping nothing.
+    *
+    * @param stmt the registered query
+    * @param handler reads the current row
+    * @param params the values for the query placeholders
+    * @return the number of rows handled
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public int executeQueryForEach (SqlStatement stmt, RowHandler handler, Object... params) throws SQLException {
+      return withConnection(stmt.name(), conn -> {
+         ResultSet rs = conn.statements().bind(stmt, params).executeQuery ();
+         int rowCount = 0;
+         while (rs.next()) {
+            handler.row(rs);
+            rowCount++;
+         }
+         rs.close ();
+         return rowCount;
+      });
+   }//end executeQueryForEach
+
+   /**
+    * Method to execute a composite statement: one registered statement
+    * whose data-modifying WITH clauses do the work of several and report
+    * what each part did as the columns of a single row.  Run on its own
+    * it commits all or nothing in one round trip; inside
+    * executeTransaction it joins the transaction.
+    *
+    * @param stmt the registered composite statement
+    * @param params the values for the statement placeholders
+    * @return the columns of the result row, e.g. the rows each part wrote
+    * @throws java.sql.SQLException when the statement failed; none of its
+    *         parts is kept in that case
+    */
+   public long[] executeComposite (SqlStatement stmt, Object... params) throws SQLException {
+      return withConnection(stmt.name(), counts -> Arrays.stream(counts).sum(), conn -> {
+         ResultSet rs = conn.statements().bind(stmt, params).executeQuery ();
+         long[] counts = new long[rs.getMetaData().getColumnCount()];
+         if (rs.next()) {
+            for (int i = 0; i < counts.length; i++) {
+               counts[i] = rs.getLong(i + 1);
+            }
+         }
+         rs.close ();
+         return counts;
+      });
+   }//end executeComposite
+
+   /**
+    * Method to execute a registered query and print its rows as a table
+    * while they are read, without copying them into string records first.
+    * Nothing is printed when the query returns no rows.  A session that
+    * collects tables (see BatchRunner) gets the rows instead.
+    *
+    * @param stmt the registered query
+    * @param params the values for the query placeholders
+    * @return the number of rows printed
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public int executeQueryAndPrintTable (SqlStatement stmt, Object... params) throws SQLException {
+      List<List<List<String>>> tables = Session.current().tables();
+      if (tables != null) {
+         List<List<String>> table = executeQueryAndReturnResultHeaders(stmt, params);
+         if (table.size() > 1) {
+            tables.add(table);
+         }
+         return table.size() - 1;
+      }
+      return withConnection(stmt.name(), conn -> {
+         ResultSet rs = conn.statements().bind(stmt, params).executeQuery ();
+         int rowCount = TableRenderer.render(rs, System.out);
+         rs.close ();
+         return rowCount;
+      });
+   }//end executeQueryAndPrintTable
+
+   /*
+    * Copies every row of the result set into a list of string records,
+    * optionally preceded by a record holding the column labels.
+    */
+   private static List<List<String>> readRecords(ResultSet rs, boolean withHeaders) throws SQLException {
       /*
        ** obtains the metadata object for the returned result set.  The metadata
        ** contains row and column info.
        */
       ResultSetMetaData rsmd = rs.getMetaData ();
       int numCol = rsmd.getColumnCount ();
-      int rowCount = 0;
-
-      // iterates through the result set and saves the data returned by the query.
-      boolean outputHeader = false;
-      List<List<String>> result  = new ArrayList<List<String>>();
-      while (rs.next()){
-        List<String> record = new ArrayList<String>();
-		for (int i=1; i<=numCol; ++i)
-			record.add(rs.getString (i));
-        result.add(record);
-      }//end while
-      stmt.close ();
-      return result;
-   }
-   public List<List<String>> executeQueryAndReturnResultHeaders (String query) throws SQLException {
-      Statement stmt = this._connection.createStatement ();
-      ResultSet rs = stmt.executeQuery (query);
-      ResultSetMetaData rsmd = rs.getMetaData ();
-      int numCol = rsmd.getColumnCount ();
 
       List<List<String>> result  = new ArrayList<List<String>>();
-
-      // Add column headers as first row (minimal addition)
-      List<String> headers = new ArrayList<>();
-      for (int i = 1; i <= numCol; i++) {
-          headers.add(rsmd.getColumnLabel(i));  // or getColumnName(i)
+      if (withHeaders) {
+         List<String> headers = new ArrayList<>();
+         for (int i = 1; i <= numCol; i++) {
+             headers.add(rsmd.getColumnLabel(i));
+         }
+         result.add(headers);
       }
-      result.add(headers);
 
-      // Add data rows
+      // iterates through the result set and saves the data returned by the query.
       while (rs.next()){
         List<String> record = new ArrayList<String>();
         for (int i=1; i<=numCol; ++i)
             record.add(rs.getString (i));
         result.add(record);
-      }
-
-      stmt.close ();
+      }//end while
       return result;
-   }
-   
-   //end executeQueryAndReturnResultHeaders
+   }//end readRecords
+
+   // iterates through the result set and count nuber of results.
+   private static int countRows(ResultSet rs) throws SQLException {
+      int rowCount = 0;
+      while (rs.next()){
+         rowCount++;
+      }//end while
+      return rowCount;
+   }//end countRows
 
    /**
-    * Method to execute an input query SQL instruction (i.e. SELECT).  This
-    * method issues the query to the DBMS and returns the number of results
+    * Method to fetch the last value from sequence. This
+    * method issues the query to the DBMS and returns the current
+    * value of sequence used for autogenerated keys.  currval is per
+    * connection, so this is only meaningful inside executeTransaction
+    * after getNextSeqVal was called on the same sequence.
     *
-    * @param query the input query string
-    * @return the number of rows returned
+    * @param sequence name of the DB sequence
+    * @return current value of a sequence
     * @throws java.sql.SQLException when failed to execute the query
     */
-   public int executeQuery (String query) throws SQLException {
-       // creates a statement object
-       Statement stmt = this._connection.createStatement ();
-
-       // issues the query instruction
-       ResultSet rs = stmt.executeQuery (query);
-
-       int rowCount = 0;
-
-       // iterates through the result set and count nuber of results.
-       while (rs.next()){
-          rowCount++;
-       }//end while
-       stmt.close ();
-       return rowCount;
+   public int getCurrSeqVal(String sequence) throws SQLException {
+      return getSeqVal(SqlStatement.SEQUENCE_CURRENT_VALUE, sequence);
    }
 
    /**
-    * Method to fetch the last value from sequence. This
-    * method issues the query to the DBMS and returns the current
-    * value of sequence used for autogenerated keys
+    * Method to advance a sequence and return its new value.  The returned
+    * value is never handed out to any other caller.
     *
     * @param sequence name of the DB sequence
-    * @return current value of a sequence
+    * @return the next value of the sequence
     * @throws java.sql.SQLException when failed to execute the query
     */
-   public int getCurrSeqVal(String sequence) throws SQLException {
-	Statement stmt = this._connection.createStatement ();
+   public int getNextSeqVal(String sequence) throws SQLException {
+      return getSeqVal(SqlStatement.SEQUENCE_NEXT_VALUE, sequence);
+   }
 
-	ResultSet rs = stmt.executeQuery (String.format("Select currval('%s')", sequence));
-	if (rs.next())
-		return rs.getInt(1);
-	return -1;
+   private int getSeqVal(SqlStatement stmt, String sequence) throws SQLException {
+      return withConnection(stmt.name(), value -> 1, conn -> {
+         ResultSet rs = conn.statements().bind(stmt, sequence).executeQuery ();
+         int value = rs.next() ? rs.getInt(1) : -1;
+         rs.close ();
+         return value;
+      });
    }
 
    /**
-    * Method to close the physical connection if it is open.
+    * Method to close every pooled physical connection.
     */
    public void cleanup(){
-      try{
-         if (this._connection != null){
-            this._connection.close ();
-         }//end if
-      }catch (SQLException e){
-         // ignored.
-      }//end try
+      this._writes.close();
+      this._waitlist.close();
+      this._seats.close();
+      this._columns.close();
+      this._metrics.stopEndpoint();
+      if (this._pool != null){
+         this._pool.close ();
+      }//end if
    }//end cleanup
 
    /**
@@ -255,20 +793,23 @@ public class AirlineManagement {
     * @param args the command line arguments this inclues the <mysql|pgsql> <login file>
     */
    public static void main (String[] args) {
-      if (args.length != 3) {
+      if (args.length != 3 && !(args.length == 5 && args[3].equals("--server"))) {
          System.err.println (
             "Usage: " +
             "java [-classpath <classpath>] " +
             AirlineManagement.class.getName () +
-            " <dbname> <port> <user>");
+            " <dbname> <port> <user> [--server <listen port>]");
          return;
       }//end if
 
+      // route the menu's output through the per-thread session
+      Session.install();
+
       Greeting();
       AirlineManagement esql = null;
       try{
          // use postgres JDBC driver.
-         Class.forName ("org.postgresql.Driver").newInstance ();
+         Class.forName("org.postgresql.Driver");
          // instantiate the AirlineManagement object and creates a physical
          // connection.
          String dbname = args[0];
@@ -276,6 +817,50 @@ public class AirlineManagement {
          String user = args[2];
          esql = new AirlineManagement (dbname, dbport, user, "");
 
+         if (METRICS_PORT > 0) {
+            final ConnectionPool pool = esql._pool;
+            try {
+               esql._metrics.startEndpoint(METRICS_PORT, () ->
+                  "# TYPE airline_pool_connections gauge\n" +
+                  "airline_pool_connections{state=\"active\"} " + pool.active() + "\n" +
+                  "airline_pool_connections{state=\"idle\"} " + pool.idle() + "\n" +
+                  "# TYPE airline_pool_waiters gauge\n" +
+                  "airline_pool_waiters " + pool.waiters() + "\n");
+            } catch (IOException e) {
+               System.err.println("Metrics endpoint not started: " + e.getMessage());
+            }
+         }
+
+         if (args.length == 5) {
+            new MenuServer(esql, Integer.parseInt(args[4]), MAX_SESSIONS).serve();
+         } else {
+            runMenu(esql);
+         }
+      }catch(Exception e) {
+         System.err.println (e.getMessage ());
+      }finally{
+         // make sure to cleanup the created table and close the connection.
+         try{
+            if(esql != null) {
+               System.out.print("Disconnecting from database...");
+               esql.cleanup ();
+               System.out.println("Done\n\nBye !");
+            }//end if
+         }catch (Exception e) {
+            // ignored.
+         }//end try
+         System.out.flush();
+      }//end try
+   }//end main
+
+   /**
+    * Runs the main menu and the role menus for the current session until the
+    * user exits or the session's input ends.
+    *
+    * @param esql the shared database front end
+    */
+   public static void runMenu(AirlineManagement esql) {
+      try{
          boolean keepon = true;
          while(keepon) {
             // These are sample SQL statements
@@ -313,6 +898,7 @@ public class AirlineManagement {
                 System.out.println("8. View Repairs Made");
                 System.out.println("9. View Repairs by Date Range");
                 System.out.println("10. View Flight Statistics by Date Range");
+                System.out.println("21. View Query Metrics");
                }
                else if(userRole.equals("Customer") || userRole.equals("customer")){
                 //**the following functionalities should only be able to be used by customers**
@@ -320,63 +906,65 @@ public class AirlineManagement {
                 System.out.println("12. Find Ticket Cost");
                 System.out.println("13. Find Airplane Type");
                 System.out.println("14. Make a Reservation for a Flight");
+                System.out.println("19. Cancel a Reservation");
                }
                else if(userRole.equals("Technician") || userRole.equals("technician")){
                 //**the following functionalities should ony be able to be used by Pilots**
                 System.out.println("15. Check a Plane's Maintenances");
                 System.out.println("16. Check a Pilot's Maintenance Requests");
                 System.out.println("17. Log a Repair for a Plane");
+                System.out.println("22. View Open Maintenance Requests");
                }
                else if(userRole.equals("Pilot") || userRole.equals("pilot")){
                //**the following functionalities should ony be able to be used by Technicians**
                 System.out.println("18. Make a Maintenance Request");
                }
                 System.out.println("20. Log out");
-                switch (readChoice()){
-                   case 1: feature1(esql); break;
-                   case 2: feature2(esql); break;
-                   case 3: feature3(esql); break;
-                   case 4: feature4(esql); break;
-                   case 5: feature5(esql); break;
-                   case 6: feature6(esql); break;
-                   case 7: feature7(esql); break;
-                   case 8: feature8(esql); break;
-                   case 9: feature9(esql); break;
-                   case 10: feature10(esql); break;
-                   case 11: feature11(esql); break;
-                   case 12: feature12(esql); break;
-                   case 13: feature13(esql); break;
-                   case 14: feature14(esql); break;
-                   case 15: feature15(esql); break;
-                   case 16: feature16(esql); break;
-                   case 17: feature17(esql); break;
-                   case 18: feature18(esql); break;
-
-
-
-
-
-                   case 20: usermenu = false; break;
-                   default : System.out.println("Unrecognized choice!"); break;
+                int choice = readChoice();
+                if ((choice >= 1 && choice <= 19) || choice == 22) {
+                   esql.metrics().enterFeature("feature" + choice);
+                }
+                try {
+                   switch (choice){
+                      case 1: feature1(esql); break;
+                      case 2: feature2(esql); break;
+                      case 3: feature3(esql); break;
+                      case 4: feature4(esql); break;
+                      case 5: feature5(esql); break;
+                      case 6: feature6(esql); break;
+                      case 7: feature7(esql); break;
+                      case 8: feature8(esql); break;
+                      case 9: feature9(esql); break;
+                      case 10: feature10(esql); break;
+                      case 11: feature11(esql); break;
+                      case 12: feature12(esql); break;
+                      case 13: feature13(esql); break;
+                      case 14: feature14(esql); break;
+                      case 15: feature15(esql); break;
+                      case 16: feature16(esql); break;
+                      case 17: feature17(esql); break;
+                      case 18: feature18(esql); break;
+                      case 19: feature19(esql); break;
+
+
+
+
+
+                      case 20: usermenu = false; break;
+                      case 21: esql.metrics().dump(System.out); break;
+                      case 22: feature22(esql); break;
+                      default : System.out.println("Unrecognized choice!"); break;
+                   }
+                } finally {
+                   esql.metrics().exitFeature();
                 }
               }
             }
          }//end while
-      }catch(Exception e) {
-         System.err.println (e.getMessage ());
-      }finally{
-         // make sure to cleanup the created table and close the connection.
-         try{
-            if(esql != null) {
-               System.out.print("Disconnecting from database...");
-               esql.cleanup ();
-               System.out.println("Done\n\nBye !");
-            }//end if
-         }catch (Exception e) {
-            // ignored.
-         }//end try
-      }//end try
-   }//end main
+      }catch(Session.EndOfInput e) {
+         // the user closed the terminal.
+      }
+   }//end runMenu
 
    public static void Greeting(){
       System.out.println(
@@ -394,8 +982,17 @@ public class AirlineManagement {
       // returns only if a correct value is given.
       do {
          System.out.print("Please make your choice: ");
+         String line;
+         try {
+            line = in.readLine();
+         }catch (IOException e) {
+            line = null;
+         }//end try
+         if (line == null) {
+            throw new Session.EndOfInput();
+         }
          try { // read the integer, parse it and break.
-            input = Integer.parseInt(in.readLine());
+            input = Integer.parseInt(line);
             break;
          }catch (Exception e) {
             System.out.println("Your input is invalid!");
@@ -416,8 +1013,7 @@ public class AirlineManagement {
             System.out.println("Username cannot be empty, please try again and enter a valid username.");
             return;
         }
-        String checkUserQuery = String.format("SELECT * FROM Users WHERE username = '%s';", username);
-        List<List<String>> userCheckResult = esql.executeQueryAndReturnResultHeaders(checkUserQuery);
+        List<List<String>> userCheckResult = esql.executeQueryAndReturnResultHeaders(SqlStatement.USER_BY_NAME, username);
         if (userCheckResult.size() > 1) {
             System.out.println("Username already exists. please try again with a different username.");
             return;
@@ -438,8 +1034,7 @@ public class AirlineManagement {
          System.out.println("Invalid role! Please try again and enter a valid role.");
             return;
          }
-        String query = String.format("INSERT INTO Users (username, password, role) VALUES ('%s','%s','%s');", username, password, role);
-        esql.executeUpdate(query);
+        esql.executeUpdate(SqlStatement.USER_INSERT, username, password, role);
         System.out.println("User successfully created!");
     } catch (Exception e) {
         System.err.println("Error in CreateUser: " + e.getMessage());
@@ -467,8 +1062,7 @@ public class AirlineManagement {
             return null;
         }
 
-        String query = String.format("SELECT role FROM Users WHERE username = '%s' AND password = '%s';", username, password);
-        List<List<String>> results = esql.executeQueryAndReturnResultHeaders(query);
+        List<List<String>> results = esql.executeQueryAndReturnResultHeaders(SqlStatement.USER_LOGIN, username, password);
         
         
 
@@ -487,57 +1081,32 @@ public class AirlineManagement {
 
 // Rest of the functions definition go in here
    public static void printTable(List<List<String>> table) {
-    if (table == null || table.isEmpty()) {
-        System.out.println("No data to display.");
-        return;
-    }
-
-    int numCols = table.get(0).size();
-    int[] colWidths = new int[numCols];
-
-    // Calculate max width for each column (consider headers + data)
-    for (List<String> row : table) {
-        for (int i = 0; i < numCols; i++) {
-            String cell = row.get(i) != null ? row.get(i) : "null";
-            if (cell.length() > colWidths[i]) {
-                colWidths[i] = cell.length();
-            }
-        }
-    }
-
-    // Helper to print separator line
-    Runnable printSeparator = () -> {
-        for (int w : colWidths) {
-            System.out.print("+");
-            for (int i = 0; i < w + 2; i++) System.out.print("-");
-        }
-        System.out.println("+");
-    };
-
-    printSeparator.run();
-
-    // Print header row (first row)
-    List<String> header = table.get(0);
-    for (int i = 0; i < numCols; i++) {
-        String cell = header.get(i) != null ? header.get(i) : "null";
-        System.out.printf("| %-"+colWidths[i]+"s ", cell);
-    }
-    System.out.println("|");
+      if (table == null || table.isEmpty()) {
+         System.out.println("No data to display.");
+         return;
+      }
+      List<List<List<String>>> tables = Session.current().tables();
+      if (tables != null) {
+         tables.add(table);
+         return;
+      }
+      TableRenderer.render(table, System.out);
+   }
 
-    printSeparator.run();
+   // MM/DD/YY as Postgres reads it with DateStyle MDY: years 70-99 are 19xx
+   private static final DateTimeFormatter SHORT_DATE = new DateTimeFormatterBuilder()
+      .appendPattern("M/d/")
+      .appendValueReduced(ChronoField.YEAR, 2, 2, 1970)
+      .toFormatter()
+      .withResolverStyle(ResolverStyle.STRICT);
 
-    // Print data rows
-    for (int r = 1; r < table.size(); r++) {
-        List<String> row = table.get(r);
-        for (int i = 0; i < numCols; i++) {
-            String cell = row.get(i) != null ? row.get(i) : "null";
-            System.out.printf("| %-"+colWidths[i]+"s ", cell);
-        }
-        System.out.println("|");
-    }
+   /**
+    * Parses a date typed as MM/DD/YY.
+    */
+   static LocalDate shortDate(String input) {
+      return LocalDate.parse(input.trim(), SHORT_DATE);
+   }
 
-    printSeparator.run();
-}
    public static void feature1(AirlineManagement esql) {
       // View Flights
       try{
@@ -551,26 +1120,17 @@ public class AirlineManagement {
 
          flightNumInput = flightNumInput.trim().toUpperCase();
 
-         String query = "SELECT DayOfWeek AS Day_Of_Week, DepartureTime AS Departure_Time, ArrivalTime AS Arrival_Time " +
-                   "FROM Schedule " +
-                   "WHERE flightNumber = '" + flightNumInput + "' " +
-                   "ORDER BY CASE " +
-                   "WHEN DayOfWeek = 'Monday' THEN 1 " +
-                   "WHEN DayOfWeek = 'Tuesday' THEN 2 " +
-                   "WHEN DayOfWeek = 'Wednesday' THEN 3 " +
-                   "WHEN DayOfWeek = 'Thursday' THEN 4 " +
-                   "WHEN DayOfWeek = 'Friday' THEN 5 " +
-                   "WHEN DayOfWeek = 'Saturday' THEN 6 " +
-                   "WHEN DayOfWeek = 'Sunday' THEN 7 " +
-                   "END";
-
-         
-         List<List<String>> result = esql.executeQueryAndReturnResultHeaders(query);
-         if (result.size() <= 1) {
+         List<ReferenceCache.Departure> schedule = esql.references().schedule(flightNumInput);
+         if (schedule.isEmpty()) {
             System.out.println("No flight information available.");
             System.out.println();
             return;
          }
+         List<List<String>> result = new ArrayList<List<String>>();
+         result.add(Arrays.asList("day_of_week", "departure_time", "arrival_time"));
+         for (ReferenceCache.Departure d : schedule) {
+            result.add(Arrays.asList(d.dayOfWeek, d.departureTime, d.arrivalTime));
+         }
          printTable(result);
          return;
       } catch (Exception e) {
@@ -601,18 +1161,17 @@ public class AirlineManagement {
             return;
          }
 
-         String query = "SELECT SeatsTotal - SeatsSold AS seats_available, SeatsSold AS seats_sold " + 
-                        "FROM FlightInstance " +
-                        "WHERE FlightNumber = '" + flightNumInput + "' " +
-                        "AND FlightDate = '" + dateInput + "' ";
-
-         
-         List<List<String>> result = esql.executeQueryAndReturnResultHeaders(query);
-         if (result.size() <= 1) {
+         List<SeatInventory.Seats> seats = esql.seats().seats(flightNumInput, shortDate(dateInput));
+         if (seats.isEmpty()) {
             System.out.println("No flight information available.");
             System.out.println();
             return;
          }
+         List<List<String>> result = new ArrayList<List<String>>();
+         result.add(Arrays.asList("seats_available", "seats_sold"));
+         for (SeatInventory.Seats s : seats) {
+            result.add(Arrays.asList(String.valueOf(s.available()), String.valueOf(s.sold)));
+         }
          printTable(result);
          return;
 
@@ -642,34 +1201,29 @@ public class AirlineManagement {
             return;
          }
 
-         String query = "SELECT FlightNumber AS flight_number, FlightDate AS flight_date, " +
-                     "CASE " +
-                        "WHEN DepartedOnTime THEN 'Yes' " +
-                        "WHEN NOT DepartedOnTime THEN 'No' " +
-                        "ELSE 'Unknown' " +
-                     "END AS DepartedOnTime, " +
-                     "CASE " +
-                        "WHEN ArrivedOnTime THEN 'Yes' " +
-                        "WHEN NOT ArrivedOnTime THEN 'No' " +
-                        "ELSE 'Unknown' " +
-                     "END AS ArrivedOnTime " +
-                     "FROM FlightInstance " +
-                     "WHERE FlightNumber = '" + flightNumInput + "' " +
-                     "AND FlightDate = '" + dateInput + "'";
-
-         List<List<String>> result = esql.executeQueryAndReturnResultHeaders(query);
-         if (result.size() <= 1) {
+         List<FlightColumns.Status> statuses = esql.columns().status(flightNumInput, shortDate(dateInput));
+         if (statuses.isEmpty()) {
             System.out.println("No flight information available.");
             System.out.println();
             return;
          }
-         printTable(result);
+         List<List<String>> table = new ArrayList<List<String>>();
+         table.add(Arrays.asList("flight_number", "flight_date", "departedontime", "arrivedontime"));
+         for (FlightColumns.Status s : statuses) {
+            table.add(Arrays.asList(s.flightNumber, s.flightDate.toString(), yesNo(s.departedOnTime), yesNo(s.arrivedOnTime)));
+         }
+         printTable(table);
          return;
       } catch (Exception e) {
          System.err.println("Error in feature3: " + e.getMessage());
          return;
       }
    }
+   // a flag as FLIGHT_STATUS shows it
+   private static String yesNo(Boolean flag) {
+      return flag == null ? "Unknown" : flag ? "Yes" : "No";
+   }
+
    public static void feature4(AirlineManagement esql) {
       // View Flights of the day
       try{
@@ -684,19 +1238,13 @@ public class AirlineManagement {
             return;
          }
 
-         String query = "SELECT fi.FlightNumber AS flight_number, f.DepartureCity AS departure_city, f.ArrivalCity AS arrival_city, s.DepartureTime AS departure_time, s.ArrivalTime AS arrival_time " +
-                     "FROM FlightInstance fi JOIN Schedule s ON fi.FlightNumber = s.FlightNumber " +
-                     "JOIN Flight f ON fi.FlightNumber = f.FlightNumber " +
-                     "WHERE fi.FlightDate = '" + dateInput + "'" +
-                     "AND TRIM(TO_CHAR(fi.FlightDate, 'Day')) = s.DayOfWeek";
-
-         List<List<String>> result = esql.executeQueryAndReturnResultHeaders(query);
-         if (result.size() <= 1) {
+         List<DeparturesBoard.Line> departures = esql.board().departures(shortDate(dateInput));
+         if (departures.isEmpty()) {
             System.out.println("No flights on this date.");
             System.out.println();
             return;
          }
-         printTable(result);
+         printTable(DeparturesBoard.table(departures));
          return;
       } catch (Exception e) {
          System.err.println("Error in feature4: " + e.getMessage());
@@ -724,19 +1272,37 @@ public class AirlineManagement {
             return;
          }
 
-         String query = "SELECT FirstName AS first_name, LastName AS last_name, Status " +
-                        "FROM Customer c JOIN Reservation r on c.CustomerID = r.CustomerID " +
-                        "JOIN FlightInstance fi ON fi.FlightInstanceID = r.FlightInstanceID " +
-                        "WHERE fi.FlightNumber = '" + flightNumInput + "' " +
-                        "AND fi.FlightDate = '" + dateInput + "' ";
+         System.out.print("Only show a status (reserved, waitlist, flown, cancelled; Enter for all): ");
+         String status = in.readLine();
+         status = status == null || status.trim().isEmpty() ? null : status.trim().toLowerCase();
+         if (status != null && !PassengerManifest.STATUSES.contains(status)) {
+            System.out.println("Invalid status. Please use reserved, waitlist, flown or cancelled.");
+            return;
+         }
 
-         List<List<String>> result = esql.executeQueryAndReturnResultHeaders(query);
-         if (result.size() <= 1) {
+         List<Integer> instances = new ArrayList<Integer>();
+         for (SeatInventory.Seats s : esql.seats().seats(flightNumInput, shortDate(dateInput))) {
+            instances.add(s.flightInstanceID);
+         }
+         PassengerManifest manifest = new PassengerManifest(esql, instances, status, PassengerManifest.PAGE_SIZE);
+         List<List<String>> page = manifest.next();
+         if (page.size() == 1) {
             System.out.println("No passenger information available.");
             System.out.println();
             return;
          }
-         printTable(result);
+         printTable(page);
+         while (manifest.hasMore()) {
+            System.out.print("Press Enter for the next page, or q to stop: ");
+            String more = in.readLine();
+            if (more == null || more.trim().equalsIgnoreCase("q")) {
+               break;
+            }
+            page = manifest.next();
+            if (page.size() > 1) {
+               printTable(page);
+            }
+         }
          return;
       } catch (Exception e) {
          System.err.println("Error in feature5: " + e.getMessage());
@@ -754,17 +1320,10 @@ public class AirlineManagement {
         }
          reservationNumInput = reservationNumInput.trim().toUpperCase();
 
-         String query = "SELECT FirstName AS first_name, LastName AS last_name, Gender, DOB, Address, Phone, Zip " + 
-                        "FROM Customer c JOIN Reservation r on c.CustomerID = r.CustomerID " + 
-                        "WHERE r.ReservationID = '" + reservationNumInput + "'";
-
-         List<List<String>> result = esql.executeQueryAndReturnResultHeaders(query);
-         if (result.size() <= 1) {
+         if (esql.executeQueryAndPrintTable(SqlStatement.TRAVELER_BY_RESERVATION, reservationNumInput) == 0) {
             System.out.println("No traveler information available.");
             System.out.println();
-            return;
          }
-         printTable(result);
          return;
       } catch (Exception e) {
          System.err.println("Error in feature6: " + e.getMessage());
@@ -782,17 +1341,16 @@ public class AirlineManagement {
         }
          planeIDInput = planeIDInput.trim().toUpperCase();
 
-         String query = "SELECT Make, Model, EXTRACT(YEAR FROM CURRENT_DATE) - Year AS Age, LastRepairDate AS last_repair_date " + 
-                        "FROM Plane p " + 
-                        "WHERE p.PlaneID = '" + planeIDInput + "'";
-
-         List<List<String>> result = esql.executeQueryAndReturnResultHeaders(query);
-         if (result.size() <= 1) {
+         ReferenceCache.Plane plane = esql.references().plane(planeIDInput);
+         if (plane == null) {
             System.out.println("No plane information available.");
             System.out.println();
             return;
          }
-         printTable(result);
+         int age = LocalDate.now().getYear() - plane.year;
+         printTable(Arrays.asList(
+            Arrays.asList("make", "model", "age", "last_repair_date"),
+            Arrays.asList(plane.make, plane.model, String.valueOf(age), plane.lastRepairDate)));
          return;
       } catch (Exception e) {
          System.err.println("Error in feature7: " + e.getMessage());
@@ -810,17 +1368,10 @@ public class AirlineManagement {
         }
          technicianIDInput = technicianIDInput.trim().toUpperCase();
 
-         String query = "SELECT PlaneID, RepairCode AS repair_code, RepairDate AS repair_date " +
-                        "FROM Repair r join Technician t ON r.TechnicianID = t.TechnicianID " +
-                        "WHERE t.technicianID = '" + technicianIDInput + "'";
-
-         List<List<String>> result = esql.executeQueryAndReturnResultHeaders(query);
-         if (result.size() <= 1) {
+         if (esql.executeQueryAndPrintTable(SqlStatement.REPAIRS_BY_TECHNICIAN, technicianIDInput) == 0) {
             System.out.println("No repair information available.");
             System.out.println();
-            return;
          }
-         printTable(result);
          return;
       } catch (Exception e) {
          System.err.println("Error in feature8: " + e.getMessage());
@@ -862,17 +1413,18 @@ public class AirlineManagement {
             return;
          }
 
-         String query = "SELECT RepairDate AS repair_date, RepairCode AS repair_code, TechnicianID " +
-                        "FROM Repair r " +
-                        "WHERE r.PlaneID = '" + planeIDInput + "' " +
-                        "AND r.RepairDate BETWEEN DATE '" + dateRangeStart + "' AND DATE '" + dateRangeEnd + "' ";
-
-         List<List<String>> result = esql.executeQueryAndReturnResultHeaders(query);
-         if (result.size() <= 1) {
+         List<MaintenanceTimeline.Event> repairs =
+            esql.timeline().repairs(planeIDInput, LocalDate.parse(dateRangeStart), LocalDate.parse(dateRangeEnd));
+         if (repairs.isEmpty()) {
             System.out.println("No repair information available.");
             System.out.println();
             return;
          }
+         List<List<String>> result = new ArrayList<List<String>>();
+         result.add(Arrays.asList("repair_date", "repair_code", "technicianid"));
+         for (MaintenanceTimeline.Event r : repairs) {
+            result.add(Arrays.asList(r.date.toString(), r.repairCode, r.personID));
+         }
          printTable(result);
          return;
       } catch (Exception e) {
@@ -915,20 +1467,15 @@ public class AirlineManagement {
             return;
          }
 
-         String query = "SELECT COUNT(*) AS Num_FlightInstances, " +
-               "SUM(SeatsSold) AS Sold_Tickets, " +
-               "SUM(SeatsTotal - SeatsSold) AS Unsold_Tickets " +
-               "FROM FlightInstance " +
-               "WHERE FlightNumber = '" + flightNumInput + "' " +
-               "AND FlightDate BETWEEN DATE '" + dateRangeStart + "' AND DATE '" + dateRangeEnd + "' ";
-
-         List<List<String>> result = esql.executeQueryAndReturnResultHeaders(query);
-         if (result.size() <= 1) {
+         FlightColumns.Totals totals = esql.columns().between(flightNumInput, shortDate(dateRangeStart), shortDate(dateRangeEnd));
+         if (totals.instances == 0) {
             System.out.println("No flight statistics available.");
             System.out.println();
             return;
          }
-         printTable(result);
+         printTable(Arrays.asList(
+            Arrays.asList("num_flightinstances", "sold_tickets", "unsold_tickets"),
+            Arrays.asList(String.valueOf(totals.instances), String.valueOf(totals.seatsSold), String.valueOf(totals.seatsUnsold))));
          return;
       } catch (Exception e) {
          System.err.println("Error in feature10: " + e.getMessage());
@@ -952,15 +1499,27 @@ public class AirlineManagement {
             return;
         }
 
-         String query = "SELECT DepartureTime AS departure_time, ArrivalTime AS arrival_time, fi.NumOfStops AS num_stops, ROUND(100.0 * SUM(CASE WHEN fi2.DepartedOnTime AND fi2.ArrivedOnTime THEN 1 ELSE 0 END) / COUNT(fi2.FlightInstanceID), 2) AS On_Time_Record_as_percent " +
-                        "FROM Flight f " + 
-                        "JOIN Schedule s ON f.FlightNumber = s.FlightNumber " + 
-                        "JOIN FlightInstance fi ON f.FlightNumber = fi.FlightNumber " + 
-                        "JOIN FlightInstance fi2 ON f.FlightNumber = fi2.FlightNumber " +
-                        "WHERE f.ArrivalCity ILIKE '" + destination + "'AND f.DepartureCity ILIKE '" + departureCity + "' " +
-                        "GROUP BY f.FlightNumber, s.DepartureTime, s.ArrivalTime, fi.NumOfStops";
-         List<List<String>> result = esql.executeQueryAndReturnResultHeaders(query);
-         if (result.size() <= 1) {
+         // the flights of the city pair from the ReferenceCache, their on-time
+         // record and stop counts from FlightColumns; flights without an
+         // instance are left out
+         List<List<String>> result = new ArrayList<List<String>>();
+         result.add(Arrays.asList("departure_time", "arrival_time", "num_stops", "on_time_record_as_percent"));
+         for (ReferenceCache.Flight flight : esql.references().flightsBetween(departureCity, destination)) {
+            FlightColumns.OnTime onTime = esql.columns().onTime(flight.flightNumber);
+            if (onTime.instances == 0) {
+               continue;
+            }
+            String percent = BigDecimal.valueOf(100L * onTime.onTime)
+                                       .divide(BigDecimal.valueOf(onTime.instances), 2, RoundingMode.HALF_UP)
+                                       .toPlainString();
+            for (ReferenceCache.Departure departure : esql.references().schedule(flight.flightNumber)) {
+               for (Integer numOfStops : onTime.stops) {
+                  result.add(Arrays.asList(departure.departureTime, departure.arrivalTime,
+                                           String.valueOf(numOfStops), percent));
+               }
+            }
+         }
+         if (result.size() == 1) {
             System.out.println("No Flights Available.");
             System.out.println();
             return;
@@ -982,18 +1541,10 @@ public class AirlineManagement {
             return;
       }
 
-         String query = "SELECT FlightInstanceID AS flight_instance, TicketCost AS ticket_costs_for_flight, FlightDate AS flight_date " +
-               "FROM FlightInstance  " +
-               "WHERE FlightNumber = '" + flightNumber + "'" + 
-               "ORDER BY FlightInstanceID";
-
-         List<List<String>> result = esql.executeQueryAndReturnResultHeaders(query);
-         if (result.size() <= 1) {
+         if (esql.executeQueryAndPrintTable(SqlStatement.TICKET_COSTS, flightNumber) == 0) {
             System.out.println("No tickets available for this flight.");
             System.out.println();
-            return;
          }
-         printTable(result);
          return;
    } catch (Exception e) {
       System.err.println("Error in feature12: " + e.getMessage());
@@ -1009,18 +1560,16 @@ public class AirlineManagement {
             System.out.println("Flight number cannot be empty, please try again and enter a valid flight number.");
             return;
       }
-         String query = "SELECT Make AS plane_make, Model as plane_model "+
-                        "FROM Flight f " + 
-                        "JOIN Plane p ON f.PlaneID = p.PlaneID " +
-                        "WHERE FlightNumber = '" + flightNumber + "'";
-
-         List<List<String>> result = esql.executeQueryAndReturnResultHeaders(query);
-         if (result.size() <= 1) {
+         ReferenceCache.Flight flight = esql.references().flight(flightNumber);
+         ReferenceCache.Plane plane = flight != null && flight.planeID != null ? esql.references().plane(flight.planeID) : null;
+         if (plane == null) {
             System.out.println("Flight number does not exist or no plane associated with this flight.");
             System.out.println();
             return;
          }
-         printTable(result);
+         printTable(Arrays.asList(
+            Arrays.asList("plane_make", "plane_model"),
+            Arrays.asList(plane.make, plane.model)));
          return;
    } catch (Exception e) {
       System.err.println("Error in feature13: " + e.getMessage());
@@ -1083,20 +1632,6 @@ public static void feature14(AirlineManagement esql) {
          return;
       }
 
-      String latestCustomerID = "SELECT MAX(CustomerID) FROM Customer;";
-      List<List<String>> result = esql.executeQueryAndReturnResult(latestCustomerID);
-      
-      int nextCustomerID = 1; 
-
-      if (result != null && !result.isEmpty() && result.get(0).get(0) != null) {
-         nextCustomerID = Integer.parseInt(result.get(0).get(0)) + 1;
-      }
-
-      String query = "INSERT INTO Customer (CustomerID, FirstName, LastName, Gender, DOB, Address, Phone, Zip) " +
-                     "VALUES (" + nextCustomerID + ", '" + firstName + "', '" + lastName + "', '" + gender + "', '" + dob + "', '" + address + "', '" + phone + "', '" + zip + "');";
-
-      esql.executeUpdate(query);
-
       System.out.println("Which flight would you like to make a reservation for?");
       System.out.print("Enter flight instance: ");
       String flightInstanceID = in.readLine();
@@ -1105,47 +1640,23 @@ public static void feature14(AirlineManagement esql) {
          return;
       }
 
-      String flightCheckQuery = "SELECT SeatsTotal, SeatsSold FROM FlightInstance WHERE FlightInstanceID = " + flightInstanceID + ";";
-      List<List<String>> seatInfo = esql.executeQueryAndReturnResult(flightCheckQuery);
-
-      if (seatInfo == null || seatInfo.isEmpty()) {
+      int flightInstance;
+      try {
+         flightInstance = Integer.parseInt(flightInstanceID.trim());
+      } catch (NumberFormatException e) {
          System.out.println("Flight instance not found. Please enter a valid FlightInstanceID.");
          return;
       }
 
-      int seatsTotal = Integer.parseInt(seatInfo.get(0).get(0));
-      int seatsSold = Integer.parseInt(seatInfo.get(0).get(1));
-      String reservationStatus;
-
-      if (seatsSold < seatsTotal) {
-         reservationStatus = "reserved";
-         String updateSeats = "UPDATE FlightInstance SET SeatsSold = SeatsSold + 1 WHERE FlightInstanceID = " + flightInstanceID + ";";
-         esql.executeUpdate(updateSeats);
-      } else {
-         reservationStatus = "waitlist";
-      }        
-
-      String latestReservation = "SELECT MAX(ReservationID) FROM Reservation;";
-      List<List<String>> reservationResult = esql.executeQueryAndReturnResult(latestReservation);
+      BookingEngine.Booking booking = esql.bookings().book(new BookingEngine.Request(
+         firstName, lastName, gender, dob, address, phone, zip, flightInstance));
 
-      int nextResNumber = 1;
-      if (reservationResult != null && !reservationResult.isEmpty() && reservationResult.get(0).get(0) != null) {
-         String latestResID = reservationResult.get(0).get(0);
-         if (latestResID.matches("R\\d+")) {
-            nextResNumber = Integer.parseInt(latestResID.substring(1)) + 1;
-         }
-      }  
-
-      String reservationID = "R" + nextResNumber;
-
-      String insertReservation = "INSERT INTO Reservation (ReservationID, CustomerID, FlightInstanceID, Status) " +
-                                 "VALUES ('" + reservationID + "', " + nextCustomerID + ", " + flightInstanceID + ", '" + reservationStatus + "');";
-      esql.executeUpdate(insertReservation);
-
-      if (reservationStatus.equals("reserved")) {
-         System.out.println("Your reservation is successful! Your reservation ID is: " + reservationID);
+      if (booking.outcome == BookingEngine.Outcome.NO_SUCH_FLIGHT) {
+         System.out.println("Flight instance not found. Please enter a valid FlightInstanceID.");
+      } else if (booking.outcome == BookingEngine.Outcome.RESERVED) {
+         System.out.println("Your reservation is successful! Your reservation ID is: " + booking.reservationID);
       } else {
-         System.out.println("The flight you're requesting is currently full. You have been added to the waitlist. Your reservation ID is: " + reservationID);
+         System.out.println("The flight you're requesting is currently full. You have been added to the waitlist. Your reservation ID is: " + booking.reservationID);
       }
 
    } catch (Exception e) {
@@ -1189,19 +1700,18 @@ public static void feature14(AirlineManagement esql) {
             return;
          }
 
-         String query = "SELECT r.RepairCode AS repair_code, r.RepairDate AS repair_date " +
-                        "FROM Repair r " +
-                        "WHERE r.PlaneID = '" + planeID + "' " +
-                        "AND r.RepairDate BETWEEN DATE '" + dateRangeStart + "' AND DATE '" + dateRangeEnd + "' " +
-                        "ORDER BY r.RepairDate";
-
-
-         List<List<String>> result = esql.executeQueryAndReturnResultHeaders(query);
-         if (result.size() <= 1) {
+         List<MaintenanceTimeline.Event> repairs =
+            esql.timeline().repairs(planeID, LocalDate.parse(dateRangeStart), LocalDate.parse(dateRangeEnd));
+         if (repairs.isEmpty()) {
             System.out.println("No maintenances were made for this date range/plane.");
             System.out.println();
             return;
          }
+         List<List<String>> result = new ArrayList<List<String>>();
+         result.add(Arrays.asList("repair_code", "repair_date"));
+         for (MaintenanceTimeline.Event r : repairs) {
+            result.add(Arrays.asList(r.repairCode, r.date.toString()));
+         }
          printTable(result);
          return;
    } catch (Exception e) {
@@ -1219,20 +1729,10 @@ public static void feature14(AirlineManagement esql) {
             return;
          }
 
-         String query = "SELECT p.Name AS pilot_name, mr.RequestID, mr.PlaneID, mr.RepairCode, mr.RequestDate " +
-                        "FROM MaintenanceRequest mr " +
-                        "JOIN Pilot p ON mr.PilotID = p.PilotID " +
-                        "WHERE mr.PilotID = '" + pilotID + "' " +
-                        "ORDER BY mr.RequestDate;";
-
-
-         List<List<String>> result = esql.executeQueryAndReturnResultHeaders(query);
-         if (result.size() <= 1) {
+         if (esql.executeQueryAndPrintTable(SqlStatement.REQUESTS_BY_PILOT, pilotID) == 0) {
             System.out.println("Pilot did not make any maintenance requests.");
             System.out.println();
-            return;
          }
-         printTable(result);
          return;
    } catch (Exception e) {
       System.err.println("Error in feature16: " + e.getMessage());
@@ -1249,8 +1749,7 @@ public static void feature14(AirlineManagement esql) {
             return;
          }
 
-         String checkPlane = "SELECT 1 FROM Plane WHERE PlaneID = '" + planeID + "';";
-         if (esql.executeQuery(checkPlane) == 0) {
+         if (!esql.references().planeExists(planeID)) {
             System.out.println("Error: Plane ID does not exist in the database.");
             return;
          }
@@ -1279,24 +1778,15 @@ public static void feature14(AirlineManagement esql) {
             System.out.println("Technician ID cannot be empty.");
             return;
          }
-         String checkTech = "SELECT 1 FROM Technician WHERE TechnicianID = '" + techID + "';";
-         if (esql.executeQuery(checkTech) == 0) {
+         if (!esql.references().technicianExists(techID)) {
             System.out.println("Error: Technician ID does not exist in the database.");
             return;
          }
 
 
-         String latestRepair = "SELECT MAX(RepairID) FROM Repair;";
-         List<List<String>> result = esql.executeQueryAndReturnResult(latestRepair);
+         int nextRepairID = esql.ids().next(IdAllocator.Sequence.REPAIR);
 
-         int nextRepairID = 1; 
-         if (result != null && !result.isEmpty() && result.get(0).get(0) != null) {
-            nextRepairID = Integer.parseInt(result.get(0).get(0)) + 1;
-         }
-
-         String query = "INSERT INTO Repair (RepairID, PlaneID, RepairCode, RepairDate, TechnicianID) " +
-                           "VALUES (" + nextRepairID + ", '" + planeID + "', '" + repairCode + "', DATE '" + repairDate + "', '" + techID + "');";
-         esql.executeUpdate(query);
+         esql.writes().repair(nextRepairID, planeID, repairCode, repairDate, techID);
          System.out.println("Repair on plane " + planeID + " was logged with RepairID " + repairCode + " on " + repairDate + ".");
 
          return;
@@ -1315,8 +1805,7 @@ public static void feature14(AirlineManagement esql) {
             System.out.println("Plane ID cannot be empty, please try again and enter a valid plane ID.");
             return;
          }
-         String checkPlane = "SELECT 1 FROM Plane WHERE PlaneID = '" + planeID + "';";
-         if (esql.executeQuery(checkPlane) == 0) {
+         if (!esql.references().planeExists(planeID)) {
             System.out.println("Error: Plane ID does not exist in the database.");
             return;
          }
@@ -1345,25 +1834,83 @@ public static void feature14(AirlineManagement esql) {
             System.out.println("Pilot ID cannot be empty, please try again and enter a valid pilot ID.");
             return;
          }
-         String checkPilot = "SELECT 1 FROM Pilot WHERE PilotID = '" + pilotID + "';";
-         if (esql.executeQuery(checkPilot) == 0) {
+         if (!esql.references().pilotExists(pilotID)) {
             System.out.println("Error: Pilot ID does not exist in the database.");
             return;
          }
 
-         String latestRequestID = "SELECT MAX(RequestID) FROM MaintenanceRequest;";
-         List<List<String>> result = esql.executeQueryAndReturnResult(latestRequestID);
-         int nextRequestID = 1;
-         if (result != null && !result.isEmpty() && result.get(0).get(0) != null) {
-            nextRequestID = Integer.parseInt(result.get(0).get(0)) + 1;
-         }
-         String query = "INSERT INTO MaintenanceRequest (RequestID, PlaneID, RepairCode, RequestDate, PilotID) " +
-                        "VALUES (" + nextRequestID + ", '" + planeID + "', '" + repairCode + "', DATE '" + requestDate + "', '" + pilotID + "');";
-         esql.executeUpdate(query);
+         int nextRequestID = esql.ids().next(IdAllocator.Sequence.REQUEST);
+         esql.writes().request(nextRequestID, planeID, repairCode, requestDate, pilotID);
          System.out.println("Maintenance request on plane " + planeID  + " with request code " + repairCode + " on " + requestDate + " was logged.");
       } catch (Exception e) {
          System.err.println("Error in feature18: " + e.getMessage());
          return;
       }
    }
+
+   public static void feature19(AirlineManagement esql) {
+      // Cancel a Reservation
+      try {
+         System.out.print("Enter reservation ID: ");
+         String reservationID = in.readLine();
+         if (reservationID == null || reservationID.trim().isEmpty()) {
+            System.out.println("Reservation ID cannot be empty, please try again and enter a valid reservation ID.");
+            return;
+         }
+         reservationID = reservationID.trim().toUpperCase();
+
+         BookingEngine.Cancellation cancellation = esql.bookings().cancel(reservationID);
+         if (cancellation == BookingEngine.Cancellation.NO_SUCH_RESERVATION) {
+            System.out.println("Reservation not found. Please enter a valid reservation ID.");
+         } else if (cancellation == BookingEngine.Cancellation.NOT_ACTIVE) {
+            System.out.println("Reservation " + reservationID + " is already cancelled or flown.");
+         } else {
+            System.out.println("Reservation " + reservationID + " was cancelled.");
+         }
+      } catch (Exception e) {
+         System.err.println("Error in feature19: " + e.getMessage());
+         return;
+      }
+   }
+
+   public static void feature22(AirlineManagement esql) {
+      // View Open Maintenance Requests
+      try {
+         System.out.print("Enter a Plane ID (Enter for all planes): ");
+         String planeID = in.readLine();
+         planeID = planeID == null ? "" : planeID.trim().toUpperCase();
+
+         MaintenanceMatcher matcher = esql.matcher();
+         List<List<String>> result = new ArrayList<List<String>>();
+         if (planeID.isEmpty()) {
+            result.add(Arrays.asList("plane_id", "open_requests"));
+            for (Map.Entry<String, Integer> e : matcher.outstandingPerPlane().entrySet()) {
+               result.add(Arrays.asList(e.getKey(), String.valueOf(e.getValue())));
+            }
+         } else {
+            result.add(Arrays.asList("request_id", "repair_code", "request_date", "pilot_id", "days_open"));
+            LocalDate today = LocalDate.now();
+            for (MaintenanceMatcher.Match m : matcher.outstanding(planeID)) {
+               result.add(Arrays.asList(String.valueOf(m.requestID), m.repairCode, m.requestDate.toString(), m.pilotID,
+                                        String.valueOf(ChronoUnit.DAYS.between(m.requestDate, today))));
+            }
+         }
+         if (result.size() == 1) {
+            System.out.println("No open maintenance requests.");
+         } else {
+            printTable(result);
+         }
+
+         if (matcher.matched() > 0) {
+            printTable(Arrays.asList(
+               Arrays.asList("repaired_requests", "p50_days_to_repair", "p90_days_to_repair", "p99_days_to_repair"),
+               Arrays.asList(String.valueOf(matcher.matched()), String.valueOf(matcher.daysToRepair(50)),
+                             String.valueOf(matcher.daysToRepair(90)), String.valueOf(matcher.daysToRepair(99)))));
+         }
+         System.out.println();
+      } catch (Exception e) {
+         System.err.println("Error in feature22: " + e.getMessage());
+         return;
+      }
+   }
 }//end AirlineManagement
@@ -0,0 +1,383 @@
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs menu features from a command file instead of the keyboard, for
+ * reporting jobs and for replaying recorded traffic.
+ *
+ * Every line of the file names a feature and the answers to its prompts,
+ * separated by blanks; an answer holding blanks is put in double quotes:
+ *
+ *    feature2 F100 5/5/25
+ *    feature11 "Los Angeles" Boston
+ *
+ * Blank lines and lines starting with # are ignored.  The commands run on
+ * THREADS worker threads sharing the connection pool, each in its own
+ * session, and every finished command is written to standard output as
+ * one JSON object per line, in the order they finish:
+ *
+ *    {"line":1,"command":"feature2","args":["F100","5/5/25"],"ok":true,
+ *     "ms":3.2,"tables":[[["seats_available","seats_sold"],["10","40"]]],
+ *     "messages":[],"errors":[]}
+ *
+ * tables holds each result table as its header followed by its rows.
+ * messages holds the other lines the feature printed, without its
+ * prompts; errors holds what it printed to System.err, and a command with
+ * errors is not ok.  No login is needed: the features run with the rights
+ * of the database user, as the menu's own features do.
+ *
+ * Usage: BatchRunner <dbname> <port> <user> <command file | ->
+ */
+public class BatchRunner {
+
+   // commands run at the same time
+   private static final int THREADS = Integer.getInteger("airline.batch.threads", 4);
+
+   private interface Feature {
+      void run(AirlineManagement esql);
+   }
+
+   private static final Map<String, Feature> FEATURES = new HashMap<String, Feature>();
+   static {
+      FEATURES.put("feature1", AirlineManagement::feature1);
+      FEATURES.put("feature2", AirlineManagement::feature2);
+      FEATURES.put("feature3", AirlineManagement::feature3);
+      FEATURES.put("feature4", AirlineManagement::feature4);
+      FEATURES.put("feature5", AirlineManagement::feature5);
+      FEATURES.put("feature6", AirlineManagement::feature6);
+      FEATURES.put("feature7", AirlineManagement::feature7);
+      FEATURES.put("feature8", AirlineManagement::feature8);
+      FEATURES.put("feature9", AirlineManagement::feature9);
+      FEATURES.put("feature10", AirlineManagement::feature10);
+      FEATURES.put("feature11", AirlineManagement::feature11);
+      FEATURES.put("feature12", AirlineManagement::feature12);
+      FEATURES.put("feature13", AirlineManagement::feature13);
+      FEATURES.put("feature14", AirlineManagement::feature14);
+      FEATURES.put("feature15", AirlineManagement::feature15);
+      FEATURES.put("feature16", AirlineManagement::feature16);
+      FEATURES.put("feature17", AirlineManagement::feature17);
+      FEATURES.put("feature18", AirlineManagement::feature18);
+      FEATURES.put("feature19", AirlineManagement::feature19);
+      FEATURES.put("feature22", AirlineManagement::feature22);
+   }
+
+   /*
+    * Captures what a feature prints.  Anything after the last line break
+    * when the feature reads its next answer is a prompt and is dropped.
+    */
+   private static final class Capture extends ByteArrayOutputStream {
+      synchronized void dropPartialLine() {
+         while (this.count > 0 && this.buf[this.count - 1] != '\n') {
+            this.count--;
+         }
+      }
+
+      synchronized List<String> lines() {
+         List<String> lines = new ArrayList<String>();
+         for (String line : toString(StandardCharsets.UTF_8).split("\r?\n")) {
+            if (!line.trim().isEmpty()) {
+               lines.add(line);
+            }
+         }
+         return lines;
+      }
+   }//end Capture
+
+   // the answers of one command, read by the feature like keyboard input
+   private static final class Answers extends BufferedReader {
+      private final List<String> _answers;
+      private final Capture _out;
+      private int _next = 0;
+
+      Answers(List<String> answers, Capture out) {
+         super(new StringReader(""));
+         this._answers = answers;
+         this._out = out;
+      }
+
+      public String readLine() {
+         this._out.dropPartialLine();
+         return this._next < this._answers.size() ? this._answers.get(this._next++) : null;
+      }
+
+      public boolean ready() {
+         return this._next < this._answers.size();
+      }
+   }//end Answers
+
+   private final AirlineManagement _esql;
+   private final PrintStream _results;
+   private final AtomicLong _commands = new AtomicLong();
+   private final AtomicLong _failed = new AtomicLong();
+
+   /**
+    * @param esql the database front end the features run against
+    * @param results where the JSON lines are written
+    */
+   public BatchRunner(AirlineManagement esql, PrintStream results) {
+      this._esql = esql;
+      this._results = results;
+   }
+
+   /**
+    * Runs every command of the file and waits for the last one.
+    *
+    * @return the number of commands that failed
+    * @throws java.io.IOException when the command file cannot be read
+    */
+   public long run(BufferedReader commands) throws IOException, InterruptedException {
+      ExecutorService workers = Executors.newFixedThreadPool(THREADS);
+      // keeps a long file from being queued in memory all at once
+      Semaphore queued = new Semaphore(THREADS * 4);
+      try {
+         int lineNumber = 0;
+         String line;
+         while ((line = commands.readLine()) != null) {
+            lineNumber++;
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+               continue;
+            }
+            final int number = lineNumber;
+            queued.acquire();
+            workers.execute(() -> {
+               try {
+                  execute(number, trimmed);
+               } finally {
+                  queued.release();
+               }
+            });
+         }
+      } finally {
+         workers.shutdown();
+         workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+      }
+      return this._failed.get();
+   }//end run
+
+   public long commands() {
+      return this._commands.get();
+   }
+
+   /*
+    * Runs one command in a session of its own and writes its result.
+    */
+   private void execute(int number, String line) {
+      List<String> words;
+      try {
+         words = split(line);
+      } catch (IllegalArgumentException e) {
+         words = new ArrayList<String>();
+         words.add(line);
+         report(number, words, false, 0, new ArrayList<List<List<String>>>(), new ArrayList<String>(),
+                listOf(e.getMessage()));
+         return;
+      }
+      String command = words.get(0);
+      Feature feature = FEATURES.get(command);
+      if (feature == null) {
+         report(number, words, false, 0, new ArrayList<List<List<String>>>(), new ArrayList<String>(),
+                listOf("Unknown command: " + command));
+         return;
+      }
+
+      Capture out = new Capture();
+      Capture err = new Capture();
+      List<List<List<String>>> tables = new ArrayList<List<List<String>>>();
+      Session.bind(new Session(new Answers(words.subList(1, words.size()), out),
+                               new PrintStream(out, true), new PrintStream(err, true), tables));
+      this._esql.metrics().enterFeature(command);
+      long start = System.nanoTime();
+      boolean threw = false;
+      try {
+         feature.run(this._esql);
+      } catch (RuntimeException e) {
+         threw = true;
+         Session.current().err().println("Error in " + command + ": " + e);
+      } finally {
+         this._esql.metrics().exitFeature();
+         Session.unbind();
+      }
+      long nanos = System.nanoTime() - start;
+      List<String> errors = err.lines();
+      report(number, words, !threw && errors.isEmpty(), nanos, tables, out.lines(), errors);
+   }//end execute
+
+   private void report(int number, List<String> words, boolean ok, long nanos,
+                       List<List<List<String>>> tables, List<String> messages, List<String> errors) {
+      this._commands.incrementAndGet();
+      if (!ok) {
+         this._failed.incrementAndGet();
+      }
+      StringBuilder json = new StringBuilder();
+      json.append("{\"line\":").append(number);
+      json.append(",\"command\":");
+      string(json, words.get(0));
+      json.append(",\"args\":");
+      array(json, words.subList(1, words.size()));
+      json.append(",\"ok\":").append(ok);
+      json.append(",\"ms\":").append(String.format("%.3f", nanos / 1e6));
+      json.append(",\"tables\":[");
+      for (int t = 0; t < tables.size(); t++) {
+         if (t > 0) {
+            json.append(',');
+         }
+         json.append('[');
+         List<List<String>> table = tables.get(t);
+         for (int r = 0; r < table.size(); r++) {
+            if (r > 0) {
+               json.append(',');
+            }
+            array(json, table.get(r));
+         }
+         json.append(']');
+      }
+      json.append("],\"messages\":");
+      array(json, messages);
+      json.append(",\"errors\":");
+      array(json, errors);
+      json.append('}');
+      synchronized (this._results) {
+         this._results.println(json);
+         this._results.flush();
+      }
+   }//end report
+
+   private static void array(StringBuilder json, List<String> values) {
+      json.append('[');
+      for (int i = 0; i < values.size(); i++) {
+         if (i > 0) {
+            json.append(',');
+         }
+         string(json, values.get(i));
+      }
+      json.append(']');
+   }
+
+   private static void string(StringBuilder json, String value) {
+      if (value == null) {
+         json.append("null");
+         return;
+      }
+      json.append('"');
+      for (int i = 0; i < value.length(); i++) {
+         char c = value.charAt(i);
+         switch (c) {
+            case '"': json.append("\\\""); break;
+            case '\\': json.append("\\\\"); break;
+            case '\n': json.append("\\n"); break;
+            case '\r': json.append("\\r"); break;
+            case '\t': json.append("\\t"); break;
+            default:
+               if (c < 0x20) {
+                  json.append(String.format("\\u%04x", (int) c));
+               } else {
+                  json.append(c);
+               }
+         }
+      }
+      json.append('"');
+   }
+
+   private static List<String> listOf(String value) {
+      List<String> list = new ArrayList<String>();
+      list.add(value);
+      return list;
+   }
+
+   /*
+    * Splits a command line into words at blanks; a word in double quotes
+    * may hold blanks, and \" or \\ inside it stand for " and \.
+    */
+   static List<String> split(String line) {
+      List<String> words = new ArrayList<String>();
+      StringBuilder word = new StringBuilder();
+      boolean inWord = false;
+      boolean quoted = false;
+      for (int i = 0; i < line.length(); i++) {
+         char c = line.charAt(i);
+         if (quoted) {
+            if (c == '\\' && i + 1 < line.length()) {
+               word.append(line.charAt(++i));
+            } else if (c == '"') {
+               quoted = false;
+            } else {
+               word.append(c);
+            }
+         } else if (c == '"') {
+            quoted = true;
+            inWord = true;
+         } else if (Character.isWhitespace(c)) {
+            if (inWord) {
+               words.add(word.toString());
+               word.setLength(0);
+               inWord = false;
+            }
+         } else {
+            word.append(c);
+            inWord = true;
+         }
+      }
+      if (quoted) {
+         throw new IllegalArgumentException("Unterminated quote");
+      }
+      if (inWord) {
+         words.add(word.toString());
+      }
+      return words;
+   }//end split
+
+   public static void main(String[] args) {
+      if (args.length != 4) {
+         System.err.println("Usage: java [-classpath <classpath>] BatchRunner <dbname> <port> <user> <command file | ->");
+         return;
+      }
+      // results own standard output; everything else goes to standard error
+      PrintStream results = Session.console().out();
+      Session.install();
+      Session.bind(new Session(null, Session.console().err(), Session.console().err()));
+      AirlineManagement esql = null;
+      int status = 0;
+      try {
+         Class.forName("org.postgresql.Driver");
+         esql = new AirlineManagement(args[0], args[1], args[2], "");
+         BufferedReader commands = new BufferedReader(new InputStreamReader(
+            args[3].equals("-") ? System.in : new FileInputStream(args[3]), StandardCharsets.UTF_8));
+         BatchRunner runner = new BatchRunner(esql, results);
+         long start = System.nanoTime();
+         long failed;
+         try {
+            failed = runner.run(commands);
+         } finally {
+            commands.close();
+         }
+         System.err.printf("%d commands, %d failed, in %.2fs%n",
+                           runner.commands(), failed, (System.nanoTime() - start) / 1e9);
+         status = failed > 0 ? 1 : 0;
+      } catch (Exception e) {
+         System.err.println("Batch failed: " + e.getMessage());
+         status = 2;
+      } finally {
+         if (esql != null) {
+            esql.cleanup();
+         }
+         System.err.flush();
+      }
+      System.exit(status);
+   }//end main
+}//end BatchRunner
@@ -0,0 +1,243 @@
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Books seats on flight instances without overselling.
+ *
+ * Customer and reservation numbers come from the IdAllocator, and each
+ * group of bookings is written by one statement (BOOKING_WRITE) together
+ * with the SeatDelta rows that persist the seats sold: one round trip,
+ * committed all or nothing.  Several processes book the same flights, so
+ * the seats are given out there: book_seats locks every instance of the
+ * group and reserves the requests in order while committed seats are left,
+ * waitlisting the rest.  The SeatInventory counters are then told what
+ * the group sold.
+ */
+public class BookingEngine {
+
+   /**
+    * What happened to one booking request.
+    */
+   public enum Outcome { RESERVED, WAITLISTED, NO_SUCH_FLIGHT }
+
+   /**
+    * What happened to a cancellation.
+    */
+   public enum Cancellation { CANCELLED, NO_SUCH_RESERVATION, NOT_ACTIVE }
+
+   /**
+    * A new customer asking for a seat on one flight instance.
+    */
+   public static class Request {
+      final String firstName;
+      final String lastName;
+      final String gender;
+      final String dob;
+      final String address;
+      final String phone;
+      final String zip;
+      final int flightInstanceID;
+
+      public Request(String firstName, String lastName, String gender, String dob,
+                     String address, String phone, String zip, int flightInstanceID) {
+         this.firstName = firstName;
+         this.lastName = lastName;
+         this.gender = gender;
+         this.dob = dob;
+         this.address = address;
+         this.phone = phone;
+         this.zip = zip;
+         this.flightInstanceID = flightInstanceID;
+      }
+   }//end Request
+
+   /**
+    * The outcome of a request together with the identifiers it was given.
+    * The identifiers are null when the flight instance does not exist.
+    */
+   public static class Booking {
+      public final Outcome outcome;
+      public final Integer customerID;
+      public final String reservationID;
+
+      Booking(Outcome outcome, Integer customerID, String reservationID) {
+         this.outcome = outcome;
+         this.customerID = customerID;
+         this.reservationID = reservationID;
+      }
+   }//end Booking
+
+   // a reservation locked for cancelling
+   private static final class Held {
+      final int flightInstanceID;
+      final String status;
+      final long txid;
+
+      Held(ResultSet rs) throws SQLException {
+         this.flightInstanceID = rs.getInt(1);
+         this.status = rs.getString(2);
+         this.txid = rs.getLong(3);
+      }
+   }//end Held
+
+   private final AirlineManagement _esql;
+
+   public BookingEngine(AirlineManagement esql) {
+      this._esql = esql;
+   }
+
+   /**
+    * Books one request in its own transaction.
+    *
+    * @param request the customer and the flight instance wanted
+    * @return the outcome and the new identifiers
+    * @throws java.sql.SQLException when the booking could not be written
+    */
+   public Booking book(Request request) throws SQLException {
+      return bookAll(Collections.singletonList(request)).get(0);
+   }
+
+   /**
+    * Books a group of requests in a single statement.  Groups booking the
+    * same flight instance wait for each other only while one commits.
+    *
+    * @param requests the bookings to make
+    * @return one booking per request, in request order
+    * @throws java.sql.SQLException when the group could not be written; no
+    *         part of the group is kept in that case
+    */
+   public List<Booking> bookAll(final List<Request> requests) throws SQLException {
+      List<Booking> bookings = write(requests);
+
+      // the seats are committed now; bring the feature10 totals up to date
+      Map<Integer, Integer> sold = new HashMap<Integer, Integer>();
+      for (int i = 0; i < bookings.size(); i++) {
+         if (bookings.get(i).outcome == Outcome.RESERVED) {
+            sold.merge(requests.get(i).flightInstanceID, 1, Integer::sum);
+         }
+      }
+      for (Map.Entry<Integer, Integer> e : sold.entrySet()) {
+         this._esql.columns().seatsSold(e.getKey(), e.getValue());
+      }
+      try {
+         for (int i = 0; i < bookings.size(); i++) {
+            if (bookings.get(i).outcome == Outcome.WAITLISTED) {
+               this._esql.waitlist().waitlisted(requests.get(i).flightInstanceID, bookings.get(i).reservationID);
+            }
+         }
+      } catch (SQLException e) {
+         // the next scan of WaitlistPromoter reads them from Reservation.
+      }
+      return bookings;
+   }//end bookAll
+
+   /**
+    * Cancels a reserved or waitlisted reservation.  A reserved seat goes
+    * back to the flight and the waitlist of the flight is promoted into it
+    * in the background.
+    *
+    * @throws java.sql.SQLException when the cancellation could not be
+    *         written
+    */
+   public Cancellation cancel(final String reservationID) throws SQLException {
+      List<Held> found = this._esql.executeTransaction(() -> {
+         List<Held> rows = this._esql.executeQueryAndMap(SqlStatement.RESERVATION_FOR_UPDATE, Held::new, reservationID);
+         if (!rows.isEmpty() && ("reserved".equals(rows.get(0).status) || "waitlist".equals(rows.get(0).status))) {
+            this._esql.executeUpdate(SqlStatement.RESERVATION_CANCEL, reservationID);
+            if ("reserved".equals(rows.get(0).status)) {
+               this._esql.executeUpdate(SqlStatement.SEAT_DELTA_INSERT, rows.get(0).flightInstanceID, -1);
+            }
+         }
+         return rows;
+      });
+      if (found.isEmpty()) {
+         return Cancellation.NO_SUCH_RESERVATION;
+      }
+      int flightInstanceID = found.get(0).flightInstanceID;
+      String status = found.get(0).status;
+      if ("reserved".equals(status)) {
+         this._esql.seats().sold(flightInstanceID, -1, found.get(0).txid);
+         this._esql.columns().seatsSold(flightInstanceID, -1);
+         this._esql.waitlist().seatsFreed(flightInstanceID);
+      } else if ("waitlist".equals(status)) {
+         this._esql.waitlist().removed(flightInstanceID, reservationID);
+      } else {
+         return Cancellation.NOT_ACTIVE;
+      }
+      return Cancellation.CANCELLED;
+   }//end cancel
+
+   private List<Booking> write(List<Request> requests) throws SQLException {
+      SeatInventory seats = this._esql.seats();
+      int n = requests.size();
+      boolean[] exists = new boolean[n];
+      int accepted = 0;
+      for (int i = 0; i < n; i++) {
+         exists[i] = seats.exists(requests.get(i).flightInstanceID);
+         accepted += exists[i] ? 1 : 0;
+      }
+
+      IdAllocator ids = this._esql.ids();
+      List<Integer> customerIDs = ids.next(IdAllocator.Sequence.CUSTOMER, accepted);
+      List<Integer> reservationNumbers = ids.next(IdAllocator.Sequence.RESERVATION, accepted);
+
+      // one list per placeholder of BOOKING_WRITE, filled per booking
+      List<List<Object>> columns = new ArrayList<List<Object>>();
+      for (int c = 0; c < 11; c++) {
+         columns.add(new ArrayList<Object>(accepted));
+      }
+      String[] reservationIDs = new String[n];
+      Integer[] customers = new Integer[n];
+      int next = 0;
+      for (int i = 0; i < n; i++) {
+         if (!exists[i]) {
+            continue;
+         }
+         Request r = requests.get(i);
+         customers[i] = customerIDs.get(next);
+         reservationIDs[i] = IdAllocator.reservationID(reservationNumbers.get(next));
+         next++;
+         add(columns, 0, customers[i], r.firstName, r.lastName, r.gender, r.dob, r.address, r.phone, r.zip,
+             reservationIDs[i], customers[i], r.flightInstanceID);
+      }
+      final Map<String, Long> reserved = new HashMap<String, Long>();
+      if (accepted > 0) {
+         Object[] params = new Object[columns.size()];
+         for (int c = 0; c < params.length; c++) {
+            params[c] = SqlStatement.array(columns.get(c));
+         }
+         this._esql.executeQueryForEach(SqlStatement.BOOKING_WRITE, rs -> reserved.put(rs.getString(1), rs.getLong(2)),
+                                        params);
+      }
+
+      List<Booking> bookings = new ArrayList<Booking>(n);
+      Map<Integer, Integer> sold = new HashMap<Integer, Integer>();
+      long txid = 0L;
+      for (int i = 0; i < n; i++) {
+         if (!exists[i]) {
+            bookings.add(new Booking(Outcome.NO_SUCH_FLIGHT, null, null));
+         } else if (reserved.containsKey(reservationIDs[i])) {
+            bookings.add(new Booking(Outcome.RESERVED, customers[i], reservationIDs[i]));
+            sold.merge(requests.get(i).flightInstanceID, 1, Integer::sum);
+            txid = reserved.get(reservationIDs[i]);
+         } else {
+            bookings.add(new Booking(Outcome.WAITLISTED, customers[i], reservationIDs[i]));
+         }
+      }
+      for (Map.Entry<Integer, Integer> e : sold.entrySet()) {
+         seats.sold(e.getKey(), e.getValue(), txid);
+      }
+      return bookings;
+   }//end write
+
+   private static void add(List<List<Object>> columns, int first, Object... values) {
+      for (int v = 0; v < values.length; v++) {
+         columns.get(first + v).add(values[v]);
+      }
+   }
+}//end BookingEngine
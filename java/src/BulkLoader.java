@@ -0,0 +1,545 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Loads the data/*.csv files into the database from Java, as a faster and
+ * restartable alternative to the \copy lines of load_data.sql.
+ *
+ * Tables are loaded level by level in foreign key order; the tables of one
+ * level do not reference each other and are loaded in parallel.  Each file
+ * is streamed in chunks of CHUNK_ROWS records and every chunk is committed
+ * together with its row in BulkLoadProgress.  A load that stops half way
+ * therefore resumes after the last committed chunk when it is run again
+ * on the same file, and a file that was loaded completely is skipped.
+ *
+ * Chunks are sent with COPY FROM STDIN when the JDBC driver offers the
+ * copy API (org.postgresql.copy.CopyManager, driver 8.4 and later) and as
+ * multi-row INSERT statements otherwise.  Records can also be streamed
+ * straight from a generator (see DataGenerator) without a file in between.
+ *
+ * Usage: BulkLoader <dbname> <port> <user> <data directory> [table ...]
+ */
+public class BulkLoader {
+
+   // records committed per transaction
+   private static final int CHUNK_ROWS = Integer.getInteger("airline.load.chunkRows", 20000);
+
+   // records per INSERT statement when COPY is not available
+   private static final int INSERT_ROWS = Integer.getInteger("airline.load.insertRows", 500);
+
+   // tables loaded at the same time within one level
+   private static final int THREADS = Integer.getInteger("airline.load.threads", 4);
+
+   // use COPY when the driver supports it; -Dairline.load.copy=false forces INSERT
+   private static final boolean USE_COPY = !"false".equals(System.getProperty("airline.load.copy"));
+
+   // foreign key order: every table only references tables of earlier levels
+   static final List<List<String>> LEVELS = Arrays.asList(
+      Arrays.asList("Plane", "Pilot", "Technician", "Customer"),
+      Arrays.asList("Flight"),
+      Arrays.asList("Schedule", "FlightInstance"),
+      Arrays.asList("Reservation", "Repair", "MaintenanceRequest"));
+
+   private final AirlineManagement _esql;
+
+   // PGConnection.getCopyAPI and CopyManager.copyIn, or null without COPY support
+   private final Method _getCopyAPI;
+   private final Method _copyIn;
+
+   public BulkLoader(AirlineManagement esql) {
+      this._esql = esql;
+      Method getCopyAPI = null;
+      Method copyIn = null;
+      if (USE_COPY) {
+         try {
+            getCopyAPI = Class.forName("org.postgresql.PGConnection").getMethod("getCopyAPI");
+            copyIn = Class.forName("org.postgresql.copy.CopyManager").getMethod("copyIn", String.class, Reader.class);
+         } catch (ClassNotFoundException | NoSuchMethodException e) {
+            getCopyAPI = null;
+            copyIn = null;
+         }
+      }
+      this._getCopyAPI = getCopyAPI;
+      this._copyIn = copyIn;
+   }
+
+   /**
+    * Loads the given tables from the files of a directory, or all of them
+    * when the list is empty.  Tables whose file is missing are skipped.
+    *
+    * @return the number of rows written by this run
+    * @throws java.sql.SQLException when a table failed to load; the levels
+    *         after it are not started
+    */
+   public long load(File dir, List<String> only) throws SQLException, IOException, InterruptedException {
+      System.out.println("Loading " + dir + " using " + method());
+      return inLevels(table -> {
+         File file = new File(dir, table + ".csv");
+         if ((!only.isEmpty() && !only.contains(table)) || !file.isFile()) {
+            return null;
+         }
+         return () -> loadFile(table, file);
+      });
+   }//end load
+
+   /**
+    * Loads records produced on the fly, e.g. by DataGenerator.  Each source
+    * starts with the header record.  Streams are not checkpointed: after a
+    * failure the tables must be emptied and the load run again.
+    *
+    * @param sources the tables to load and their records
+    * @return the number of rows written
+    * @throws java.sql.SQLException when a table failed to load
+    */
+   public long load(Sources sources) throws SQLException, IOException, InterruptedException {
+      System.out.println("Streaming generated rows using " + method());
+      return inLevels(table -> {
+         if (!sources.has(table)) {
+            return null;
+         }
+         return () -> {
+            try (RecordSource source = sources.open(table)) {
+               return loadRecords(table, table, source, 0, null);
+            }
+         };
+      });
+   }//end load
+
+   /**
+    * A stream of CSV records, header first.
+    */
+   public interface RecordSource extends AutoCloseable {
+      /**
+       * @return the fields of the next record, or null at the end
+       */
+      List<String> next() throws IOException;
+
+      /**
+       * @return the record last returned by next() as one line of CSV
+       */
+      String lastRaw();
+
+      @Override
+      void close() throws IOException;
+   }//end RecordSource
+
+   /**
+    * The record streams of a streamed load, by table name.
+    */
+   public interface Sources {
+      /**
+       * @return true when the load includes the table
+       */
+      boolean has(String table);
+
+      /**
+       * @return the records of the table, header first
+       */
+      RecordSource open(String table) throws IOException;
+   }//end Sources
+
+   // the BulkLoadProgress row of one file
+   private static final class Progress {
+      final long rowsLoaded;
+      final boolean finished;
+
+      Progress(ResultSet rs) throws SQLException {
+         this.rowsLoaded = rs.getLong(1);
+         this.finished = rs.getBoolean(2);
+      }
+   }//end Progress
+
+   // the rows one table contributes to a load
+   private interface TableLoad {
+      long run() throws SQLException, IOException;
+   }
+
+   // the load of a table, or null when the table is skipped
+   private interface Planner {
+      TableLoad plan(String table);
+   }
+
+   /*
+    * Runs the planned table loads level by level, the tables of a level in
+    * parallel, then moves the ID sequences past the new keys.
+    */
+   private long inLevels(Planner planner) throws SQLException, IOException, InterruptedException {
+      long start = System.nanoTime();
+      long rows = 0;
+      ExecutorService workers = Executors.newFixedThreadPool(THREADS);
+      try {
+         for (List<String> level : LEVELS) {
+            List<Future<Long>> running = new ArrayList<Future<Long>>();
+            for (String table : level) {
+               TableLoad load = planner.plan(table);
+               if (load != null) {
+                  running.add(workers.submit(load::run));
+               }
+            }
+            for (Future<Long> f : running) {
+               try {
+                  rows += f.get();
+               } catch (ExecutionException e) {
+                  Throwable cause = e.getCause();
+                  if (cause instanceof SQLException) {
+                     throw (SQLException) cause;
+                  }
+                  if (cause instanceof IOException) {
+                     throw (IOException) cause;
+                  }
+                  throw new SQLException(cause.toString());
+               }
+            }
+         }
+      } finally {
+         workers.shutdownNow();
+      }
+
+      // new rows may carry IDs the sequences have not reached yet
+      this._esql.executeQuery(SqlStatement.CUSTOMER_ID_SYNC);
+      this._esql.executeQuery(SqlStatement.RESERVATION_ID_SYNC);
+      this._esql.executeQuery(SqlStatement.REPAIR_ID_SYNC);
+      this._esql.executeQuery(SqlStatement.REQUEST_ID_SYNC);
+
+      double seconds = (System.nanoTime() - start) / 1e9;
+      System.out.printf("Done: %d rows in %.2fs (%.0f rows/s)%n", rows, seconds, rows / Math.max(seconds, 1e-9));
+      return rows;
+   }//end inLevels
+
+   private String method() {
+      return this._copyIn != null ? "COPY" : "INSERT";
+   }
+
+   /*
+    * Loads one file into its table, continuing after the rows an earlier
+    * run already committed.
+    */
+   private long loadFile(String table, File file) throws SQLException, IOException {
+      String fileName = file.getCanonicalPath();
+      Long fileSize = file.length();
+      List<Progress> progress =
+         this._esql.executeQueryAndMap(SqlStatement.BULK_LOAD_PROGRESS, Progress::new, table, fileName, fileSize);
+      long done = 0;
+      if (progress.isEmpty()) {
+         this._esql.executeUpdate(SqlStatement.BULK_LOAD_START, table, fileName, fileSize);
+      } else {
+         done = progress.get(0).rowsLoaded;
+         if (progress.get(0).finished) {
+            System.out.println(table + ": already loaded from " + fileName + ", skipped");
+            return 0;
+         }
+      }
+      final long resumeAt = done;
+      try (CsvReader csv = new CsvReader(file)) {
+         return loadRecords(table, file.toString(), csv, resumeAt, (total, last) ->
+            this._esql.executeUpdate(SqlStatement.BULK_LOAD_ADVANCE, total, last, table, fileName, fileSize));
+      }
+   }//end loadFile
+
+   // bookkeeping committed together with each chunk
+   private interface Checkpoint {
+      void save(long total, boolean last) throws SQLException;
+   }
+
+   /*
+    * Copies the records of a source into the table in chunks of CHUNK_ROWS,
+    * skipping the first done records.
+    */
+   private long loadRecords(String table, String what, RecordSource source, long done,
+                            Checkpoint checkpoint) throws SQLException, IOException {
+      long start = System.nanoTime();
+      long loaded = done;
+      List<String> header = source.next();
+      if (header == null) {
+         throw new IOException(what + " is empty");
+      }
+      final List<String> columns = header;
+      final String[] types = columnTypes(table, columns);
+      for (long skip = 0; skip < done; skip++) {
+         if (source.next() == null) {
+            throw new IOException(what + " has fewer rows than were already loaded from it");
+         }
+      }
+      if (done > 0) {
+         System.out.println(table + ": resuming after " + done + " rows");
+      }
+
+      boolean finished = false;
+      while (!finished) {
+         final List<List<String>> chunk = new ArrayList<List<String>>(Math.min(CHUNK_ROWS, 1024));
+         final StringBuilder text = new StringBuilder();
+         List<String> record;
+         while (chunk.size() < CHUNK_ROWS && (record = source.next()) != null) {
+            if (record.size() != columns.size()) {
+               throw new IOException(what + ": record " + (loaded + chunk.size() + 1) + " has "
+                                     + record.size() + " fields, expected " + columns.size());
+            }
+            chunk.add(record);
+            text.append(source.lastRaw()).append('\n');
+         }
+         finished = chunk.size() < CHUNK_ROWS;
+         final long total = loaded + chunk.size();
+         final boolean last = finished;
+         this._esql.executeTransaction(() -> {
+            if (!chunk.isEmpty()) {
+               this._esql.executeWithConnection(c -> {
+                  if (this._copyIn != null) {
+                     copy(c, table, columns, text.toString());
+                  } else {
+                     insert(c, table, columns, types, chunk);
+                  }
+                  return null;
+               });
+            }
+            if (checkpoint != null) {
+               checkpoint.save(total, last);
+            }
+            return null;
+         });
+         loaded = total;
+         if (!finished) {
+            System.out.println(table + ": " + loaded + " rows");
+         }
+      }
+
+      long rows = loaded - done;
+      double seconds = (System.nanoTime() - start) / 1e9;
+      System.out.printf("%s: %d rows in %.2fs (%.0f rows/s)%n", table, rows, seconds, rows / Math.max(seconds, 1e-9));
+      return rows;
+   }//end loadRecords
+
+   /*
+    * The SQL type of every CSV column, used to cast the bound strings in
+    * the INSERT fallback.  Column names are checked against the table so
+    * nothing from the file reaches the SQL text unchecked.
+    */
+   private String[] columnTypes(String table, List<String> columns) throws SQLException {
+      Map<String, String> known = this._esql.executeWithConnection(c -> {
+         Map<String, String> types = new HashMap<String, String>();
+         Statement stmt = c.createStatement();
+         ResultSet rs = stmt.executeQuery("SELECT * FROM " + table + " WHERE 1 = 0");
+         ResultSetMetaData rsmd = rs.getMetaData();
+         for (int i = 1; i <= rsmd.getColumnCount(); i++) {
+            types.put(rsmd.getColumnName(i).toLowerCase(Locale.ROOT), rsmd.getColumnTypeName(i));
+         }
+         stmt.close();
+         return types;
+      });
+      String[] types = new String[columns.size()];
+      for (int i = 0; i < types.length; i++) {
+         types[i] = known.get(columns.get(i).trim().toLowerCase(Locale.ROOT));
+         if (types[i] == null) {
+            throw new SQLException("Table " + table + " has no column \"" + columns.get(i) + "\"");
+         }
+      }
+      return types;
+   }
+
+   private void copy(Connection c, String table, List<String> columns, String text) throws SQLException {
+      String sql = "COPY " + table + " (" + columnList(columns) + ") FROM STDIN WITH CSV";
+      try {
+         Object copyAPI = this._getCopyAPI.invoke(c);
+         this._copyIn.invoke(copyAPI, sql, new StringReader(text));
+      } catch (InvocationTargetException e) {
+         if (e.getCause() instanceof SQLException) {
+            throw (SQLException) e.getCause();
+         }
+         throw new SQLException("COPY into " + table + " failed: " + e.getCause());
+      } catch (IllegalAccessException e) {
+         throw new SQLException("COPY into " + table + " failed: " + e);
+      }
+   }
+
+   private void insert(Connection c, String table, List<String> columns, String[] types,
+                       List<List<String>> chunk) throws SQLException {
+      PreparedStatement full = null;
+      try {
+         int at = 0;
+         while (at < chunk.size()) {
+            int n = Math.min(INSERT_ROWS, chunk.size() - at);
+            PreparedStatement ps;
+            if (n == INSERT_ROWS) {
+               if (full == null) {
+                  full = c.prepareStatement(insertSql(table, columns, types, n));
+               }
+               ps = full;
+            } else {
+               // the tail of the chunk, sent once with its own row count
+               ps = c.prepareStatement(insertSql(table, columns, types, n));
+            }
+            int p = 1;
+            for (List<String> record : chunk.subList(at, at + n)) {
+               for (String value : record) {
+                  if (value == null) {
+                     ps.setNull(p++, Types.VARCHAR);
+                  } else {
+                     ps.setString(p++, value);
+                  }
+               }
+            }
+            ps.executeUpdate();
+            if (ps != full) {
+               ps.close();
+            }
+            at += n;
+         }
+      } finally {
+         if (full != null) {
+            full.close();
+         }
+      }
+   }//end insert
+
+   private static String insertSql(String table, List<String> columns, String[] types, int rows) {
+      StringBuilder row = new StringBuilder("(");
+      for (int i = 0; i < types.length; i++) {
+         row.append(i > 0 ? ", " : "").append("CAST(? AS ").append(types[i]).append(')');
+      }
+      row.append(')');
+      StringBuilder sql = new StringBuilder("INSERT INTO " + table + " (" + columnList(columns) + ") VALUES ");
+      for (int r = 0; r < rows; r++) {
+         sql.append(r > 0 ? ", " : "").append(row);
+      }
+      return sql.toString();
+   }
+
+   private static String columnList(List<String> columns) {
+      StringBuilder list = new StringBuilder();
+      for (String column : columns) {
+         list.append(list.length() > 0 ? ", " : "").append(column.trim());
+      }
+      return list.toString();
+   }
+
+   /**
+    * Reads CSV records the way COPY ... WITH CSV does: fields separated by
+    * commas, optionally in double quotes with "" for a quote, newlines
+    * allowed inside quotes.  An empty unquoted field is NULL.  The source
+    * text of the last record is kept so it can be handed to COPY as is.
+    */
+   static class CsvReader implements RecordSource {
+      private final BufferedReader _in;
+      private final StringBuilder _raw = new StringBuilder();
+
+      CsvReader(File file) throws IOException {
+         this._in = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8), 1 << 16);
+      }
+
+      public List<String> next() throws IOException {
+         this._raw.setLength(0);
+         List<String> fields = new ArrayList<String>();
+         StringBuilder field = new StringBuilder();
+         boolean quoted = false;
+         boolean inQuotes = false;
+         int c = this._in.read();
+         if (c < 0) {
+            return null;
+         }
+         while (true) {
+            if (c < 0) {
+               if (inQuotes) {
+                  throw new IOException("unterminated quoted field at the end of the file");
+               }
+               break;
+            }
+            if (inQuotes) {
+               if (c == '"') {
+                  this._in.mark(1);
+                  int d = this._in.read();
+                  if (d == '"') {
+                     field.append('"');
+                     this._raw.append("\"\"");
+                  } else {
+                     inQuotes = false;
+                     this._raw.append('"');
+                     this._in.reset();
+                  }
+               } else {
+                  field.append((char) c);
+                  this._raw.append((char) c);
+               }
+            } else if (c == ',') {
+               fields.add(quoted || field.length() > 0 ? field.toString() : null);
+               field.setLength(0);
+               quoted = false;
+               this._raw.append(',');
+            } else if (c == '"') {
+               quoted = true;
+               inQuotes = true;
+               this._raw.append('"');
+            } else if (c == '\n') {
+               break;
+            } else if (c == '\r') {
+               this._in.mark(1);
+               if (this._in.read() != '\n') {
+                  this._in.reset();
+               }
+               break;
+            } else {
+               field.append((char) c);
+               this._raw.append((char) c);
+            }
+            c = this._in.read();
+         }
+         fields.add(quoted || field.length() > 0 ? field.toString() : null);
+         return fields;
+      }//end next
+
+      public String lastRaw() {
+         return this._raw.toString();
+      }
+
+      @Override
+      public void close() throws IOException {
+         this._in.close();
+      }
+   }//end CsvReader
+
+   public static void main(String[] args) {
+      if (args.length < 4) {
+         System.err.println("Usage: java [-classpath <classpath>] BulkLoader <dbname> <port> <user> <data directory> [table ...]");
+         return;
+      }
+      AirlineManagement esql = null;
+      int status = 0;
+      try {
+         Class.forName("org.postgresql.Driver");
+         esql = new AirlineManagement(args[0], args[1], args[2], "");
+         new BulkLoader(esql).load(new File(args[3]), Arrays.asList(args).subList(4, args.length));
+      } catch (Exception e) {
+         System.err.println("Load failed: " + e.getMessage());
+         System.err.println("Run the same command again to resume after the last committed chunk.");
+         status = 1;
+      } finally {
+         if (esql != null) {
+            esql.cleanup();
+         }
+      }
+      System.exit(status);
+   }//end main
+}//end BulkLoader
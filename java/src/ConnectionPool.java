@@ -0,0 +1,311 @@
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A small bounded pool of physical connections to the Postgres backend.
+ *
+ * Connections that sat idle longer than the validation interval are checked
+ * with a trivial query before they are handed out, connections older than
+ * the maximum lifetime are closed and replaced, and callers wait at most
+ * the acquire timeout for a free connection.
+ */
+public class ConnectionPool {
+
+   /**
+    * A physical connection together with the prepared statements that were
+    * created on it.
+    */
+   public static class PooledConnection {
+      private final Connection _connection;
+      private final StatementCache _statements;
+      private final long _createdAt;
+      private long _lastUsedAt;
+
+      PooledConnection(Connection connection) {
+         this._connection = connection;
+         this._statements = new StatementCache(connection);
+         this._createdAt = System.nanoTime();
+         this._lastUsedAt = this._createdAt;
+      }
+
+      public Connection connection() {
+         return this._connection;
+      }
+
+      public StatementCache statements() {
+         return this._statements;
+      }
+
+      void close() {
+         this._statements.close();
+         try {
+            this._connection.close();
+         } catch (SQLException e) {
+            // ignored.
+         }
+      }
+   }//end PooledConnection
+
+   private final String _url;
+   private final String _user;
+   private final String _passwd;
+   private final int _maxSize;
+   private final long _acquireTimeoutNanos;
+   private final long _maxLifetimeNanos;
+   private final long _validationIntervalNanos;
+
+   // idle connections, most recently used first
+   private final Deque<PooledConnection> _idle = new ArrayDeque<PooledConnection>();
+   private final ReentrantLock _lock = new ReentrantLock();
+   private final Condition _available = this._lock.newCondition();
+   private int _total = 0;
+   private int _waiters = 0;
+   private boolean _closed = false;
+
+   // acquire statistics
+   private final AtomicLong _acquires = new AtomicLong();
+   private final AtomicLong _acquireNanos = new AtomicLong();
+   private final AtomicLong _maxAcquireNanos = new AtomicLong();
+   private final AtomicLong _timeouts = new AtomicLong();
+
+   /**
+    * Creates an empty pool; connections are opened on demand.
+    *
+    * @param url the JDBC connection URL
+    * @param user the user name used to login to the database
+    * @param passwd the user login password
+    * @param maxSize the maximum number of open connections
+    * @param acquireTimeoutMs how long acquire() waits for a free connection
+    * @param maxLifetimeMs connections older than this are recycled
+    * @param validationIntervalMs idle connections older than this are validated
+    */
+   public ConnectionPool(String url, String user, String passwd, int maxSize,
+                         long acquireTimeoutMs, long maxLifetimeMs, long validationIntervalMs) {
+      this._url = url;
+      this._user = user;
+      this._passwd = passwd;
+      this._maxSize = maxSize;
+      this._acquireTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(acquireTimeoutMs);
+      this._maxLifetimeNanos = TimeUnit.MILLISECONDS.toNanos(maxLifetimeMs);
+      this._validationIntervalNanos = TimeUnit.MILLISECONDS.toNanos(validationIntervalMs);
+   }
+
+   /**
+    * Borrows a connection, opening a new one while the pool is below its
+    * maximum size and waiting for one to be released otherwise.
+    *
+    * @return a validated connection that must be handed back with release()
+    * @throws java.sql.SQLException when no connection became available in
+    *         time or a new connection could not be opened
+    */
+   public PooledConnection acquire() throws SQLException {
+      long start = System.nanoTime();
+      long deadline = start + this._acquireTimeoutNanos;
+      while (true) {
+         PooledConnection candidate = null;
+         boolean create = false;
+         this._lock.lock();
+         try {
+            while (candidate == null && !create) {
+               if (this._closed) {
+                  throw new SQLException("Connection pool is closed");
+               }
+               if (!this._idle.isEmpty()) {
+                  candidate = this._idle.pollFirst();
+               } else if (this._total < this._maxSize) {
+                  this._total++;
+                  create = true;
+               } else {
+                  long remaining = deadline - System.nanoTime();
+                  if (remaining <= 0) {
+                     this._timeouts.incrementAndGet();
+                     throw new SQLException("Timed out after " +
+                        TimeUnit.NANOSECONDS.toMillis(this._acquireTimeoutNanos) +
+                        " ms waiting for a database connection");
+                  }
+                  this._waiters++;
+                  try {
+                     this._available.awaitNanos(remaining);
+                  } catch (InterruptedException e) {
+                     Thread.currentThread().interrupt();
+                     throw new SQLException("Interrupted while waiting for a database connection");
+                  } finally {
+                     this._waiters--;
+                  }
+               }
+            }
+         } finally {
+            this._lock.unlock();
+         }
+
+         if (create) {
+            try {
+               candidate = new PooledConnection(DriverManager.getConnection(this._url, this._user, this._passwd));
+            } catch (SQLException e) {
+               discard(null);
+               throw e;
+            }
+         } else if (isExpired(candidate) || (isStale(candidate) && !isValid(candidate))) {
+            discard(candidate);
+            continue;
+         }
+         recordAcquire(System.nanoTime() - start);
+         return candidate;
+      }
+   }//end acquire
+
+   /**
+    * Hands a connection back to the pool.
+    *
+    * @param conn the connection obtained from acquire()
+    * @param broken true when the caller saw the connection fail; it is then
+    *        closed instead of being reused
+    */
+   public void release(PooledConnection conn, boolean broken) {
+      boolean closed;
+      try {
+         closed = conn.connection().isClosed();
+      } catch (SQLException e) {
+         closed = true;
+      }
+      if (broken || closed || isExpired(conn)) {
+         discard(conn);
+         return;
+      }
+      conn._lastUsedAt = System.nanoTime();
+      this._lock.lock();
+      try {
+         if (this._closed) {
+            this._total--;
+         } else {
+            this._idle.offerFirst(conn);
+            this._available.signal();
+            return;
+         }
+      } finally {
+         this._lock.unlock();
+      }
+      conn.close();
+   }//end release
+
+   /**
+    * Closes every idle connection and refuses further acquires.  Borrowed
+    * connections are closed as they are released.
+    */
+   public void close() {
+      this._lock.lock();
+      try {
+         this._closed = true;
+         for (PooledConnection conn : this._idle) {
+            conn.close();
+            this._total--;
+         }
+         this._idle.clear();
+         this._available.signalAll();
+      } finally {
+         this._lock.unlock();
+      }
+   }//end close
+
+   /**
+    * @return the number of connections currently borrowed
+    */
+   public int active() {
+      this._lock.lock();
+      try {
+         return this._total - this._idle.size();
+      } finally {
+         this._lock.unlock();
+      }
+   }
+
+   /**
+    * @return the number of open connections waiting in the pool
+    */
+   public int idle() {
+      this._lock.lock();
+      try {
+         return this._idle.size();
+      } finally {
+         this._lock.unlock();
+      }
+   }
+
+   /**
+    * @return the number of callers blocked in acquire()
+    */
+   public int waiters() {
+      this._lock.lock();
+      try {
+         return this._waiters;
+      } finally {
+         this._lock.unlock();
+      }
+   }
+
+   /**
+    * @return a one line summary of the pool state and acquire latency
+    */
+   public String metrics() {
+      long acquires = this._acquires.get();
+      double avgMs = acquires == 0 ? 0.0 : this._acquireNanos.get() / (double) acquires / 1e6;
+      double maxMs = this._maxAcquireNanos.get() / 1e6;
+      return String.format("pool active=%d idle=%d waiters=%d max=%d acquires=%d timeouts=%d acquire_avg_ms=%.3f acquire_max_ms=%.3f",
+                           active(), idle(), waiters(), this._maxSize, acquires, this._timeouts.get(), avgMs, maxMs);
+   }
+
+   private boolean isExpired(PooledConnection conn) {
+      return System.nanoTime() - conn._createdAt > this._maxLifetimeNanos;
+   }
+
+   private boolean isStale(PooledConnection conn) {
+      return System.nanoTime() - conn._lastUsedAt > this._validationIntervalNanos;
+   }
+
+   // Connection.isValid is not available in the JDBC3 driver, so a trivial
+   // query is issued instead.
+   private boolean isValid(PooledConnection conn) {
+      try {
+         Statement stmt = conn.connection().createStatement();
+         try {
+            stmt.executeQuery("SELECT 1").close();
+         } finally {
+            stmt.close();
+         }
+         return true;
+      } catch (SQLException e) {
+         return false;
+      }
+   }
+
+   // closes a connection that left the pool for good and frees its slot
+   private void discard(PooledConnection conn) {
+      if (conn != null) {
+         conn.close();
+      }
+      this._lock.lock();
+      try {
+         this._total--;
+         this._available.signal();
+      } finally {
+         this._lock.unlock();
+      }
+   }
+
+   private void recordAcquire(long nanos) {
+      this._acquires.incrementAndGet();
+      this._acquireNanos.addAndGet(nanos);
+      long max;
+      do {
+         max = this._maxAcquireNanos.get();
+      } while (nanos > max && !this._maxAcquireNanos.compareAndSet(max, nanos));
+   }
+}//end ConnectionPool
@@ -0,0 +1,591 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.format.TextStyle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Generates the ten tables of create_tables.sql at any size, with the same
+ * columns as the files in data/ and with every foreign key satisfied.
+ *
+ * The data is skewed the way real traffic is: a few cities and flights
+ * take most of the instances and bookings (Zipf distributed), summer and
+ * the December holidays have more flights and fuller planes, and a core
+ * of frequent flyers holds many reservations each.  Booked seats beyond
+ * SeatsTotal are waitlisted, and SeatsSold equals the reserved (or flown)
+ * reservations of each instance.
+ *
+ * Rows are produced one at a time, so only a few arrays per flight
+ * instance are held in memory.  They are written either as CSV files in a
+ * directory, ready for BulkLoader or load_data.sql, or streamed straight
+ * into the database through BulkLoader.
+ *
+ * The same settings always give the same data.
+ *
+ * Usage: DataGenerator csv <output directory> [name=value ...]
+ *        DataGenerator copy <dbname> <port> <user> [name=value ...]
+ * with the sizes reservations, instances, customers, flights, planes,
+ * pilots, technicians, repairs and requests, and seed, start (YYYY-MM-DD),
+ * days and asof (the date before which flights count as flown; by default
+ * the middle of the range).
+ */
+public class DataGenerator implements BulkLoader.Sources {
+
+   private static final String[] CITIES = {
+      "New York", "Los Angeles", "Chicago", "Dallas", "Atlanta", "Denver", "San Francisco", "Seattle",
+      "Miami", "Las Vegas", "Orlando", "Boston", "Phoenix", "Houston", "Charlotte", "Minneapolis",
+      "Detroit", "Philadelphia", "Salt Lake City", "Washington", "San Diego", "Tampa", "Portland",
+      "Nashville", "Austin", "Honolulu", "St. Louis", "Baltimore", "Raleigh", "New Orleans",
+      "Kansas City", "Sacramento", "San Jose", "Cleveland", "Pittsburgh", "Indianapolis",
+      "Columbus", "Anchorage", "Albuquerque", "Boise"
+   };
+
+   private static final String[][] PLANE_TYPES = {
+      { "Boeing", "737" }, { "Boeing", "747" }, { "Boeing", "777" }, { "Boeing", "787" },
+      { "Airbus", "A320" }, { "Airbus", "A321" }, { "Airbus", "A330" }, { "Airbus", "A350" },
+      { "Embraer", "E175" }, { "Embraer", "E190" }, { "Bombardier", "CRJ900" }
+   };
+
+   private static final int[] SEATS = { 76, 150, 180, 200, 220, 300 };
+
+   private static final String[] FIRST_NAMES = {
+      "James", "Mary", "Robert", "Patricia", "John", "Jennifer", "Michael", "Linda", "David", "Elizabeth",
+      "William", "Barbara", "Richard", "Susan", "Joseph", "Jessica", "Thomas", "Sarah", "Carlos", "Karen",
+      "Wei", "Aisha", "Hiroshi", "Priya", "Mateo", "Fatima", "Olga", "Kwame", "Ana", "Noah"
+   };
+
+   private static final String[] LAST_NAMES = {
+      "Smith", "Johnson", "Williams", "Brown", "Jones", "Garcia", "Miller", "Davis", "Rodriguez", "Martinez",
+      "Hernandez", "Lopez", "Gonzalez", "Wilson", "Anderson", "Thomas", "Taylor", "Moore", "Jackson", "Martin",
+      "Lee", "Perez", "Thompson", "White", "Harris", "Sanchez", "Clark", "Nguyen", "Patel", "Kim"
+   };
+
+   private static final String[] STREETS = {
+      "Main St", "Oak Ave", "Pine Rd", "Maple Dr", "Cedar Ln", "Lake View", "Hill Ct", "River Rd", "Park Blvd", "Elm St"
+   };
+
+   private static final String[] STATES = {
+      "NY", "CA", "IL", "TX", "GA", "CO", "WA", "FL", "NV", "MA", "AZ", "NC", "MN", "MI", "PA", "OR", "TN", "HI"
+   };
+
+   // relative number of flights and bookings per month, January first
+   private static final double[] SEASON = { 0.8, 0.7, 0.9, 0.9, 1.0, 1.3, 1.5, 1.4, 0.9, 0.9, 1.0, 1.4 };
+
+   // skew of city, flight and customer popularity
+   private static final double CITY_SKEW = 1.1;
+   private static final double FLIGHT_SKEW = 1.2;
+   private static final double CUSTOMER_SKEW = 0.8;
+
+   // the sizes and dates of the generated data
+   private final long _reservations;
+   private final int _instances;
+   private final int _customers;
+   private final int _flights;
+   private final int _planes;
+   private final int _pilots;
+   private final int _technicians;
+   private final int _repairs;
+   private final int _requests;
+   private final long _seed;
+   private final LocalDate _start;
+   private final int _days;
+   private final LocalDate _asOf;
+
+   // every flight instance, decided up front so that SeatsSold and the
+   // Reservation rows agree: its flight, its day (from _start), its seats
+   // and how many bookings it gets
+   private final int[] _instanceFlight;
+   private final int[] _instanceDay;
+   private final int[] _instanceSeats;
+   private final int[] _instanceBookings;
+
+   /**
+    * @param settings sizes and dates by name, see the class comment; the
+    *        ones left out scale with reservations and instances
+    */
+   public DataGenerator(Map<String, String> settings) {
+      this._reservations = Long.parseLong(settings.getOrDefault("reservations", "3000"));
+      this._instances = Integer.parseInt(settings.getOrDefault("instances", "240"));
+      this._customers = setting(settings, "customers", Math.max(500, this._reservations / 6));
+      this._flights = setting(settings, "flights", Math.max(10, this._instances / 24));
+      this._planes = setting(settings, "planes", Math.max(5, this._flights / 2));
+      this._pilots = setting(settings, "pilots", Math.max(10, this._planes * 2L));
+      this._technicians = setting(settings, "technicians", Math.max(10, this._planes * 2L));
+      this._repairs = setting(settings, "repairs", Math.max(15, this._planes * 3L));
+      this._requests = setting(settings, "requests", Math.max(20, this._planes * 4L));
+      this._seed = Long.parseLong(settings.getOrDefault("seed", "166"));
+      this._start = LocalDate.parse(settings.getOrDefault("start", "2024-01-01"));
+      this._days = Integer.parseInt(settings.getOrDefault("days", "730"));
+      this._asOf = settings.containsKey("asof")
+         ? LocalDate.parse(settings.get("asof"))
+         : this._start.plusDays(this._days / 2);
+      validate();
+
+      // place the instances: hot flights fly more often, busy months more,
+      // and always on a day of the flight's schedule
+      SplittableRandom random = random(0);
+      this._instanceFlight = new int[this._instances];
+      this._instanceDay = new int[this._instances];
+      this._instanceSeats = new int[this._instances];
+      double[] cumulative = new double[this._instances];
+      double total = 0;
+      for (int i = 0; i < this._instances; i++) {
+         this._instanceFlight[i] = zipf(random, this._flights, FLIGHT_SKEW);
+         this._instanceDay[i] = scheduledDay(random, this._instanceFlight[i]);
+         this._instanceSeats[i] = SEATS[random.nextInt(SEATS.length)];
+         total += flightWeight(this._instanceFlight[i]) * season(this._instanceDay[i]);
+         cumulative[i] = total;
+      }
+
+      // hand out the bookings in proportion to the same weights
+      this._instanceBookings = new int[this._instances];
+      for (long r = 0; r < this._reservations && this._instances > 0; r++) {
+         int i = Arrays.binarySearch(cumulative, random.nextDouble() * total);
+         i = i >= 0 ? i : Math.min(-i - 1, this._instances - 1);
+         this._instanceBookings[i]++;
+      }
+   }//end DataGenerator
+
+   // every row must have the rows it refers to
+   private void validate() {
+      require(this._reservations >= 0 && this._instances >= 0 && this._customers >= 0 && this._flights >= 0
+              && this._planes >= 0 && this._pilots >= 0 && this._technicians >= 0 && this._repairs >= 0
+              && this._requests >= 0, "sizes cannot be negative");
+      require(this._days > 0, "days must be positive");
+      require(this._reservations == 0 || this._instances > 0, "reservations need instances");
+      require(this._reservations == 0 || this._customers > 0, "reservations need customers");
+      require(this._instances == 0 || this._flights > 0, "instances need flights");
+      // a flight flying only on Mondays needs a Monday in the range
+      require(this._instances == 0 || this._days >= 7, "instances need days of at least 7");
+      require(this._flights + this._repairs + this._requests == 0 || this._planes > 0,
+              "flights, repairs and requests need planes");
+      require(this._repairs == 0 || this._technicians > 0, "repairs need technicians");
+      require(this._requests == 0 || this._pilots > 0, "requests need pilots");
+   }
+
+   private static void require(boolean valid, String message) {
+      if (!valid) {
+         throw new IllegalArgumentException("Invalid settings: " + message);
+      }
+   }
+
+   private static int setting(Map<String, String> settings, String name, long fallback) {
+      return settings.containsKey(name) ? Integer.parseInt(settings.get(name)) : (int) fallback;
+   }
+
+   @Override
+   public boolean has(String table) {
+      return Arrays.asList(
+         "Plane", "Pilot", "Technician", "Customer", "Flight", "Schedule",
+         "FlightInstance", "Reservation", "Repair", "MaintenanceRequest").contains(table);
+   }
+
+   @Override
+   public BulkLoader.RecordSource open(String table) {
+      switch (table) {
+         case "Plane": return planes();
+         case "Pilot": return people("PilotID", "P", this._pilots, 1);
+         case "Technician": return people("TechnicianID", "T", this._technicians, 2);
+         case "Customer": return customers();
+         case "Flight": return flights();
+         case "Schedule": return schedules();
+         case "FlightInstance": return flightInstances();
+         case "Reservation": return reservations();
+         case "Repair": return repairs();
+         case "MaintenanceRequest": return maintenanceRequests();
+         default: throw new IllegalArgumentException("Unknown table " + table);
+      }
+   }
+
+   /**
+    * Writes every table as <Table>.csv into the directory, several tables
+    * at a time.
+    */
+   public void writeCsv(File dir) throws IOException, InterruptedException {
+      if (!dir.isDirectory() && !dir.mkdirs()) {
+         throw new IOException("Cannot create " + dir);
+      }
+      long start = System.nanoTime();
+      ExecutorService workers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+      try {
+         List<Future<Long>> running = new ArrayList<Future<Long>>();
+         for (List<String> level : BulkLoader.LEVELS) {
+            for (String table : level) {
+               running.add(workers.submit(() -> writeCsv(table, new File(dir, table + ".csv"))));
+            }
+         }
+         long rows = 0;
+         for (Future<Long> f : running) {
+            try {
+               rows += f.get();
+            } catch (ExecutionException e) {
+               throw new IOException(e.getCause().toString());
+            }
+         }
+         double seconds = (System.nanoTime() - start) / 1e9;
+         System.out.printf("Done: %d rows in %.2fs (%.0f rows/s)%n", rows, seconds, rows / Math.max(seconds, 1e-9));
+      } finally {
+         workers.shutdownNow();
+      }
+   }//end writeCsv
+
+   private long writeCsv(String table, File file) throws IOException {
+      long rows = -1;
+      try (BulkLoader.RecordSource source = open(table);
+           Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8), 1 << 16)) {
+         while (source.next() != null) {
+            out.write(source.lastRaw());
+            out.write('\n');
+            rows++;
+         }
+      }
+      System.out.println(table + ": " + rows + " rows");
+      return rows;
+   }
+
+   /*
+    * A table produced row by row.  Row 0 is the header.
+    */
+   private abstract static class TableSource implements BulkLoader.RecordSource {
+      private final List<String> _header;
+      private final long _rows;
+      private long _next = -1;
+      private List<String> _last = null;
+
+      TableSource(long rows, String... header) {
+         this._rows = rows;
+         this._header = Arrays.asList(header);
+      }
+
+      // the values of data row n, counted from 0; called in order
+      abstract List<String> row(long n);
+
+      public List<String> next() {
+         if (this._next < 0) {
+            this._next = 0;
+            this._last = this._header;
+         } else if (this._next < this._rows) {
+            this._last = row(this._next++);
+         } else {
+            this._last = null;
+         }
+         return this._last;
+      }
+
+      public String lastRaw() {
+         StringBuilder line = new StringBuilder();
+         for (int i = 0; i < this._last.size(); i++) {
+            String value = this._last.get(i);
+            if (i > 0) {
+               line.append(',');
+            }
+            if (value == null) {
+               continue;
+            }
+            if (value.isEmpty() || value.indexOf(',') >= 0 || value.indexOf('"') >= 0) {
+               line.append('"').append(value.replace("\"", "\"\"")).append('"');
+            } else {
+               line.append(value);
+            }
+         }
+         return line.toString();
+      }
+
+      public void close() {
+      }
+   }//end TableSource
+
+   private BulkLoader.RecordSource planes() {
+      SplittableRandom random = random(10);
+      return new TableSource(this._planes, "PlaneID", "Make", "Model", "Year", "LastRepairDate") {
+         List<String> row(long n) {
+            String[] type = PLANE_TYPES[random.nextInt(PLANE_TYPES.length)];
+            return Arrays.asList(planeID((int) n), type[0], type[1], String.valueOf(1995 + random.nextInt(30)),
+                                 date(random.nextInt(DataGenerator.this._days)));
+         }
+      };
+   }
+
+   private BulkLoader.RecordSource people(String idColumn, String prefix, int count, int stream) {
+      SplittableRandom random = random(10 + stream);
+      return new TableSource(count, idColumn, "Name") {
+         List<String> row(long n) {
+            return Arrays.asList(String.format("%s%03d", prefix, n + 1), name(random));
+         }
+      };
+   }
+
+   private BulkLoader.RecordSource customers() {
+      SplittableRandom random = random(13);
+      return new TableSource(this._customers, "CustomerID", "FirstName", "LastName", "Gender", "DOB", "Address", "Phone", "Zip") {
+         List<String> row(long n) {
+            String state = STATES[random.nextInt(STATES.length)];
+            String zip = String.format("%05d", random.nextInt(100000));
+            return Arrays.asList(
+               String.valueOf(n + 1),
+               FIRST_NAMES[random.nextInt(FIRST_NAMES.length)],
+               LAST_NAMES[random.nextInt(LAST_NAMES.length)],
+               random.nextBoolean() ? "F" : "M",
+               LocalDate.of(1940, 1, 1).plusDays(random.nextInt(65 * 365)).toString(),
+               (1 + random.nextInt(9999)) + " " + STREETS[random.nextInt(STREETS.length)] + ", "
+                  + CITIES[random.nextInt(CITIES.length)] + ", " + state + " " + zip,
+               String.format("%03d.%03d.%04d", 200 + random.nextInt(800), random.nextInt(1000), random.nextInt(10000)),
+               zip);
+         }
+      };
+   }
+
+   private BulkLoader.RecordSource flights() {
+      SplittableRandom random = random(20);
+      return new TableSource(this._flights, "FlightNumber", "PlaneID", "DepartureCity", "ArrivalCity") {
+         List<String> row(long n) {
+            // popular cities show up on most routes
+            int from = zipf(random, CITIES.length, CITY_SKEW);
+            int to = zipf(random, CITIES.length - 1, CITY_SKEW);
+            if (to >= from) {
+               to++;
+            }
+            return Arrays.asList(flightNumber((int) n), planeID(random.nextInt(DataGenerator.this._planes)),
+                                 CITIES[from], CITIES[to]);
+         }
+      };
+   }
+
+   private BulkLoader.RecordSource schedules() {
+      SplittableRandom random = random(21);
+      // hot flights leave every day, the tail one to seven days a week
+      return new TableSource(scheduleRows(), "ScheduleID", "FlightNumber", "DayOfWeek", "DepartureTime", "ArrivalTime") {
+         int flight = -1;
+         int day = 7;
+         int perWeek = 0;
+         int departure = 0;
+         int duration = 0;
+
+         List<String> row(long n) {
+            while (day >= perWeek) {
+               flight++;
+               perWeek = daysPerWeek(flight);
+               day = 0;
+               departure = 5 + random.nextInt(18);
+               duration = 1 + random.nextInt(6);
+            }
+            String dayName = DayOfWeek.of(day + 1).getDisplayName(TextStyle.FULL, Locale.ENGLISH);
+            day++;
+            return Arrays.asList(String.valueOf(n + 1), flightNumber(flight), dayName,
+                                 String.format("%02d:00", departure), String.format("%02d:00", (departure + duration) % 24));
+         }
+      };
+   }
+
+   private long scheduleRows() {
+      long rows = 0;
+      for (int f = 0; f < this._flights; f++) {
+         rows += daysPerWeek(f);
+      }
+      return rows;
+   }
+
+   private int daysPerWeek(int flight) {
+      return flight < Math.max(1, this._flights / 10) ? 7 : 1 + (int) ((flight * 2654435761L ^ this._seed) & 0x7fffffffL) % 7;
+   }
+
+   private BulkLoader.RecordSource flightInstances() {
+      SplittableRandom random = random(30);
+      return new TableSource(this._instances, "FlightInstanceID", "FlightNumber", "FlightDate", "DepartedOnTime",
+                      "ArrivedOnTime", "SeatsTotal", "SeatsSold", "NumOfStops", "TicketCost") {
+         List<String> row(long n) {
+            int i = (int) n;
+            int flight = DataGenerator.this._instanceFlight[i];
+            int day = DataGenerator.this._instanceDay[i];
+            boolean flown = flown(day);
+            boolean departed = random.nextInt(100) < 82;
+            boolean arrived = departed ? random.nextInt(100) < 90 : random.nextInt(100) < 30;
+            int stops = flight % 5 == 4 ? 1 + random.nextInt(2) : (random.nextInt(20) == 0 ? 1 : 0);
+            double cost = (80 + (flight * 7919L % 520)) * season(day) * (0.85 + random.nextDouble() * 0.3);
+            return Arrays.asList(
+               String.valueOf(i + 1), flightNumber(flight), date(day),
+               flown ? (departed ? "1" : "0") : null,
+               flown ? (arrived ? "1" : "0") : null,
+               String.valueOf(DataGenerator.this._instanceSeats[i]),
+               String.valueOf(Math.min(DataGenerator.this._instanceBookings[i], DataGenerator.this._instanceSeats[i])),
+               String.valueOf(stops),
+               String.format(Locale.ROOT, "%.2f", cost));
+         }
+      };
+   }
+
+   private BulkLoader.RecordSource reservations() {
+      SplittableRandom random = random(40);
+      return new TableSource(this._reservations, "ReservationID", "CustomerID", "FlightInstanceID", "Status") {
+         int instance = 0;
+         int booked = 0;
+
+         List<String> row(long n) {
+            while (booked >= DataGenerator.this._instanceBookings[instance]) {
+               instance++;
+               booked = 0;
+            }
+            String status;
+            if (booked < DataGenerator.this._instanceSeats[instance]) {
+               status = flown(DataGenerator.this._instanceDay[instance]) ? "flown" : "reserved";
+            } else {
+               status = "waitlist";
+            }
+            booked++;
+            int customer = 1 + zipf(random, DataGenerator.this._customers, CUSTOMER_SKEW);
+            return Arrays.asList(IdAllocator.reservationID((int) n + 1), String.valueOf(customer),
+                                 String.valueOf(instance + 1), status);
+         }
+      };
+   }
+
+   private BulkLoader.RecordSource repairs() {
+      SplittableRandom random = random(50);
+      return new TableSource(this._repairs, "RepairID", "PlaneID", "RepairCode", "RepairDate", "TechnicianID") {
+         List<String> row(long n) {
+            return Arrays.asList(String.valueOf(n + 1), planeID(random.nextInt(DataGenerator.this._planes)),
+                                 String.format("RC%03d", 1 + random.nextInt(10)),
+                                 date(random.nextInt(DataGenerator.this._days)),
+                                 String.format("T%03d", 1 + random.nextInt(DataGenerator.this._technicians)));
+         }
+      };
+   }
+
+   private BulkLoader.RecordSource maintenanceRequests() {
+      SplittableRandom random = random(60);
+      return new TableSource(this._requests, "RequestID", "PlaneID", "RepairCode", "RequestDate", "PilotID") {
+         List<String> row(long n) {
+            return Arrays.asList(String.valueOf(n + 1), planeID(random.nextInt(DataGenerator.this._planes)),
+                                 String.format("RC%03d", 1 + random.nextInt(10)),
+                                 date(random.nextInt(DataGenerator.this._days)),
+                                 String.format("P%03d", 1 + random.nextInt(DataGenerator.this._pilots)));
+         }
+      };
+   }
+
+   private SplittableRandom random(int stream) {
+      return new SplittableRandom(this._seed * 1000003L + stream);
+   }
+
+   /*
+    * A rank in [0, n) drawn from a Zipf distribution with the given
+    * exponent, by inverting its continuous approximation; rank 0 is the
+    * most likely.
+    */
+   private static int zipf(SplittableRandom random, int n, double skew) {
+      double a = 1.0 - skew;
+      double x = Math.pow(1.0 + random.nextDouble() * (Math.pow(n + 1.0, a) - 1.0), 1.0 / a);
+      return Math.min(n, Math.max(1, (int) x)) - 1;
+   }
+
+   private static double flightWeight(int flight) {
+      return Math.pow(flight + 1.0, -FLIGHT_SKEW);
+   }
+
+   // a day of the range, more likely in the busy months
+   private int seasonalDay(SplittableRandom random) {
+      while (true) {
+         int day = random.nextInt(this._days);
+         if (random.nextDouble() * 1.5 < season(day)) {
+            return day;
+         }
+      }
+   }
+
+   /*
+    * A day the flight flies: a weekday of its schedule (the first
+    * daysPerWeek, Monday first, as schedules() writes them) in the week
+    * of a seasonal day.
+    */
+   private int scheduledDay(SplittableRandom random, int flight) {
+      int perWeek = daysPerWeek(flight);
+      while (true) {
+         int day = seasonalDay(random);
+         int monday = day - (this._start.plusDays(day).getDayOfWeek().getValue() - 1);
+         int scheduled = monday + random.nextInt(perWeek);
+         if (scheduled >= 0 && scheduled < this._days) {
+            return scheduled;
+         }
+      }
+   }
+
+   private double season(int day) {
+      return SEASON[this._start.plusDays(day).getMonthValue() - 1];
+   }
+
+   private boolean flown(int day) {
+      return this._start.plusDays(day).isBefore(this._asOf);
+   }
+
+   private String date(int day) {
+      return this._start.plusDays(day).toString();
+   }
+
+   private static String planeID(int n) {
+      return String.format("PL%03d", n + 1);
+   }
+
+   private static String flightNumber(int n) {
+      return "F" + (100 + n);
+   }
+
+   private static String name(SplittableRandom random) {
+      return FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + " " + LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+   }
+
+   public static void main(String[] args) {
+      boolean csv = args.length >= 2 && args[0].equals("csv");
+      boolean copy = args.length >= 4 && args[0].equals("copy");
+      if (!csv && !copy) {
+         System.err.println("Usage: java [-classpath <classpath>] DataGenerator csv <output directory> [name=value ...]");
+         System.err.println("       java [-classpath <classpath>] DataGenerator copy <dbname> <port> <user> [name=value ...]");
+         return;
+      }
+      Map<String, String> settings = new HashMap<String, String>();
+      for (int i = csv ? 2 : 4; i < args.length; i++) {
+         String[] pair = args[i].split("=", 2);
+         if (pair.length != 2) {
+            System.err.println("Expected name=value, got " + args[i]);
+            return;
+         }
+         settings.put(pair[0].trim().toLowerCase(Locale.ROOT), pair[1].trim());
+      }
+
+      AirlineManagement esql = null;
+      int status = 0;
+      try {
+         DataGenerator generator = new DataGenerator(settings);
+         if (csv) {
+            generator.writeCsv(new File(args[1]));
+         } else {
+            Class.forName("org.postgresql.Driver");
+            esql = new AirlineManagement(args[1], args[2], args[3], "");
+            new BulkLoader(esql).load(generator);
+         }
+      } catch (Exception e) {
+         System.err.println("Generation failed: " + e.getMessage());
+         status = 1;
+      } finally {
+         if (esql != null) {
+            esql.cleanup();
+         }
+      }
+      System.exit(status);
+   }//end main
+}//end DataGenerator
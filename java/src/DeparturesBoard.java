@@ -0,0 +1,124 @@
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The flights of a day in departure order, for feature4 and the airport
+ * display boards.
+ *
+ * A day is read with one query that joins each FlightInstance to its
+ * Schedule row by the stored weekday (FlightInstance.FlightDay =
+ * Schedule.DayNumber) through the flight_instance_date_index and
+ * schedule_flight_day_index, with no per-row date formatting.  Boards ask
+ * for the same few days over and over, so each day is kept for the TTL and
+ * read again on the first request after that; days not asked for within
+ * the TTL are dropped.
+ */
+public class DeparturesBoard {
+
+   // the columns of table()
+   public static final List<String> HEADER =
+      Arrays.asList("flight_number", "departure_city", "arrival_city", "departure_time", "arrival_time");
+
+   /**
+    * One departure on the board.
+    */
+   public static class Line {
+      public final String flightNumber;
+      public final String departureCity;
+      public final String arrivalCity;
+      public final String departureTime;
+      public final String arrivalTime;
+
+      Line(List<String> row) {
+         this.flightNumber = row.get(0);
+         this.departureCity = row.get(1);
+         this.arrivalCity = row.get(2);
+         this.departureTime = row.get(3);
+         this.arrivalTime = row.get(4);
+      }
+
+      List<String> row() {
+         return Arrays.asList(this.flightNumber, this.departureCity, this.arrivalCity, this.departureTime, this.arrivalTime);
+      }
+   }//end Line
+
+   // the board of one day as read at loadedAt
+   private static final class Day {
+      final long loadedAt = System.nanoTime();
+      final List<Line> lines;
+
+      Day(List<Line> lines) {
+         this.lines = lines;
+      }
+   }//end Day
+
+   private final AirlineManagement _esql;
+   private final long _ttlNanos;
+   private final Map<LocalDate, Day> _days = new ConcurrentHashMap<LocalDate, Day>();
+
+   /**
+    * @param ttlMs how long a day is served before it is read again
+    */
+   public DeparturesBoard(AirlineManagement esql, long ttlMs) {
+      this._esql = esql;
+      this._ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+   }
+
+   /**
+    * @return the flights of the day by departure time, then flight number;
+    *         empty when nothing flies that day
+    * @throws java.sql.SQLException when the day has to be read and the
+    *         query fails
+    */
+   public List<Line> departures(LocalDate date) throws SQLException {
+      Day day = this._days.get(date);
+      long now = System.nanoTime();
+      if (day != null && now - day.loadedAt < this._ttlNanos) {
+         return day.lines;
+      }
+      this._days.values().removeIf(d -> now - d.loadedAt >= this._ttlNanos);
+      List<Line> lines = new ArrayList<Line>();
+      for (List<String> row : this._esql.executeQueryAndReturnResult(SqlStatement.FLIGHTS_OF_DAY, date.toString())) {
+         lines.add(new Line(row));
+      }
+      lines = Collections.unmodifiableList(lines);
+      this._days.put(date, new Day(lines));
+      return lines;
+   }
+
+   /**
+    * @return the flights of the day leaving the city, in departure order
+    * @throws java.sql.SQLException when the day has to be read and the
+    *         query fails
+    */
+   public List<Line> departures(LocalDate date, String city) throws SQLException {
+      String wanted = city.trim().toLowerCase(Locale.ROOT);
+      List<Line> lines = new ArrayList<Line>();
+      for (Line line : departures(date)) {
+         if (line.departureCity != null && line.departureCity.trim().toLowerCase(Locale.ROOT).equals(wanted)) {
+            lines.add(line);
+         }
+      }
+      return lines;
+   }
+
+   /**
+    * @return the lines as a table for printTable, HEADER first
+    */
+   public static List<List<String>> table(List<Line> lines) {
+      List<List<String>> table = new ArrayList<List<String>>(lines.size() + 1);
+      table.add(HEADER);
+      for (Line line : lines) {
+         table.add(line.row());
+      }
+      return table;
+   }
+}//end DeparturesBoard
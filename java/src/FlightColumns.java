@@ -0,0 +1,657 @@
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * FlightInstance held column by column in primitive arrays, for the
+ * manager reports: flight status (feature3), date range totals (feature10)
+ * and the on-time figures of route searches (feature11).
+ *
+ * Rows are ordered by flight, then day.  FlightNumber is dictionary
+ * encoded: each distinct flight gets a code and its rows are one range of
+ * the arrays, so a report on a flight finds its range with a hash lookup,
+ * its days with two binary searches, and then reads its rows or, for the
+ * seat totals of a date range, takes the difference of two prefix sums (a
+ * Fenwick tree over the rows, so in-place updates stay O(log n)); no query
+ * and no strings per row.  The on-time record of a flight is kept as
+ * counts per flight, set up with each layout and adjusted with every row
+ * changed in place, so a route search reads it without visiting the
+ * rows.  Seats sold
+ * include the SeatDelta rows not yet moved into SeatsSold, and BookingEngine
+ * and WaitlistPromoter report the seats they change at once.
+ *
+ * Every REFRESH_MS a background thread reads the rows written since the
+ * last read: a trigger stamps each FlightInstance row with the transaction
+ * that wrote it (ChangeTxid), and the refresh asks for the rows of every
+ * transaction not yet finished when the previous refresh started, so no
+ * commit is missed, however late.  Changed values are updated in place;
+ * new rows, or rows that moved to another flight or day, are merged into
+ * a new layout in memory.  Deleted rows disappear with the full reload
+ * every TTL.
+ */
+public class FlightColumns {
+
+   // how often the rows changed in FlightInstance are read
+   private static final long REFRESH_MS = Long.getLong("airline.columns.refreshMs", 1000L);
+
+   // the NumOfStops of a row where it is NULL
+   private static final int NO_STOPS = Integer.MIN_VALUE;
+
+   // the day of a row without FlightDate; after every real day, as in SQL
+   private static final long NO_DAY = Long.MAX_VALUE;
+
+   /**
+    * The feature10 numbers for one flight and date range.
+    */
+   public static class Totals {
+      public final long instances;
+      public final long seatsSold;
+      public final long seatsUnsold;
+
+      Totals(long instances, long seatsSold, long seatsUnsold) {
+         this.instances = instances;
+         this.seatsSold = seatsSold;
+         this.seatsUnsold = seatsUnsold;
+      }
+   }//end Totals
+
+   /**
+    * The on-time record of one flight over all its instances.
+    */
+   public static class OnTime {
+      public final int instances;
+      // instances that both departed and arrived on time
+      public final int onTime;
+      // the distinct NumOfStops values, NULL last; not to be changed
+      public final List<Integer> stops;
+
+      OnTime(int instances, int onTime, List<Integer> stops) {
+         this.instances = instances;
+         this.onTime = onTime;
+         this.stops = stops;
+      }
+   }//end OnTime
+
+   /**
+    * The status of one flight instance; null flags are unknown.
+    */
+   public static class Status {
+      public final String flightNumber;
+      public final LocalDate flightDate;
+      public final Boolean departedOnTime;
+      public final Boolean arrivedOnTime;
+
+      Status(String flightNumber, LocalDate flightDate, Boolean departedOnTime, Boolean arrivedOnTime) {
+         this.flightNumber = flightNumber;
+         this.flightDate = flightDate;
+         this.departedOnTime = departedOnTime;
+         this.arrivedOnTime = arrivedOnTime;
+      }
+   }//end Status
+
+   // one FlightInstance row as read from the database
+   private static final class Row {
+      final int id;
+      final String flightNumber;
+      final long day;
+      final int seatsTotal;
+      final int seatsSold;
+      final int stops;
+      final Boolean departed;
+      final Boolean arrived;
+
+      Row(ResultSet rs) throws SQLException {
+         this.id = rs.getInt(1);
+         this.flightNumber = rs.getString(2);
+         this.day = Rows.getEpochDay(rs, 3, NO_DAY);
+         this.seatsTotal = rs.getInt(4);
+         this.seatsSold = rs.getInt(5);
+         this.stops = Rows.getInt(rs, 6, NO_STOPS);
+         this.departed = Rows.getBoolean(rs, 7);
+         this.arrived = Rows.getBoolean(rs, 8);
+      }
+   }//end Row
+
+   // prefix sums of one int column, kept up to date by add()
+   private static final class Sums {
+      // tree[i] holds the sum of the rows i - (i & -i) .. i - 1
+      final long[] tree;
+
+      Sums(int[] values) {
+         this.tree = new long[values.length + 1];
+         for (int i = 1; i <= values.length; i++) {
+            this.tree[i] += values[i - 1];
+            int parent = i + (i & -i);
+            if (parent <= values.length) {
+               this.tree[parent] += this.tree[i];
+            }
+         }
+      }
+
+      void add(int row, long delta) {
+         for (int i = row + 1; i < this.tree.length; i += i & -i) {
+            this.tree[i] += delta;
+         }
+      }
+
+      // the sum of the rows 0 .. end - 1
+      long prefix(int end) {
+         long sum = 0;
+         for (int i = end; i > 0; i -= i & -i) {
+            sum += this.tree[i];
+         }
+         return sum;
+      }
+
+      long between(int lo, int hi) {
+         return prefix(hi) - prefix(lo);
+      }
+   }//end Sums
+
+   private static final Comparator<Row> BY_DAY = Comparator.<Row>comparingLong(r -> r.day).thenComparingInt(r -> r.id);
+
+   // one layout of the rows, ordered by flight, day and id
+   private static final class Columns {
+      final long loadedAt;
+      // code -> FlightNumber, and back
+      final String[] flights;
+      final Map<String, Integer> codes;
+      // the rows of flight c are start[c] .. start[c + 1] - 1
+      final int[] start;
+      final int[] ids;
+      final long[] days;
+      final int[] seatsTotal;
+      final int[] seatsSold;
+      // seatsTotal and seatsSold summed up to any row, for between()
+      final Sums totalSums;
+      final Sums soldSums;
+      final int[] stops;
+      final BitSet departed;
+      final BitSet departedKnown;
+      final BitSet arrived;
+      final BitSet arrivedKnown;
+      // per flight code: the rows that departed and arrived on time, the
+      // rows per NumOfStops value, and those values as onTime() gives them
+      final int[] onTime;
+      final List<TreeMap<Integer, Integer>> stopRows;
+      final List<List<Integer>> stopValues;
+      // (id << 32 | row), sorted, to find a row by id
+      final long[] byId;
+
+      Columns(long loadedAt, String[] flights, int[] start, int[] ids, long[] days, int[] seatsTotal, int[] seatsSold,
+              int[] stops, BitSet departed, BitSet departedKnown, BitSet arrived, BitSet arrivedKnown) {
+         this.loadedAt = loadedAt;
+         this.flights = flights;
+         this.codes = new HashMap<String, Integer>(flights.length * 2);
+         for (int c = 0; c < flights.length; c++) {
+            this.codes.put(flights[c], c);
+         }
+         this.start = start;
+         this.ids = ids;
+         this.days = days;
+         this.seatsTotal = seatsTotal;
+         this.seatsSold = seatsSold;
+         this.totalSums = new Sums(seatsTotal);
+         this.soldSums = new Sums(seatsSold);
+         this.stops = stops;
+         this.departed = departed;
+         this.departedKnown = departedKnown;
+         this.arrived = arrived;
+         this.arrivedKnown = arrivedKnown;
+         this.onTime = new int[flights.length];
+         this.stopRows = new ArrayList<TreeMap<Integer, Integer>>(flights.length);
+         this.stopValues = new ArrayList<List<Integer>>(flights.length);
+         for (int c = 0; c < flights.length; c++) {
+            TreeMap<Integer, Integer> rows = new TreeMap<Integer, Integer>();
+            for (int i = start[c]; i < start[c + 1]; i++) {
+               if (onTime(i)) {
+                  this.onTime[c]++;
+               }
+               rows.merge(stops[i], 1, Integer::sum);
+            }
+            this.stopRows.add(rows);
+            this.stopValues.add(stopList(rows));
+         }
+         this.byId = new long[ids.length];
+         for (int i = 0; i < ids.length; i++) {
+            this.byId[i] = ((long) ids[i] << 32) | i;
+         }
+         Arrays.sort(this.byId);
+      }
+
+      boolean onTime(int row) {
+         return this.departed.get(row) && this.arrived.get(row);
+      }
+
+      // NO_STOPS sorts first in the map and goes last, as NULL, in the list
+      static List<Integer> stopList(TreeMap<Integer, Integer> rows) {
+         List<Integer> list = new ArrayList<Integer>(rows.size());
+         for (Integer stops : rows.keySet()) {
+            if (stops != NO_STOPS) {
+               list.add(stops);
+            }
+         }
+         if (rows.containsKey(NO_STOPS)) {
+            list.add(null);
+         }
+         return Collections.unmodifiableList(list);
+      }
+
+      int row(int id) {
+         int lo = 0;
+         int hi = this.byId.length - 1;
+         while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int found = (int) (this.byId[mid] >> 32);
+            if (found < id) {
+               lo = mid + 1;
+            } else if (found > id) {
+               hi = mid - 1;
+            } else {
+               return (int) this.byId[mid];
+            }
+         }
+         return -1;
+      }
+
+      // the first row of the flight's range at or after the day
+      int lowerBound(int code, long day) {
+         int lo = this.start[code];
+         int hi = this.start[code + 1];
+         while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (this.days[mid] < day) {
+               lo = mid + 1;
+            } else {
+               hi = mid;
+            }
+         }
+         return lo;
+      }
+
+      // row is in the range of flight code
+      void set(int row, int code, Row r) {
+         if (onTime(row)) {
+            this.onTime[code]--;
+         }
+         if (this.stops[row] != r.stops) {
+            TreeMap<Integer, Integer> rows = this.stopRows.get(code);
+            boolean gone = rows.merge(this.stops[row], -1, Integer::sum) == 0;
+            if (gone) {
+               rows.remove(this.stops[row]);
+            }
+            if (rows.merge(r.stops, 1, Integer::sum) == 1 || gone) {
+               this.stopValues.set(code, stopList(rows));
+            }
+         }
+         this.totalSums.add(row, (long) r.seatsTotal - this.seatsTotal[row]);
+         this.soldSums.add(row, (long) r.seatsSold - this.seatsSold[row]);
+         this.seatsTotal[row] = r.seatsTotal;
+         this.seatsSold[row] = r.seatsSold;
+         this.stops[row] = r.stops;
+         this.departedKnown.set(row, r.departed != null);
+         this.departed.set(row, r.departed != null && r.departed);
+         this.arrivedKnown.set(row, r.arrived != null);
+         this.arrived.set(row, r.arrived != null && r.arrived);
+         if (onTime(row)) {
+            this.onTime[code]++;
+         }
+      }
+   }//end Columns
+
+   // appends rows flight by flight into growing arrays
+   private static final class Builder {
+      final List<String> flights = new ArrayList<String>();
+      final List<Integer> starts = new ArrayList<Integer>();
+      int n = 0;
+      int[] ids = new int[1024];
+      long[] days = new long[1024];
+      int[] seatsTotal = new int[1024];
+      int[] seatsSold = new int[1024];
+      int[] stops = new int[1024];
+      final BitSet departed = new BitSet();
+      final BitSet departedKnown = new BitSet();
+      final BitSet arrived = new BitSet();
+      final BitSet arrivedKnown = new BitSet();
+      String current = null;
+
+      void add(Row r) {
+         next(r.flightNumber, r.id, r.day, r.seatsTotal, r.seatsSold, r.stops);
+         this.departedKnown.set(this.n, r.departed != null);
+         this.departed.set(this.n, r.departed != null && r.departed);
+         this.arrivedKnown.set(this.n, r.arrived != null);
+         this.arrived.set(this.n, r.arrived != null && r.arrived);
+         this.n++;
+      }
+
+      void copy(Columns c, String flightNumber, int row) {
+         next(flightNumber, c.ids[row], c.days[row], c.seatsTotal[row], c.seatsSold[row], c.stops[row]);
+         this.departedKnown.set(this.n, c.departedKnown.get(row));
+         this.departed.set(this.n, c.departed.get(row));
+         this.arrivedKnown.set(this.n, c.arrivedKnown.get(row));
+         this.arrived.set(this.n, c.arrived.get(row));
+         this.n++;
+      }
+
+      private void next(String flightNumber, int id, long day, int seatsTotal, int seatsSold, int stops) {
+         if (!flightNumber.equals(this.current)) {
+            this.flights.add(flightNumber);
+            this.starts.add(this.n);
+            this.current = flightNumber;
+         }
+         if (this.n == this.ids.length) {
+            int size = this.n * 2;
+            this.ids = Arrays.copyOf(this.ids, size);
+            this.days = Arrays.copyOf(this.days, size);
+            this.seatsTotal = Arrays.copyOf(this.seatsTotal, size);
+            this.seatsSold = Arrays.copyOf(this.seatsSold, size);
+            this.stops = Arrays.copyOf(this.stops, size);
+         }
+         this.ids[this.n] = id;
+         this.days[this.n] = day;
+         this.seatsTotal[this.n] = seatsTotal;
+         this.seatsSold[this.n] = seatsSold;
+         this.stops[this.n] = stops;
+      }
+
+      Columns build(long loadedAt) {
+         int[] start = new int[this.flights.size() + 1];
+         for (int c = 0; c < this.flights.size(); c++) {
+            start[c] = this.starts.get(c);
+         }
+         start[this.flights.size()] = this.n;
+         return new Columns(loadedAt, this.flights.toArray(new String[0]), start,
+                            Arrays.copyOf(this.ids, this.n), Arrays.copyOf(this.days, this.n),
+                            Arrays.copyOf(this.seatsTotal, this.n), Arrays.copyOf(this.seatsSold, this.n),
+                            Arrays.copyOf(this.stops, this.n),
+                            this.departed, this.departedKnown, this.arrived, this.arrivedKnown);
+      }
+   }//end Builder
+
+   private final AirlineManagement _esql;
+   private final long _ttlNanos;
+   // readers hold the read lock; in-place updates and swaps the write lock
+   private final ReentrantReadWriteLock _lock = new ReentrantReadWriteLock();
+   private volatile Columns _columns = null;
+   // the oldest transaction that may have been unfinished at the last read
+   private long _xmin = 0;
+   private ScheduledExecutorService _refresher = null;
+
+   /**
+    * @param esql the database front end the rows are read through
+    * @param ttlMs how long a layout lives before FlightInstance is read
+    *        again in full
+    */
+   public FlightColumns(AirlineManagement esql, long ttlMs) {
+      this._esql = esql;
+      this._ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+   }
+
+   /**
+    * @return the instances, seats sold and seats unsold of the flight with
+    *         a FlightDate between the two dates, both included
+    * @throws java.sql.SQLException when the columns have to be loaded and
+    *         reading FlightInstance fails
+    */
+   public Totals between(String flightNumber, LocalDate from, LocalDate to) throws SQLException {
+      // a layout stays valid after a merge replaced it, just older
+      Columns c = columns();
+      this._lock.readLock().lock();
+      try {
+         Integer code = c.codes.get(flightNumber);
+         if (code == null || from.isAfter(to)) {
+            return new Totals(0, 0, 0);
+         }
+         int lo = c.lowerBound(code, from.toEpochDay());
+         int hi = c.lowerBound(code, to.toEpochDay() + 1);
+         long sold = c.soldSums.between(lo, hi);
+         long total = c.totalSums.between(lo, hi);
+         return new Totals(hi - lo, sold, total - sold);
+      } finally {
+         this._lock.readLock().unlock();
+      }
+   }
+
+   /**
+    * @return the on-time record of every instance of the flight; no
+    *         instances for an unknown flight
+    * @throws java.sql.SQLException when the columns have to be loaded and
+    *         reading FlightInstance fails
+    */
+   public OnTime onTime(String flightNumber) throws SQLException {
+      Columns c = columns();
+      this._lock.readLock().lock();
+      try {
+         Integer code = c.codes.get(flightNumber);
+         if (code == null) {
+            return new OnTime(0, 0, new ArrayList<Integer>());
+         }
+         return new OnTime(c.start[code + 1] - c.start[code], c.onTime[code], c.stopValues.get(code));
+      } finally {
+         this._lock.readLock().unlock();
+      }
+   }
+
+   /**
+    * @return the instances of the flight on that day; empty when it does
+    *         not fly that day
+    * @throws java.sql.SQLException when the columns have to be loaded and
+    *         reading FlightInstance fails
+    */
+   public List<Status> status(String flightNumber, LocalDate date) throws SQLException {
+      Columns c = columns();
+      List<Status> found = new ArrayList<Status>();
+      this._lock.readLock().lock();
+      try {
+         Integer code = c.codes.get(flightNumber);
+         if (code == null) {
+            return found;
+         }
+         long day = date.toEpochDay();
+         for (int i = c.lowerBound(code, day); i < c.start[code + 1] && c.days[i] == day; i++) {
+            found.add(new Status(flightNumber, date,
+                                 c.departedKnown.get(i) ? c.departed.get(i) : null,
+                                 c.arrivedKnown.get(i) ? c.arrived.get(i) : null));
+         }
+         return found;
+      } finally {
+         this._lock.readLock().unlock();
+      }
+   }
+
+   /**
+    * Records seats sold (positive) or given back (negative) on an instance
+    * after the change was committed.  Unknown instances are left to the
+    * next refresh.
+    */
+   public void seatsSold(int flightInstanceID, int seats) {
+      this._lock.writeLock().lock();
+      try {
+         Columns c = this._columns;
+         int row = c != null ? c.row(flightInstanceID) : -1;
+         if (row >= 0) {
+            c.seatsSold[row] += seats;
+            c.soldSums.add(row, seats);
+         }
+      } finally {
+         this._lock.writeLock().unlock();
+      }
+   }
+
+   /**
+    * Drops the columns; the next report reads FlightInstance in full.
+    */
+   public void invalidate() {
+      this._lock.writeLock().lock();
+      try {
+         this._columns = null;
+      } finally {
+         this._lock.writeLock().unlock();
+      }
+   }
+
+   /**
+    * Stops the background refresh.
+    */
+   public void close() {
+      ScheduledExecutorService refresher;
+      synchronized (this) {
+         refresher = this._refresher;
+         this._refresher = null;
+      }
+      if (refresher != null) {
+         refresher.shutdownNow();
+      }
+   }
+
+   private Columns columns() throws SQLException {
+      Columns current = this._columns;
+      if (current != null) {
+         return current;
+      }
+      synchronized (this) {
+         if (this._columns == null) {
+            reload();
+            if (this._refresher == null) {
+               this._refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+                  Thread t = new Thread(r, "flight-columns");
+                  t.setDaemon(true);
+                  return t;
+               });
+               this._refresher.scheduleWithFixedDelay(this::refresh, REFRESH_MS, REFRESH_MS, TimeUnit.MILLISECONDS);
+            }
+         }
+         return this._columns;
+      }
+   }
+
+   /*
+    * Runs on the refresher: the rows changed since the last read, or all
+    * of them once the layout is older than the TTL.
+    */
+   private void refresh() {
+      try {
+         synchronized (this) {
+            Columns current = this._columns;
+            if (current == null) {
+               return;
+            }
+            if (System.nanoTime() - current.loadedAt >= this._ttlNanos) {
+               reload();
+            } else {
+               delta();
+            }
+         }
+      } catch (SQLException | RuntimeException e) {
+         // tried again on the next round; the reports use what is loaded.
+      }
+   }
+
+   // holds the monitor
+   private void reload() throws SQLException {
+      long xmin = currentXmin();
+      long loadedAt = System.nanoTime();
+      Builder builder = new Builder();
+      this._esql.executeQueryForEach(SqlStatement.FLIGHT_COLUMNS, rs -> builder.add(new Row(rs)));
+      Columns loaded = builder.build(loadedAt);
+      this._lock.writeLock().lock();
+      try {
+         this._columns = loaded;
+         this._xmin = xmin;
+      } finally {
+         this._lock.writeLock().unlock();
+      }
+   }
+
+   // holds the monitor
+   private void delta() throws SQLException {
+      long xmin = currentXmin();
+      List<Row> changed = new ArrayList<Row>();
+      this._esql.executeQueryForEach(SqlStatement.FLIGHT_COLUMNS_CHANGED, rs -> changed.add(new Row(rs)), this._xmin);
+      this._lock.writeLock().lock();
+      try {
+         Columns c = this._columns;
+         if (c == null) {
+            return;
+         }
+         List<Row> moved = new ArrayList<Row>();
+         for (Row r : changed) {
+            int row = c.row(r.id);
+            Integer code = c.codes.get(r.flightNumber);
+            if (row >= 0 && code != null && row >= c.start[code] && row < c.start[code + 1] && c.days[row] == r.day) {
+               c.set(row, code, r);
+            } else {
+               moved.add(r);
+            }
+         }
+         if (!moved.isEmpty()) {
+            this._columns = merge(c, moved);
+         }
+         this._xmin = xmin;
+      } finally {
+         this._lock.writeLock().unlock();
+      }
+   }
+
+   /*
+    * A new layout with the moved rows taken out of their old place and
+    * merged, with the new rows, into the range of their flight.
+    */
+   private static Columns merge(Columns c, List<Row> moved) {
+      Set<Integer> ids = new HashSet<Integer>();
+      Map<String, List<Row>> byFlight = new LinkedHashMap<String, List<Row>>();
+      for (Row r : moved) {
+         ids.add(r.id);
+         byFlight.computeIfAbsent(r.flightNumber, k -> new ArrayList<Row>()).add(r);
+      }
+      Builder builder = new Builder();
+      for (int code = 0; code < c.flights.length; code++) {
+         List<Row> extra = byFlight.remove(c.flights[code]);
+         if (extra == null) {
+            extra = new ArrayList<Row>();
+         }
+         extra.sort(BY_DAY);
+         int i = c.start[code];
+         int end = c.start[code + 1];
+         int j = 0;
+         while (i < end || j < extra.size()) {
+            if (i < end && ids.contains(c.ids[i])) {
+               i++;
+            } else if (j == extra.size()
+                       || (i < end && (c.days[i] < extra.get(j).day
+                                       || (c.days[i] == extra.get(j).day && c.ids[i] < extra.get(j).id)))) {
+               builder.copy(c, c.flights[code], i++);
+            } else {
+               builder.add(extra.get(j++));
+            }
+         }
+      }
+      for (List<Row> rows : byFlight.values()) {
+         rows.sort(BY_DAY);
+         for (Row r : rows) {
+            builder.add(r);
+         }
+      }
+      return builder.build(c.loadedAt);
+   }//end merge
+
+   private long currentXmin() throws SQLException {
+      return this._esql.executeQueryAndMap(SqlStatement.CURRENT_XMIN, rs -> rs.getLong(1)).get(0);
+   }
+}//end FlightColumns
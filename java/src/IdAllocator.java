@@ -0,0 +1,105 @@
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hands out new primary keys from Postgres sequences in blocks.
+ *
+ * Every ID sequence is created with INCREMENT BY BLOCK_SIZE (see
+ * create_tables.sql), so one nextval call reserves BLOCK_SIZE consecutive
+ * IDs for this process.  They are then handed out from memory and the
+ * database is only asked again when the block runs out.  IDs lost when the
+ * process stops or a transaction rolls back are simply skipped.
+ */
+public class IdAllocator {
+
+   // must match the INCREMENT BY of the sequences in create_tables.sql
+   public static final int BLOCK_SIZE = 50;
+
+   /**
+    * The sequences backing each generated key.
+    */
+   public enum Sequence {
+      CUSTOMER("customer_id_seq"),
+      RESERVATION("reservation_id_seq"),
+      REPAIR("repair_id_seq"),
+      REQUEST("request_id_seq");
+
+      private final String _name;
+
+      Sequence(String name) {
+         this._name = name;
+      }
+
+      public String sequenceName() {
+         return this._name;
+      }
+   }//end Sequence
+
+   // the unused part of the block last reserved from a sequence
+   private static class Block {
+      long next = 0;
+      long end = 0;
+   }
+
+   private final AirlineManagement _esql;
+   private final Map<Sequence, Block> _blocks = new EnumMap<Sequence, Block>(Sequence.class);
+
+   public IdAllocator(AirlineManagement esql) {
+      this._esql = esql;
+      for (Sequence seq : Sequence.values()) {
+         this._blocks.put(seq, new Block());
+      }
+   }
+
+   /**
+    * @param seq the key to allocate
+    * @return a value no other caller has been or will be given
+    * @throws java.sql.SQLException when a new block cannot be reserved
+    */
+   public int next(Sequence seq) throws SQLException {
+      Block block = this._blocks.get(seq);
+      synchronized (block) {
+         if (block.next == block.end) {
+            long start = this._esql.getNextSeqVal(seq.sequenceName());
+            block.next = start;
+            block.end = start + BLOCK_SIZE;
+         }
+         return (int) block.next++;
+      }
+   }//end next
+
+   /**
+    * @param seq the key to allocate
+    * @param count how many values are needed
+    * @return count fresh values, in increasing order
+    * @throws java.sql.SQLException when a new block cannot be reserved
+    */
+   public List<Integer> next(Sequence seq, int count) throws SQLException {
+      List<Integer> values = new ArrayList<Integer>(count);
+      Block block = this._blocks.get(seq);
+      synchronized (block) {
+         for (int i = 0; i < count; i++) {
+            values.add(next(seq));
+         }
+      }
+      return values;
+   }//end next
+
+   /**
+    * @return a new reservation identifier such as R3001
+    * @throws java.sql.SQLException when a new block cannot be reserved
+    */
+   public String nextReservationID() throws SQLException {
+      return reservationID(next(Sequence.RESERVATION));
+   }
+
+   /**
+    * Formats a reservation number the way the loaded data does (R0001).
+    */
+   public static String reservationID(int number) {
+      return String.format("R%04d", number);
+   }
+}//end IdAllocator
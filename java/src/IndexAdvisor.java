@@ -0,0 +1,474 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Checks the indexes against the queries the features actually run.
+ *
+ *  1. Every per-request query shape of the features is run under
+ *     EXPLAIN (ANALYZE, BUFFERS) with arguments sampled from the data,
+ *     RUNS times; the plan of the median run is saved.
+ *  2. Sequential scans in those plans are reported, and an index is
+ *     derived for each from the columns its filter compares.
+ *  3. Indexes are reported as redundant when their columns are a prefix
+ *     of (or equal to) another index on the same table, e.g. a plain index
+ *     on a primary key.
+ *  4. The redundant indexes are dropped and the derived ones created inside
+ *     a transaction, the queries are timed again, and everything is rolled
+ *     back.  A derived index is proposed only when a plan uses it and that
+ *     query got at least MIN_GAIN faster.
+ *
+ * The plans (before/ and after/), a report and proposed_indexes.sql are
+ * written to the output directory; with --apply the proposal is also
+ * committed.  The cache loaders (ReferenceCache, FlightColumns,
+ * SeatInventory, MaintenanceTimeline) read whole tables on purpose and are
+ * not probed.
+ *
+ * Usage: IndexAdvisor <dbname> <port> <user> <output directory> [--apply]
+ */
+public class IndexAdvisor {
+
+   // EXPLAIN ANALYZE runs per query shape; the median is kept
+   private static final int RUNS = Integer.getInteger("airline.advisor.runs", 5);
+
+   // how much faster a query must get for its new index to be proposed
+   private static final double MIN_GAIN = 0.10;
+
+   private static final Pattern SEQ_SCAN = Pattern.compile("Seq Scan on (\\w+)");
+   private static final Pattern INDEX_USED =
+      Pattern.compile("(?:Index Scan|Index Only Scan) using (\\w+)|Bitmap Index Scan on (\\w+)");
+   // "(col = ", also qualified or cast: "((r.status)::text = "
+   private static final Pattern COMPARISON = Pattern.compile("\\(\\(?(?:\\w+\\.)?(\\w+)\\)?(?:::[a-z ]+?)? (=|<>|>=|<=|<|>) ");
+   private static final Pattern TIMING = Pattern.compile("(?:Execution Time|Total runtime): ([0-9.]+) ms");
+
+   // one feature query with sample arguments
+   private static final class Probe {
+      final String feature;
+      final SqlStatement stmt;
+      final Object[] params;
+
+      Probe(String feature, SqlStatement stmt, Object... params) {
+         this.feature = feature;
+         this.stmt = stmt;
+         this.params = params;
+      }
+
+      String name() {
+         return this.feature + "_" + this.stmt.name();
+      }
+   }//end Probe
+
+   // an existing or proposed plain index
+   private static final class Index {
+      final String table;
+      final String name;
+      final List<String> columns;
+      final boolean unique;
+
+      Index(String table, String name, List<String> columns, boolean unique) {
+         this.table = table;
+         this.name = name;
+         this.columns = columns;
+         this.unique = unique;
+      }
+
+      boolean startsWith(List<String> prefix) {
+         return this.columns.size() >= prefix.size() && this.columns.subList(0, prefix.size()).equals(prefix);
+      }
+
+      String create() {
+         return "CREATE INDEX " + this.name + " ON " + this.table + " (" + String.join(", ", this.columns) + ");";
+      }
+   }//end Index
+
+   // the median EXPLAIN ANALYZE of one probe
+   private static final class Plan {
+      final List<String> lines;
+      final double millis;
+
+      Plan(List<String> lines, double millis) {
+         this.lines = lines;
+         this.millis = millis;
+      }
+
+      List<String> seqScans() {
+         List<String> tables = new ArrayList<String>();
+         for (String line : this.lines) {
+            Matcher m = SEQ_SCAN.matcher(line);
+            if (m.find()) {
+               tables.add(m.group(1));
+            }
+         }
+         return tables;
+      }
+
+      Set<String> indexesUsed() {
+         Set<String> names = new LinkedHashSet<String>();
+         for (String line : this.lines) {
+            Matcher m = INDEX_USED.matcher(line);
+            while (m.find()) {
+               names.add(m.group(1) != null ? m.group(1) : m.group(2));
+            }
+         }
+         return names;
+      }
+   }//end Plan
+
+   private final AirlineManagement _esql;
+   private final File _dir;
+
+   public IndexAdvisor(AirlineManagement esql, File dir) {
+      this._esql = esql;
+      this._dir = dir;
+   }
+
+   /**
+    * Measures, proposes and validates; see the class comment.
+    *
+    * @param apply whether to commit the proposed index set
+    * @throws java.sql.SQLException when a query or DDL statement fails
+    * @throws java.io.IOException when the output cannot be written
+    */
+   public void run(boolean apply) throws SQLException, IOException {
+      List<Probe> probes = probes();
+      List<Index> indexes = indexes();
+      List<Index> redundant = redundant(indexes);
+      List<Index> kept = new ArrayList<Index>(indexes);
+      kept.removeAll(redundant);
+
+      Map<Probe, Plan> before = explainAll(probes, "before");
+      List<Index> candidates = candidates(before, kept);
+
+      // try the new index set and roll it back
+      Map<Probe, Plan> after = this._esql.executeTransaction(() -> {
+         this._esql.executeUpdate("SAVEPOINT index_advisor");
+         try {
+            for (Index index : redundant) {
+               this._esql.executeUpdate("DROP INDEX " + index.name);
+            }
+            for (Index index : candidates) {
+               this._esql.executeUpdate(index.create());
+            }
+            return explainAll(probes, "after");
+         } catch (IOException e) {
+            throw new SQLException("Unable to write the plans: " + e.getMessage());
+         } finally {
+            this._esql.executeUpdate("ROLLBACK TO SAVEPOINT index_advisor");
+         }
+      });
+
+      List<Index> proposed = new ArrayList<Index>();
+      for (Index candidate : candidates) {
+         for (Probe probe : probes) {
+            if (after.get(probe).indexesUsed().contains(candidate.name)
+                && after.get(probe).millis <= before.get(probe).millis * (1 - MIN_GAIN)) {
+               proposed.add(candidate);
+               break;
+            }
+         }
+      }
+
+      List<String> script = new ArrayList<String>();
+      script.add("-- proposed by IndexAdvisor: drop redundant indexes, create validated ones");
+      for (Index index : redundant) {
+         script.add("DROP INDEX IF EXISTS " + index.name + ";");
+      }
+      for (Index index : proposed) {
+         script.add(index.create());
+      }
+      Files.write(new File(this._dir, "proposed_indexes.sql").toPath(), script, StandardCharsets.UTF_8);
+
+      try (PrintStream file = new PrintStream(new FileOutputStream(new File(this._dir, "report.txt")), true, "UTF-8")) {
+         report(file, probes, before, after, redundant, candidates, proposed);
+      }
+      report(System.out, probes, before, after, redundant, candidates, proposed);
+
+      if (apply) {
+         this._esql.executeTransaction(() -> {
+            for (Index index : redundant) {
+               this._esql.executeUpdate("DROP INDEX IF EXISTS " + index.name);
+            }
+            for (Index index : proposed) {
+               this._esql.executeUpdate(index.create());
+            }
+            return null;
+         });
+         System.out.println("Applied " + redundant.size() + " drops and " + proposed.size() + " new indexes.");
+      }
+   }//end run
+
+   /*
+    * The per-request queries of the features, with arguments taken from
+    * the data.  Shapes whose sample is missing (empty table) are skipped.
+    */
+   private List<Probe> probes() throws SQLException {
+      List<Probe> probes = new ArrayList<Probe>();
+      List<String> busy = sample("SELECT fi.FlightInstanceID, fi.FlightNumber, TO_CHAR(fi.FlightDate, 'YYYY-MM-DD') " +
+                                 "FROM FlightInstance fi JOIN Reservation r ON r.FlightInstanceID = fi.FlightInstanceID " +
+                                 "GROUP BY fi.FlightInstanceID, fi.FlightNumber, fi.FlightDate ORDER BY COUNT(*) DESC LIMIT 1");
+      if (busy == null) {
+         busy = sample("SELECT FlightInstanceID, FlightNumber, TO_CHAR(FlightDate, 'YYYY-MM-DD') FROM FlightInstance LIMIT 1");
+      }
+      if (busy != null) {
+         Integer instance = Integer.valueOf(busy.get(0));
+         String flight = busy.get(1);
+         String date = busy.get(2);
+         int page = PassengerManifest.PAGE_SIZE + 1;
+         probes.add(new Probe("feature2", SqlStatement.SEAT_COUNT_BY_FLIGHT_DATE, flight, date));
+         probes.add(new Probe("feature4", SqlStatement.FLIGHTS_OF_DAY, date));
+         probes.add(new Probe("feature5", SqlStatement.MANIFEST_PAGE, instance, "", "", page));
+         probes.add(new Probe("feature5", SqlStatement.MANIFEST_PAGE_BY_STATUS, instance, "waitlist", "", page));
+         probes.add(new Probe("feature12", SqlStatement.TICKET_COSTS, flight));
+      }
+      List<String> reservation = sample("SELECT MIN(ReservationID) FROM Reservation");
+      if (reservation != null) {
+         probes.add(new Probe("feature6", SqlStatement.TRAVELER_BY_RESERVATION, reservation.get(0)));
+         probes.add(new Probe("feature19", SqlStatement.RESERVATION_FOR_UPDATE, reservation.get(0)));
+      }
+      List<String> repair = sample("SELECT MIN(TechnicianID) FROM Repair");
+      if (repair != null) {
+         probes.add(new Probe("feature8", SqlStatement.REPAIRS_BY_TECHNICIAN, repair.get(0)));
+      }
+      List<String> request = sample("SELECT MIN(PilotID) FROM MaintenanceRequest");
+      if (request != null) {
+         probes.add(new Probe("feature16", SqlStatement.REQUESTS_BY_PILOT, request.get(0)));
+      }
+      return probes;
+   }//end probes
+
+   // the first row of the query, or null when it is empty or all nulls
+   private List<String> sample(String query) throws SQLException {
+      List<List<String>> rows = this._esql.executeQueryAndReturnResult(query);
+      if (rows.isEmpty() || rows.get(0).contains(null)) {
+         return null;
+      }
+      return rows.get(0);
+   }
+
+   /*
+    * The plain column indexes of the current schema; expression and
+    * partial indexes are left out.
+    */
+   private List<Index> indexes() throws SQLException {
+      List<List<String>> rows = this._esql.executeQueryAndReturnResult(
+         "SELECT t.relname, c.relname, i.indisunique OR i.indisprimary, pg_get_indexdef(i.indexrelid, g.k, true) " +
+         "FROM pg_index i " +
+         "JOIN pg_class c ON c.oid = i.indexrelid " +
+         "JOIN pg_class t ON t.oid = i.indrelid " +
+         "JOIN pg_namespace ns ON ns.oid = t.relnamespace, " +
+         "generate_series(1, i.indnatts) AS g(k) " +
+         "WHERE ns.nspname = current_schema() AND i.indexprs IS NULL AND i.indpred IS NULL " +
+         "ORDER BY t.relname, c.relname, g.k");
+      Map<String, Index> indexes = new LinkedHashMap<String, Index>();
+      for (List<String> row : rows) {
+         Index index = indexes.computeIfAbsent(row.get(1),
+            k -> new Index(row.get(0), row.get(1), new ArrayList<String>(), "t".equals(row.get(2)) || "true".equals(row.get(2))));
+         index.columns.add(row.get(3));
+      }
+      return new ArrayList<Index>(indexes.values());
+   }
+
+   /*
+    * Non-unique indexes whose columns lead another index of the same table.
+    * Of two identical non-unique indexes the second by name is redundant.
+    */
+   private static List<Index> redundant(List<Index> indexes) {
+      List<Index> redundant = new ArrayList<Index>();
+      for (Index a : indexes) {
+         if (a.unique) {
+            continue;
+         }
+         for (Index b : indexes) {
+            if (a == b || !a.table.equals(b.table) || !b.startsWith(a.columns)) {
+               continue;
+            }
+            boolean same = a.columns.size() == b.columns.size();
+            if (!same || b.unique || a.name.compareTo(b.name) > 0) {
+               redundant.add(a);
+               break;
+            }
+         }
+      }
+      return redundant;
+   }
+
+   /*
+    * One index per sequentially scanned table and filter: the columns
+    * compared with = first, then one compared by range.  Filters an
+    * existing index already leads with are skipped; the planner chose the
+    * scan over that index already.
+    */
+   private static List<Index> candidates(Map<Probe, Plan> plans, List<Index> existing) {
+      Map<String, Index> candidates = new LinkedHashMap<String, Index>();
+      for (Plan plan : plans.values()) {
+         for (int i = 0; i < plan.lines.size(); i++) {
+            Matcher scan = SEQ_SCAN.matcher(plan.lines.get(i));
+            if (!scan.find()) {
+               continue;
+            }
+            String table = scan.group(1);
+            int depth = indent(plan.lines.get(i));
+            List<String> equal = new ArrayList<String>();
+            List<String> range = new ArrayList<String>();
+            for (int j = i + 1; j < plan.lines.size() && indent(plan.lines.get(j)) > depth
+                                && !plan.lines.get(j).contains("->"); j++) {
+               String line = plan.lines.get(j).trim();
+               if (!line.startsWith("Filter:")) {
+                  continue;
+               }
+               Matcher m = COMPARISON.matcher(line);
+               while (m.find()) {
+                  List<String> into = m.group(2).equals("=") ? equal : m.group(2).equals("<>") ? null : range;
+                  if (into != null && !equal.contains(m.group(1)) && !into.contains(m.group(1))) {
+                     into.add(m.group(1));
+                  }
+               }
+            }
+            List<String> columns = new ArrayList<String>(equal);
+            for (String column : range) {
+               if (!columns.contains(column)) {
+                  columns.add(column);
+                  break;
+               }
+            }
+            if (columns.isEmpty() || covered(existing, table, columns)) {
+               continue;
+            }
+            String name = (table + "_" + String.join("_", columns) + "_index").toLowerCase(Locale.ROOT);
+            candidates.putIfAbsent(name, new Index(table, name, columns, false));
+         }
+      }
+      return new ArrayList<Index>(candidates.values());
+   }//end candidates
+
+   private static boolean covered(List<Index> indexes, String table, List<String> columns) {
+      for (Index index : indexes) {
+         if (index.table.equals(table) && index.startsWith(columns)) {
+            return true;
+         }
+      }
+      return false;
+   }
+
+   private static int indent(String line) {
+      int i = 0;
+      while (i < line.length() && line.charAt(i) == ' ') {
+         i++;
+      }
+      return i;
+   }
+
+   private Map<Probe, Plan> explainAll(List<Probe> probes, String phase) throws SQLException, IOException {
+      File dir = new File(this._dir, phase);
+      if (!dir.isDirectory() && !dir.mkdirs()) {
+         throw new IOException("Unable to create " + dir);
+      }
+      Map<Probe, Plan> plans = new LinkedHashMap<Probe, Plan>();
+      for (Probe probe : probes) {
+         Plan plan = explain(probe);
+         plans.put(probe, plan);
+         Files.write(new File(dir, probe.name() + ".plan").toPath(), plan.lines, StandardCharsets.UTF_8);
+      }
+      return plans;
+   }
+
+   /*
+    * Runs the probe RUNS times under EXPLAIN ANALYZE and keeps the median
+    * run; the first run also warms the cache for the others.
+    */
+   private Plan explain(Probe probe) throws SQLException {
+      final String sql = "EXPLAIN (ANALYZE, BUFFERS) " + probe.stmt.sql();
+      List<Plan> runs = new ArrayList<Plan>();
+      for (int run = 0; run < Math.max(1, RUNS); run++) {
+         runs.add(this._esql.executeWithConnection(c -> {
+            PreparedStatement ps = c.prepareStatement(sql);
+            try {
+               for (int i = 0; i < probe.params.length; i++) {
+                  ps.setObject(i + 1, probe.params[i]);
+               }
+               ResultSet rs = ps.executeQuery();
+               List<String> lines = new ArrayList<String>();
+               double millis = -1;
+               while (rs.next()) {
+                  String line = rs.getString(1);
+                  lines.add(line);
+                  Matcher m = TIMING.matcher(line);
+                  if (m.find()) {
+                     millis = Double.parseDouble(m.group(1));
+                  }
+               }
+               rs.close();
+               return new Plan(lines, millis);
+            } finally {
+               ps.close();
+            }
+         }));
+      }
+      Collections.sort(runs, (a, b) -> Double.compare(a.millis, b.millis));
+      return runs.get(runs.size() / 2);
+   }//end explain
+
+   private static void report(PrintStream out, List<Probe> probes, Map<Probe, Plan> before, Map<Probe, Plan> after,
+                              List<Index> redundant, List<Index> candidates, List<Index> proposed) {
+      List<List<String>> table = new ArrayList<List<String>>();
+      table.add(Arrays.asList("feature", "query", "before_ms", "after_ms", "seq_scans_before", "indexes_after"));
+      for (Probe probe : probes) {
+         table.add(Arrays.asList(probe.feature, probe.stmt.name(),
+                                 String.format("%.3f", before.get(probe).millis),
+                                 String.format("%.3f", after.get(probe).millis),
+                                 String.join(" ", before.get(probe).seqScans()),
+                                 String.join(" ", after.get(probe).indexesUsed())));
+      }
+      TableRenderer.render(table, out);
+
+      out.println();
+      out.println("Redundant indexes (dropped):");
+      for (Index index : redundant) {
+         out.println("  " + index.name + " ON " + index.table + " (" + String.join(", ", index.columns) + ")");
+      }
+      out.println("Derived from sequential scans:");
+      for (Index index : candidates) {
+         out.println("  " + index.create() + (proposed.contains(index) ? "  -- proposed" : "  -- rejected, no gain"));
+      }
+      out.flush();
+   }//end report
+
+   public static void main(String[] args) {
+      if (args.length < 4 || (args.length == 5 && !args[4].equals("--apply")) || args.length > 5) {
+         System.err.println("Usage: java [-classpath <classpath>] IndexAdvisor <dbname> <port> <user> <output directory> [--apply]");
+         return;
+      }
+      AirlineManagement esql = null;
+      int status = 0;
+      try {
+         Class.forName("org.postgresql.Driver");
+         esql = new AirlineManagement(args[0], args[1], args[2], "");
+         new IndexAdvisor(esql, new File(args[3])).run(args.length == 5);
+      } catch (Exception e) {
+         System.err.println("Index advisor failed: " + e.getMessage());
+         status = 1;
+      } finally {
+         if (esql != null) {
+            esql.cleanup();
+         }
+      }
+      System.exit(status);
+   }//end main
+}//end IndexAdvisor
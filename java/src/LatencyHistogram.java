@@ -0,0 +1,94 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free latency histogram in the style of HdrHistogram.
+ *
+ * Values are recorded in microseconds into log-linear buckets: below 128
+ * every value has its own bucket, above that each power of two is split
+ * into 64 buckets.  Any percentile is therefore reported to within about
+ * 1.6% of the true value, at any scale, in a fixed 20 KB.
+ */
+public class LatencyHistogram {
+
+   // buckets per power of two, as a shift
+   private static final int SUB_BITS = 6;
+   private static final int SUB = 1 << SUB_BITS;
+
+   // enough buckets for values up to 2^42 us (about 50 days)
+   private static final int BUCKETS = (42 - SUB_BITS + 1) * SUB + SUB;
+
+   private final AtomicLongArray _counts = new AtomicLongArray(BUCKETS);
+   private final AtomicLong _count = new AtomicLong();
+   private final AtomicLong _sum = new AtomicLong();
+   private final AtomicLong _max = new AtomicLong();
+
+   /**
+    * Records one latency.
+    */
+   public void record(long nanos) {
+      long micros = Math.max(0, nanos / 1000);
+      this._counts.incrementAndGet(index(micros));
+      this._count.incrementAndGet();
+      this._sum.addAndGet(micros);
+      long max;
+      while (micros > (max = this._max.get()) && !this._max.compareAndSet(max, micros)) {
+         // retry.
+      }
+   }
+
+   public long count() {
+      return this._count.get();
+   }
+
+   /**
+    * @return the total of every recorded value, in microseconds
+    */
+   public long sumMicros() {
+      return this._sum.get();
+   }
+
+   public long maxMicros() {
+      return this._max.get();
+   }
+
+   /**
+    * @param quantile between 0 and 1, e.g. 0.99
+    * @return the value below which that share of the recordings fall, in
+    *         microseconds, or 0 when nothing was recorded
+    */
+   public long percentileMicros(double quantile) {
+      long total = this._count.get();
+      if (total == 0) {
+         return 0;
+      }
+      long rank = Math.max(1, (long) Math.ceil(quantile * total));
+      long seen = 0;
+      for (int i = 0; i < BUCKETS; i++) {
+         seen += this._counts.get(i);
+         if (seen >= rank) {
+            return Math.min(highest(i), this._max.get());
+         }
+      }
+      return this._max.get();
+   }
+
+   private static int index(long micros) {
+      if (micros < 2 * SUB) {
+         return (int) micros;
+      }
+      int exponent = 63 - Long.numberOfLeadingZeros(micros) - SUB_BITS;
+      int i = exponent * SUB + (int) (micros >>> exponent);
+      return Math.min(i, BUCKETS - 1);
+   }
+
+   // the largest value that falls into bucket i
+   private static long highest(int i) {
+      if (i < 2 * SUB) {
+         return i;
+      }
+      int exponent = i / SUB - 1;
+      long mantissa = i - (long) exponent * SUB;
+      return ((mantissa + 1) << exponent) - 1;
+   }
+}//end LatencyHistogram
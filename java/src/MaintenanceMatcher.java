@@ -0,0 +1,347 @@
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Links every maintenance request to the repair that fulfilled it: the
+ * first Repair of the same plane and repair code dated on or after the
+ * request (a repair on the request date counts).  Several requests can be
+ * fulfilled by one repair.
+ *
+ * Both tables are read once, as one stream ordered by plane, code and
+ * date, so a single pass matches every request to the next repair of its
+ * group.  Afterwards WriteBatcher reports every row it commits through
+ * added(): a new request looks up the first repair on or after its date,
+ * and a new repair takes over the requests dated after the previous repair
+ * of its group up to its own date.  The outstanding requests of each plane
+ * and the days every matched request waited are kept up to date that way,
+ * so neither needs a query.  Rows written by other processes are seen once
+ * the matcher is older than the TTL, when the next lookup reads both tables
+ * again, or after invalidate().  Rows without a plane, code or date never
+ * match and are left out.
+ */
+public class MaintenanceMatcher {
+
+   /**
+    * A maintenance request and, once repaired, the repair that fulfilled
+    * it.
+    */
+   public static class Match {
+      public final int requestID;
+      public final String planeID;
+      public final String repairCode;
+      public final LocalDate requestDate;
+      public final String pilotID;
+      // null while the request is outstanding
+      public final Integer repairID;
+      public final LocalDate repairDate;
+
+      Match(Request r) {
+         this.requestID = r.requestID;
+         this.planeID = r.planeID;
+         this.repairCode = r.repairCode;
+         this.requestDate = r.requestDate;
+         this.pilotID = r.pilotID;
+         this.repairID = r.repairDate != null ? r.repairID : null;
+         this.repairDate = r.repairDate;
+      }
+
+      /**
+       * @return the days from request to repair, or null while outstanding
+       */
+      public Integer daysToRepair() {
+         return this.repairDate != null ? (int) ChronoUnit.DAYS.between(this.requestDate, this.repairDate) : null;
+      }
+   }//end Match
+
+   // a request and its current match; changed under the matcher's lock
+   private static final class Request {
+      final int requestID;
+      final String planeID;
+      final String repairCode;
+      final LocalDate requestDate;
+      final String pilotID;
+      int repairID = 0;
+      LocalDate repairDate = null;
+
+      Request(int requestID, String planeID, String repairCode, LocalDate requestDate, String pilotID) {
+         this.requestID = requestID;
+         this.planeID = planeID;
+         this.repairCode = repairCode;
+         this.requestDate = requestDate;
+         this.pilotID = pilotID;
+      }
+
+      int days() {
+         return (int) ChronoUnit.DAYS.between(this.requestDate, this.repairDate);
+      }
+   }//end Request
+
+   // the requests and repairs of one plane and repair code
+   private static final class Group {
+      // repair date -> RepairID of the first repair seen that day
+      final TreeMap<LocalDate, Integer> repairs = new TreeMap<LocalDate, Integer>();
+      final TreeMap<LocalDate, List<Request>> requests = new TreeMap<LocalDate, List<Request>>();
+   }//end Group
+
+   private static final Comparator<Request> BY_DATE =
+      Comparator.<Request, LocalDate>comparing(r -> r.requestDate).thenComparingInt(r -> r.requestID);
+
+   private final AirlineManagement _esql;
+   private final long _ttlNanos;
+
+   // all of the below is guarded by this; null groups means not loaded
+   private Map<List<String>, Group> _groups = null;
+   private Map<Integer, Request> _requests = null;
+   private Map<String, TreeSet<Request>> _outstanding = null;
+   // days to repair -> matched requests that waited that long
+   private TreeMap<Integer, Integer> _days = null;
+   private int _matched = 0;
+   private long _loadedAt = 0L;
+
+   /**
+    * @param esql the database front end the tables are read through
+    * @param ttlMs how long the matches are served before they are reloaded
+    */
+   public MaintenanceMatcher(AirlineManagement esql, long ttlMs) {
+      this._esql = esql;
+      this._ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+   }
+
+   /**
+    * @return the plane's requests no repair has fulfilled yet, oldest first
+    * @throws java.sql.SQLException when the matcher has to be loaded and
+    *         reading the tables fails
+    */
+   public synchronized List<Match> outstanding(String planeID) throws SQLException {
+      load();
+      List<Match> matches = new ArrayList<Match>();
+      TreeSet<Request> open = this._outstanding.get(planeID);
+      if (open != null) {
+         for (Request r : open) {
+            matches.add(new Match(r));
+         }
+      }
+      return matches;
+   }
+
+   /**
+    * @return the number of outstanding requests of every plane that has
+    *         any, by PlaneID
+    * @throws java.sql.SQLException when the matcher has to be loaded and
+    *         reading the tables fails
+    */
+   public synchronized Map<String, Integer> outstandingPerPlane() throws SQLException {
+      load();
+      Map<String, Integer> counts = new TreeMap<String, Integer>();
+      for (Map.Entry<String, TreeSet<Request>> e : this._outstanding.entrySet()) {
+         if (!e.getValue().isEmpty()) {
+            counts.put(e.getKey(), e.getValue().size());
+         }
+      }
+      return counts;
+   }
+
+   /**
+    * @return the request and its repair, or null for an unknown request
+    * @throws java.sql.SQLException when the matcher has to be loaded and
+    *         reading the tables fails
+    */
+   public synchronized Match match(int requestID) throws SQLException {
+      load();
+      Request r = this._requests.get(requestID);
+      return r != null ? new Match(r) : null;
+   }
+
+   /**
+    * @return how many requests have been matched to a repair
+    * @throws java.sql.SQLException when the matcher has to be loaded and
+    *         reading the tables fails
+    */
+   public synchronized int matched() throws SQLException {
+      load();
+      return this._matched;
+   }
+
+   /**
+    * @param percentile 0 to 100
+    * @return the days from request to repair that this percentage of the
+    *         matched requests did not exceed, or null when none matched
+    * @throws java.sql.SQLException when the matcher has to be loaded and
+    *         reading the tables fails
+    */
+   public synchronized Integer daysToRepair(double percentile) throws SQLException {
+      load();
+      if (this._matched == 0) {
+         return null;
+      }
+      long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * this._matched));
+      long seen = 0;
+      for (Map.Entry<Integer, Integer> e : this._days.entrySet()) {
+         seen += e.getValue();
+         if (seen >= rank) {
+            return e.getKey();
+         }
+      }
+      return this._days.lastKey();
+   }
+
+   /**
+    * Applies a committed Repair or MaintenanceRequest row.  Does nothing
+    * before the matcher is loaded; the load reads the row itself, and a
+    * row seen by both is applied once.
+    */
+   public synchronized void added(MaintenanceTimeline.Event event) {
+      if (this._groups == null || event.planeID == null || event.repairCode == null || event.date == null) {
+         return;
+      }
+      if (event.kind == MaintenanceTimeline.Event.Kind.REPAIR) {
+         repair(event.planeID, event.repairCode, event.date, event.id);
+      } else {
+         request(new Request(event.id, event.planeID, event.repairCode, event.date, event.personID));
+      }
+   }
+
+   /**
+    * Drops everything; the next lookup reads both tables again.
+    */
+   public synchronized void invalidate() {
+      this._groups = null;
+   }
+
+   private Group group(String planeID, String repairCode) {
+      return this._groups.computeIfAbsent(Arrays.asList(planeID, repairCode), k -> new Group());
+   }
+
+   private void request(Request r) {
+      if (this._requests.putIfAbsent(r.requestID, r) != null) {
+         return;
+      }
+      Group g = group(r.planeID, r.repairCode);
+      g.requests.computeIfAbsent(r.requestDate, k -> new ArrayList<Request>()).add(r);
+      Map.Entry<LocalDate, Integer> repair = g.repairs.ceilingEntry(r.requestDate);
+      if (repair != null) {
+         match(r, repair.getKey(), repair.getValue());
+      } else {
+         this._outstanding.computeIfAbsent(r.planeID, k -> new TreeSet<Request>(BY_DATE)).add(r);
+      }
+   }
+
+   private void repair(String planeID, String repairCode, LocalDate date, int repairID) {
+      Group g = group(planeID, repairCode);
+      if (g.repairs.putIfAbsent(date, repairID) != null) {
+         // an earlier repair the same day already fulfils the same requests
+         return;
+      }
+      // requests after the previous repair, up to this one, are now its
+      LocalDate previous = g.repairs.lowerKey(date);
+      Map<LocalDate, List<Request>> taken = previous == null
+         ? g.requests.headMap(date, true)
+         : g.requests.subMap(previous, false, date, true);
+      for (List<Request> day : taken.values()) {
+         for (Request r : day) {
+            if (r.repairDate == null) {
+               TreeSet<Request> open = this._outstanding.get(r.planeID);
+               if (open != null) {
+                  open.remove(r);
+               }
+            } else {
+               count(r.days(), -1);
+               this._matched--;
+            }
+            match(r, date, repairID);
+         }
+      }
+   }
+
+   private void match(Request r, LocalDate repairDate, int repairID) {
+      r.repairDate = repairDate;
+      r.repairID = repairID;
+      count(r.days(), 1);
+      this._matched++;
+   }
+
+   private void count(int days, int delta) {
+      int left = this._days.getOrDefault(days, 0) + delta;
+      if (left > 0) {
+         this._days.put(days, left);
+      } else {
+         this._days.remove(days);
+      }
+   }
+
+   /*
+    * Reads both tables as one stream ordered by plane, code and date, with
+    * the requests of a day before its repairs.  Every request waits in
+    * pending until the next repair of its group, so one pass matches all.
+    */
+   private void load() throws SQLException {
+      if (this._groups != null && System.nanoTime() - this._loadedAt < this._ttlNanos) {
+         return;
+      }
+      long started = System.nanoTime();
+      this._groups = new HashMap<List<String>, Group>();
+      this._requests = new HashMap<Integer, Request>();
+      this._outstanding = new HashMap<String, TreeSet<Request>>();
+      this._days = new TreeMap<Integer, Integer>();
+      this._matched = 0;
+      try {
+         Loader loader = new Loader();
+         this._esql.executeQueryForEach(SqlStatement.MAINTENANCE_EVENTS, loader);
+         loader.outstanding();
+      } catch (SQLException | RuntimeException e) {
+         this._groups = null;
+         throw e;
+      }
+      this._loadedAt = started;
+   }//end load
+
+   // matches the rows of MAINTENANCE_EVENTS one group at a time
+   private final class Loader implements AirlineManagement.RowHandler {
+      final List<Request> pending = new ArrayList<Request>();
+      Group group = null;
+      List<String> key = null;
+
+      @Override
+      public void row(ResultSet rs) throws SQLException {
+         List<String> k = Arrays.asList(rs.getString(1), rs.getString(2));
+         if (!k.equals(this.key)) {
+            outstanding();
+            this.key = k;
+            this.group = group(k.get(0), k.get(1));
+         }
+         LocalDate date = Rows.getDate(rs, 3);
+         int id = rs.getInt(5);
+         if ("request".equals(rs.getString(4))) {
+            Request r = new Request(id, k.get(0), k.get(1), date, rs.getString(6));
+            if (MaintenanceMatcher.this._requests.putIfAbsent(id, r) == null) {
+               this.group.requests.computeIfAbsent(date, d -> new ArrayList<Request>()).add(r);
+               this.pending.add(r);
+            }
+         } else if (this.group.repairs.putIfAbsent(date, id) == null) {
+            for (Request r : this.pending) {
+               match(r, date, id);
+            }
+            this.pending.clear();
+         }
+      }
+
+      // the requests of the group no repair followed
+      void outstanding() {
+         for (Request r : this.pending) {
+            MaintenanceMatcher.this._outstanding.computeIfAbsent(r.planeID, p -> new TreeSet<Request>(BY_DATE)).add(r);
+         }
+         this.pending.clear();
+      }
+   }//end Loader
+}//end MaintenanceMatcher
@@ -0,0 +1,169 @@
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The repairs and maintenance requests of every plane in date order, held
+ * in memory (feature9, feature15).
+ *
+ * Both tables are read on first use into one sorted set per plane.  A
+ * date range is then a lookup of its two ends plus the slice between them.
+ * WriteBatcher reports every Repair and MaintenanceRequest row it commits
+ * through added(), so this process's own writes are seen at once; rows
+ * written by other processes, e.g. a bulk load or another console, are
+ * seen on the first lookup after the timeline is older than the TTL, or
+ * after invalidate().
+ */
+public class MaintenanceTimeline {
+
+   /**
+    * A repair or a maintenance request of one plane.
+    */
+   public static class Event {
+      public enum Kind { REQUEST, REPAIR }
+
+      public final Kind kind;
+      public final int id;
+      public final String planeID;
+      public final String repairCode;
+      public final LocalDate date;
+      // the technician of a repair, the pilot of a request
+      public final String personID;
+
+      Event(Kind kind, int id, String planeID, String repairCode, LocalDate date, String personID) {
+         this.kind = kind;
+         this.id = id;
+         this.planeID = planeID;
+         this.repairCode = repairCode;
+         this.date = date;
+         this.personID = personID;
+      }
+
+      static Event repair(int repairID, String planeID, String repairCode, LocalDate date, String technicianID) {
+         return new Event(Kind.REPAIR, repairID, planeID, repairCode, date, technicianID);
+      }
+
+      static Event request(int requestID, String planeID, String repairCode, LocalDate date, String pilotID) {
+         return new Event(Kind.REQUEST, requestID, planeID, repairCode, date, pilotID);
+      }
+   }//end Event
+
+   // by date; on the same day a request comes before the repair it asked for
+   private static final Comparator<Event> ORDER = Comparator.<Event, LocalDate>comparing(e -> e.date)
+      .thenComparing(e -> e.kind)
+      .thenComparingInt(e -> e.id);
+
+   private final AirlineManagement _esql;
+   private final long _ttlNanos;
+   private volatile Map<String, TreeSet<Event>> _planes = null;
+   private volatile long _loadedAt = 0L;
+
+   /**
+    * @param esql the database front end the tables are read through
+    * @param ttlMs how long the timeline is served before it is reloaded
+    */
+   public MaintenanceTimeline(AirlineManagement esql, long ttlMs) {
+      this._esql = esql;
+      this._ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+   }
+
+   /**
+    * @return the repairs of the plane dated from..to, both included, in
+    *         date order
+    * @throws java.sql.SQLException when the timeline has to be loaded and
+    *         reading Repair or MaintenanceRequest fails
+    */
+   public List<Event> repairs(String planeID, LocalDate from, LocalDate to) throws SQLException {
+      return between(planeID, from, to, Event.Kind.REPAIR);
+   }
+
+   /**
+    * @return the maintenance requests of the plane dated from..to, both
+    *         included, in date order
+    * @throws java.sql.SQLException when the timeline has to be loaded and
+    *         reading Repair or MaintenanceRequest fails
+    */
+   public List<Event> requests(String planeID, LocalDate from, LocalDate to) throws SQLException {
+      return between(planeID, from, to, Event.Kind.REQUEST);
+   }
+
+   /**
+    * Adds a committed Repair or MaintenanceRequest row.  Does nothing
+    * before the timeline is loaded; the load reads the row itself.
+    */
+   public void added(Event event) {
+      Map<String, TreeSet<Event>> planes;
+      // a load in progress may or may not see the row: wait for it
+      synchronized (this) {
+         planes = this._planes;
+      }
+      if (planes == null) {
+         return;
+      }
+      TreeSet<Event> events = planes.computeIfAbsent(event.planeID, k -> new TreeSet<Event>(ORDER));
+      synchronized (events) {
+         events.add(event);
+      }
+   }
+
+   /**
+    * Drops the timeline; the next lookup reads both tables again.
+    */
+   public synchronized void invalidate() {
+      this._planes = null;
+   }
+
+   private List<Event> between(String planeID, LocalDate from, LocalDate to, Event.Kind kind) throws SQLException {
+      TreeSet<Event> events = planes().get(planeID);
+      List<Event> found = new ArrayList<Event>();
+      if (events == null || from.isAfter(to)) {
+         return found;
+      }
+      Event low = new Event(Event.Kind.REQUEST, Integer.MIN_VALUE, planeID, null, from, null);
+      Event high = new Event(Event.Kind.REPAIR, Integer.MAX_VALUE, planeID, null, to, null);
+      synchronized (events) {
+         NavigableSet<Event> slice = events.subSet(low, true, high, true);
+         for (Event e : slice) {
+            if (e.kind == kind) {
+               found.add(e);
+            }
+         }
+      }
+      return found;
+   }
+
+   private Map<String, TreeSet<Event>> planes() throws SQLException {
+      Map<String, TreeSet<Event>> current = this._planes;
+      if (current != null && System.nanoTime() - this._loadedAt < this._ttlNanos) {
+         return current;
+      }
+      synchronized (this) {
+         if (this._planes == null || System.nanoTime() - this._loadedAt >= this._ttlNanos) {
+            long started = System.nanoTime();
+            this._planes = load();
+            this._loadedAt = started;
+         }
+         return this._planes;
+      }
+   }
+
+   private Map<String, TreeSet<Event>> load() throws SQLException {
+      Map<String, TreeSet<Event>> planes = new ConcurrentHashMap<String, TreeSet<Event>>();
+      this._esql.executeQueryForEach(SqlStatement.ALL_REPAIRS, rs -> {
+         Event e = Event.repair(rs.getInt(1), rs.getString(2), rs.getString(3), Rows.getDate(rs, 4), rs.getString(5));
+         planes.computeIfAbsent(e.planeID, k -> new TreeSet<Event>(ORDER)).add(e);
+      });
+      this._esql.executeQueryForEach(SqlStatement.ALL_REQUESTS, rs -> {
+         Event e = Event.request(rs.getInt(1), rs.getString(2), rs.getString(3), Rows.getDate(rs, 4), rs.getString(5));
+         planes.computeIfAbsent(e.planeID, k -> new TreeSet<Event>(ORDER)).add(e);
+      });
+      return planes;
+   }
+}//end MaintenanceTimeline
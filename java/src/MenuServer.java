@@ -0,0 +1,98 @@
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves the text menu over TCP so that many terminals can share one
+ * process and one connection pool.  Each client gets the same prompts the
+ * console shows; a line sent by the client answers the current prompt.
+ *
+ * Sessions run on virtual threads when the JVM provides them (Java 21 and
+ * later) and on a bounded pool of platform threads otherwise.  A client
+ * that sends nothing for IDLE_TIMEOUT_MS is disconnected.
+ */
+public class MenuServer {
+
+   // how long a session waits for a line before it is closed
+   private static final int IDLE_TIMEOUT_MS = Integer.getInteger("airline.server.idleTimeoutMs", 30 * 60 * 1000);
+
+   private final AirlineManagement _esql;
+   private final int _port;
+   private final ExecutorService _sessions;
+
+   /**
+    * @param esql the shared database front end
+    * @param port the TCP port to listen on
+    * @param maxSessions the bound used when virtual threads are unavailable
+    */
+   public MenuServer(AirlineManagement esql, int port, int maxSessions) {
+      this._esql = esql;
+      this._port = port;
+      this._sessions = newSessionExecutor(maxSessions);
+   }
+
+   /**
+    * Accepts clients until the process is stopped.
+    *
+    * @throws java.io.IOException when the port cannot be opened
+    */
+   public void serve() throws IOException {
+      ServerSocket server = new ServerSocket(this._port);
+      System.out.println("Serving the menu on port " + this._port);
+      try {
+         while (true) {
+            final Socket client = server.accept();
+            this._sessions.execute(() -> runSession(client));
+         }
+      } finally {
+         this._sessions.shutdown();
+         server.close();
+      }
+   }//end serve
+
+   /*
+    * Runs the menu for one client with its socket bound as the session.
+    */
+   private void runSession(Socket client) {
+      try {
+         client.setSoTimeout(IDLE_TIMEOUT_MS);
+         PrintStream out = new PrintStream(new BufferedOutputStream(client.getOutputStream()), false);
+         BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream()));
+         Session.bind(new Session(in, out, out));
+         try {
+            AirlineManagement.Greeting();
+            AirlineManagement.runMenu(this._esql);
+         } finally {
+            System.out.flush();
+            out.flush();
+            Session.unbind();
+         }
+      } catch (IOException e) {
+         // the client went away; nothing left to report to it.
+      } finally {
+         try {
+            client.close();
+         } catch (IOException e) {
+            // ignored.
+         }
+      }
+   }//end runSession
+
+   /*
+    * Executors.newVirtualThreadPerTaskExecutor() is looked up reflectively
+    * so the class still compiles and runs on Java 17.
+    */
+   private static ExecutorService newSessionExecutor(int maxSessions) {
+      try {
+         return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+      } catch (ReflectiveOperationException e) {
+         return Executors.newFixedThreadPool(maxSessions);
+      }
+   }
+}//end MenuServer
@@ -0,0 +1,101 @@
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The passengers of a flight on one date, read a page at a time.
+ *
+ * Pages are cut by keyset rather than OFFSET: each page starts after the
+ * (Status, ReservationID) of the last row of the previous one, a NULL
+ * Status counting as '', which the reservation_flight_index
+ * (FlightInstanceID, COALESCE(Status, ''), ReservationID) answers
+ * directly, so page 100 costs the same as page 1 and only one page is
+ * held in memory.  The manifest object is the cursor; it keeps the
+ * position between calls to next().  A flight flying more than once on
+ * the date is read instance by instance.
+ */
+public class PassengerManifest {
+
+   // rows per page unless the caller asks for another size
+   public static final int PAGE_SIZE = Integer.getInteger("airline.manifest.pageSize", 50);
+
+   // the values Reservation.Status may take
+   public static final List<String> STATUSES = Arrays.asList("reserved", "waitlist", "flown", "cancelled");
+
+   private final AirlineManagement _esql;
+   private final List<Integer> _instances;
+   private final String _status;
+   private final int _pageSize;
+
+   // the instance being read and the key of the last row returned
+   private int _instance = 0;
+   private String _lastStatus = "";
+   private String _lastReservationID = "";
+
+   /**
+    * @param instances the flight instances to list, in order
+    * @param status only list reservations with this status; null for all
+    * @param pageSize rows per page
+    */
+   public PassengerManifest(AirlineManagement esql, List<Integer> instances, String status, int pageSize) {
+      this._esql = esql;
+      this._instances = instances;
+      this._status = status;
+      this._pageSize = pageSize;
+   }
+
+   /**
+    * @return whether next() has more rows to return; instances without
+    *         passengers left at the end are skipped by next() beforehand
+    */
+   public boolean hasMore() {
+      return this._instance < this._instances.size();
+   }
+
+   /**
+    * @return the column labels followed by up to the page size of rows;
+    *         only the labels once the manifest is exhausted
+    * @throws java.sql.SQLException when reading the page fails
+    */
+   public List<List<String>> next() throws SQLException {
+      List<List<String>> page = new ArrayList<List<String>>();
+      page.add(Arrays.asList("reservation_id", "first_name", "last_name", "status"));
+      while (hasMore() && page.size() - 1 < this._pageSize) {
+         int want = this._pageSize - (page.size() - 1);
+         // one row more than wanted tells whether this instance goes on
+         List<List<String>> rows = page(want + 1);
+         if (rows.size() > want) {
+            rows = rows.subList(0, want);
+            List<String> last = rows.get(want - 1);
+            this._lastReservationID = last.get(0);
+            this._lastStatus = last.get(3) != null ? last.get(3) : "";
+         } else {
+            nextInstance();
+         }
+         page.addAll(rows);
+      }
+      // so hasMore() is false when only empty instances are left
+      while (hasMore() && this._lastReservationID.isEmpty() && page(1).isEmpty()) {
+         nextInstance();
+      }
+      return page;
+   }//end next
+
+   // up to rows rows of the current instance after the last one returned
+   private List<List<String>> page(int rows) throws SQLException {
+      int id = this._instances.get(this._instance);
+      return this._status == null
+         ? this._esql.executeQueryAndReturnResult(SqlStatement.MANIFEST_PAGE,
+                                                  id, this._lastStatus, this._lastReservationID, rows)
+         : this._esql.executeQueryAndReturnResult(SqlStatement.MANIFEST_PAGE_BY_STATUS,
+                                                  id, this._status, this._lastReservationID, rows);
+   }
+
+   // this instance is done; the next starts from the beginning
+   private void nextInstance() {
+      this._instance++;
+      this._lastStatus = "";
+      this._lastReservationID = "";
+   }
+}//end PassengerManifest
@@ -0,0 +1,213 @@
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Latency, row and error counts for every database call and every menu
+ * feature.
+ *
+ * Each execute* method of AirlineManagement reports its call under the
+ * SQL shape it ran: the SqlStatement name, or "adhoc" for SQL passed as a
+ * string.  The menu reports each featureN it runs, and errors of the calls
+ * made inside a feature are counted against that feature as well, since
+ * the features themselves only print them.  Calls slower than the slow
+ * query threshold are logged to the console's error stream, without
+ * their parameters.
+ *
+ * The numbers can be printed with dump() (the managers' "View Query
+ * Metrics" menu entry) or scraped in Prometheus text format from
+ * http://127.0.0.1:<airline.metrics.port>/metrics.
+ */
+public class QueryMetrics {
+
+   // the counters of one SQL shape or one feature
+   private static class Series {
+      final LatencyHistogram latency = new LatencyHistogram();
+      final AtomicLong rows = new AtomicLong();
+      final AtomicLong errors = new AtomicLong();
+   }
+
+   // the feature a thread is running and when it started
+   private static class Running {
+      final String feature;
+      final long start;
+
+      Running(String feature, long start) {
+         this.feature = feature;
+         this.start = start;
+      }
+   }
+
+   private final Map<String, Series> _shapes = new ConcurrentHashMap<String, Series>();
+   private final Map<String, Series> _features = new ConcurrentHashMap<String, Series>();
+   private final ThreadLocal<Running> _running = new ThreadLocal<Running>();
+   private final long _slowNanos;
+   private final PrintStream _slowLog;
+   private HttpServer _endpoint = null;
+
+   /**
+    * @param slowQueryMs calls taking at least this long are logged
+    * @param slowLog where slow calls are logged
+    */
+   public QueryMetrics(long slowQueryMs, PrintStream slowLog) {
+      this._slowNanos = slowQueryMs * 1000000L;
+      this._slowLog = slowLog;
+   }
+
+   /**
+    * Records one database call.
+    *
+    * @param shape the SQL shape the call ran
+    * @param nanos how long the call took
+    * @param rows rows returned or changed; 0 when the call failed
+    * @param failed whether the call threw
+    */
+   public void query(String shape, long nanos, long rows, boolean failed) {
+      Series series = this._shapes.computeIfAbsent(shape, k -> new Series());
+      series.latency.record(nanos);
+      series.rows.addAndGet(rows);
+      Running running = this._running.get();
+      if (failed) {
+         series.errors.incrementAndGet();
+         if (running != null) {
+            this._features.computeIfAbsent(running.feature, k -> new Series()).errors.incrementAndGet();
+         }
+      }
+      if (nanos >= this._slowNanos) {
+         this._slowLog.printf("SLOW QUERY %.1f ms shape=%s feature=%s rows=%d%s%n",
+                              nanos / 1e6, shape, running != null ? running.feature : "-", rows,
+                              failed ? " failed" : "");
+      }
+   }
+
+   /**
+    * Marks the start of a menu feature on the calling thread.
+    */
+   public void enterFeature(String feature) {
+      this._running.set(new Running(feature, System.nanoTime()));
+   }
+
+   /**
+    * Marks the end of the feature the calling thread started last and
+    * records its latency.
+    */
+   public void exitFeature() {
+      Running running = this._running.get();
+      if (running == null) {
+         return;
+      }
+      this._running.remove();
+      this._features.computeIfAbsent(running.feature, k -> new Series())
+                    .latency.record(System.nanoTime() - running.start);
+   }
+
+   /**
+    * Prints every feature and SQL shape as a table.
+    */
+   public void dump(PrintStream out) {
+      List<List<String>> table = new ArrayList<List<String>>();
+      table.add(Arrays.asList("kind", "name", "calls", "errors", "rows", "mean_ms", "p50_ms", "p99_ms", "max_ms"));
+      addRows(table, "feature", this._features);
+      addRows(table, "sql", this._shapes);
+      if (table.size() == 1) {
+         out.println("No queries recorded yet.");
+         return;
+      }
+      TableRenderer.render(table, out);
+   }
+
+   private static void addRows(List<List<String>> table, String kind, Map<String, Series> all) {
+      for (Map.Entry<String, Series> e : new TreeMap<String, Series>(all).entrySet()) {
+         LatencyHistogram h = e.getValue().latency;
+         long calls = h.count();
+         table.add(Arrays.asList(kind, e.getKey(), String.valueOf(calls),
+                                 String.valueOf(e.getValue().errors.get()), String.valueOf(e.getValue().rows.get()),
+                                 millis(calls == 0 ? 0 : h.sumMicros() / calls),
+                                 millis(h.percentileMicros(0.50)), millis(h.percentileMicros(0.99)),
+                                 millis(h.maxMicros())));
+      }
+   }
+
+   private static String millis(long micros) {
+      return String.format("%.2f", micros / 1e3);
+   }
+
+   /**
+    * @return the metrics in Prometheus text exposition format
+    */
+   public String prometheus() {
+      StringBuilder text = new StringBuilder();
+      exposition(text, "airline_query", "shape", this._shapes);
+      exposition(text, "airline_feature", "feature", this._features);
+      return text.toString();
+   }
+
+   private static void exposition(StringBuilder text, String prefix, String label, Map<String, Series> all) {
+      Map<String, Series> sorted = new TreeMap<String, Series>(all);
+      text.append("# TYPE ").append(prefix).append("_latency_seconds summary\n");
+      for (Map.Entry<String, Series> e : sorted.entrySet()) {
+         LatencyHistogram h = e.getValue().latency;
+         String name = label + "=\"" + e.getKey() + "\"";
+         for (double q : new double[] { 0.5, 0.9, 0.99, 0.999 }) {
+            text.append(prefix).append("_latency_seconds{").append(name).append(",quantile=\"").append(q).append("\"} ")
+                .append(h.percentileMicros(q) / 1e6).append('\n');
+         }
+         text.append(prefix).append("_latency_seconds_sum{").append(name).append("} ").append(h.sumMicros() / 1e6).append('\n');
+         text.append(prefix).append("_latency_seconds_count{").append(name).append("} ").append(h.count()).append('\n');
+      }
+      text.append("# TYPE ").append(prefix).append("_errors_total counter\n");
+      for (Map.Entry<String, Series> e : sorted.entrySet()) {
+         text.append(prefix).append("_errors_total{").append(label).append("=\"").append(e.getKey()).append("\"} ")
+             .append(e.getValue().errors.get()).append('\n');
+      }
+      if (label.equals("shape")) {
+         text.append("# TYPE ").append(prefix).append("_rows_total counter\n");
+         for (Map.Entry<String, Series> e : sorted.entrySet()) {
+            text.append(prefix).append("_rows_total{").append(label).append("=\"").append(e.getKey()).append("\"} ")
+                .append(e.getValue().rows.get()).append('\n');
+         }
+      }
+   }
+
+   /**
+    * Serves prometheus() at /metrics on the loopback interface.
+    *
+    * @param port the port to listen on
+    * @param extra more lines appended to every scrape, e.g. pool gauges
+    */
+   public synchronized void startEndpoint(int port, Supplier<String> extra) throws IOException {
+      HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+      server.createContext("/metrics", exchange -> {
+         byte[] body = (prometheus() + extra.get()).getBytes(StandardCharsets.UTF_8);
+         exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+         exchange.sendResponseHeaders(200, body.length);
+         try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+         }
+      });
+      server.start();
+      this._endpoint = server;
+   }
+
+   /**
+    * Stops the scrape endpoint, if it was started.
+    */
+   public synchronized void stopEndpoint() {
+      if (this._endpoint != null) {
+         this._endpoint.stop(0);
+         this._endpoint = null;
+      }
+   }
+}//end QueryMetrics
@@ -0,0 +1,278 @@
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory copy of the small, rarely changing tables: Plane, Flight,
+ * Schedule, Pilot and Technician.
+ *
+ * All five tables are read together into an immutable snapshot.  The
+ * snapshot is reloaded on the first lookup after it is older than the TTL
+ * or after invalidate() was called; code that writes one of these tables
+ * must call invalidate() so the change is seen on the next lookup.  The
+ * one exception is Plane.LastRepairDate, which every repair moves forward:
+ * WriteBatcher reports its repairs through repaired() instead, which
+ * updates the plane in place.
+ */
+public class ReferenceCache {
+
+   /**
+    * A row of Plane.
+    */
+   public static class Plane {
+      public final String planeID;
+      public final String make;
+      public final String model;
+      public final int year;
+      public final String lastRepairDate;
+
+      Plane(String planeID, String make, String model, int year, String lastRepairDate) {
+         this.planeID = planeID;
+         this.make = make;
+         this.model = model;
+         this.year = year;
+         this.lastRepairDate = lastRepairDate;
+      }
+
+      // this plane after a repair on that date; never moves the date back
+      Plane repaired(LocalDate date) {
+         if (this.lastRepairDate != null && !date.isAfter(LocalDate.parse(this.lastRepairDate))) {
+            return this;
+         }
+         return new Plane(this.planeID, this.make, this.model, this.year, date.toString());
+      }
+   }//end Plane
+
+   /**
+    * A row of Flight.
+    */
+   public static class Flight {
+      public final String flightNumber;
+      public final String planeID;
+      public final String departureCity;
+      public final String arrivalCity;
+
+      Flight(String flightNumber, String planeID, String departureCity, String arrivalCity) {
+         this.flightNumber = flightNumber;
+         this.planeID = planeID;
+         this.departureCity = departureCity;
+         this.arrivalCity = arrivalCity;
+      }
+   }//end Flight
+
+   /**
+    * A row of Schedule.
+    */
+   public static class Departure {
+      public final String flightNumber;
+      public final String dayOfWeek;
+      public final String departureTime;
+      public final String arrivalTime;
+
+      Departure(String flightNumber, String dayOfWeek, String departureTime, String arrivalTime) {
+         this.flightNumber = flightNumber;
+         this.dayOfWeek = dayOfWeek;
+         this.departureTime = departureTime;
+         this.arrivalTime = arrivalTime;
+      }
+   }//end Departure
+
+   // everything loaded by one refresh
+   private static class Snapshot {
+      final long loadedAt = System.nanoTime();
+      // concurrent: repaired() replaces planes while others read
+      final Map<String, Plane> planes = new ConcurrentHashMap<String, Plane>();
+      final Map<String, Flight> flights = new HashMap<String, Flight>();
+      final Map<String, List<Departure>> schedules = new HashMap<String, List<Departure>>();
+      final Map<String, List<Flight>> routes = new HashMap<String, List<Flight>>();
+      final Set<String> pilots = new HashSet<String>();
+      final Set<String> technicians = new HashSet<String>();
+   }
+
+   private final AirlineManagement _esql;
+   private final long _ttlNanos;
+   private volatile Snapshot _snapshot = null;
+
+   private final AtomicLong _hits = new AtomicLong();
+   private final AtomicLong _misses = new AtomicLong();
+   private final AtomicLong _reloads = new AtomicLong();
+
+   /**
+    * @param esql the database front end the tables are read through
+    * @param ttlMs how long a snapshot is served before it is reloaded
+    */
+   public ReferenceCache(AirlineManagement esql, long ttlMs) {
+      this._esql = esql;
+      this._ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+   }
+
+   /**
+    * Drops the current snapshot; the next lookup reads the tables again.
+    */
+   public void invalidate() {
+      this._snapshot = null;
+   }
+
+   /**
+    * Records a committed repair: the plane's lastRepairDate becomes the
+    * repair date if that is later, as MAINTENANCE_WRITE does in Plane.
+    * Does nothing before the snapshot is loaded; the load reads Plane.
+    */
+   public void repaired(String planeID, LocalDate date) {
+      Snapshot current;
+      // a load in progress may or may not see the repair: wait for it
+      synchronized (this) {
+         current = this._snapshot;
+      }
+      if (current != null && planeID != null && date != null) {
+         current.planes.computeIfPresent(planeID, (k, plane) -> plane.repaired(date));
+      }
+   }
+
+   /**
+    * @return the plane, or null when no plane has that ID
+    */
+   public Plane plane(String planeID) throws SQLException {
+      return count(snapshot().planes.get(planeID));
+   }
+
+   /**
+    * @return the flight, or null when no flight has that number
+    */
+   public Flight flight(String flightNumber) throws SQLException {
+      return count(snapshot().flights.get(flightNumber));
+   }
+
+   /**
+    * @return the weekly departures of the flight, Monday first; empty when
+    *         the flight has no schedule
+    */
+   public List<Departure> schedule(String flightNumber) throws SQLException {
+      List<Departure> departures = count(snapshot().schedules.get(flightNumber));
+      return departures != null ? departures : Collections.<Departure>emptyList();
+   }
+
+   public boolean planeExists(String planeID) throws SQLException {
+      return plane(planeID) != null;
+   }
+
+   public boolean pilotExists(String pilotID) throws SQLException {
+      return count(snapshot().pilots.contains(pilotID) ? pilotID : null) != null;
+   }
+
+   public boolean technicianExists(String technicianID) throws SQLException {
+      return count(snapshot().technicians.contains(technicianID) ? technicianID : null) != null;
+   }
+
+   /**
+    * Looks up the flights between two cities.  City names are compared
+    * ignoring case and surrounding blanks.
+    *
+    * @return the flights flying that route, by flight number; empty when
+    *         none does
+    */
+   public List<Flight> flightsBetween(String departureCity, String arrivalCity) throws SQLException {
+      List<Flight> flights = count(snapshot().routes.get(routeKey(departureCity, arrivalCity)));
+      return flights != null ? flights : Collections.<Flight>emptyList();
+   }
+
+   /**
+    * @return every cached flight
+    */
+   public List<Flight> flights() throws SQLException {
+      return new ArrayList<Flight>(snapshot().flights.values());
+   }
+
+   /**
+    * @return lookup and reload counters as a single line
+    */
+   public String metrics() {
+      long hits = this._hits.get();
+      long misses = this._misses.get();
+      double ratio = hits + misses == 0 ? 0.0 : 100.0 * hits / (hits + misses);
+      return String.format("reference_cache hits=%d misses=%d hit_ratio=%.1f%% reloads=%d",
+                           hits, misses, ratio, this._reloads.get());
+   }
+
+   private <T> T count(T found) {
+      if (found != null) {
+         this._hits.incrementAndGet();
+      } else {
+         this._misses.incrementAndGet();
+      }
+      return found;
+   }
+
+   private Snapshot snapshot() throws SQLException {
+      Snapshot current = this._snapshot;
+      if (current != null && System.nanoTime() - current.loadedAt < this._ttlNanos) {
+         return current;
+      }
+      synchronized (this) {
+         current = this._snapshot;
+         if (current == null || System.nanoTime() - current.loadedAt >= this._ttlNanos) {
+            current = load();
+            this._snapshot = current;
+         }
+         return current;
+      }
+   }
+
+   private static String routeKey(String departureCity, String arrivalCity) {
+      return normalize(departureCity) + '\n' + normalize(arrivalCity);
+   }
+
+   private static String normalize(String city) {
+      return city != null ? city.trim().toLowerCase(Locale.ROOT) : "";
+   }
+
+   private Snapshot load() throws SQLException {
+      Snapshot snap = new Snapshot();
+      this._esql.executeQueryForEach(SqlStatement.ALL_PLANES, rs -> {
+         Plane plane = new Plane(rs.getString(1), rs.getString(2), rs.getString(3), Rows.getInt(rs, 4, 0), rs.getString(5));
+         snap.planes.put(plane.planeID, plane);
+      });
+      for (List<String> row : this._esql.executeQueryAndReturnResult(SqlStatement.ALL_FLIGHTS)) {
+         snap.flights.put(row.get(0), new Flight(row.get(0), row.get(1), row.get(2), row.get(3)));
+      }
+      for (Flight flight : snap.flights.values()) {
+         String key = routeKey(flight.departureCity, flight.arrivalCity);
+         List<Flight> route = snap.routes.get(key);
+         if (route == null) {
+            route = new ArrayList<Flight>();
+            snap.routes.put(key, route);
+         }
+         route.add(flight);
+      }
+      for (List<Flight> route : snap.routes.values()) {
+         route.sort((a, b) -> a.flightNumber.compareTo(b.flightNumber));
+      }
+      // rows come Monday first (Schedule.DayNumber)
+      for (List<String> row : this._esql.executeQueryAndReturnResult(SqlStatement.ALL_SCHEDULES)) {
+         List<Departure> departures = snap.schedules.get(row.get(0));
+         if (departures == null) {
+            departures = new ArrayList<Departure>();
+            snap.schedules.put(row.get(0), departures);
+         }
+         departures.add(new Departure(row.get(0), row.get(1), row.get(2), row.get(3)));
+      }
+      for (List<String> row : this._esql.executeQueryAndReturnResult(SqlStatement.ALL_PILOTS)) {
+         snap.pilots.add(row.get(0));
+      }
+      for (List<String> row : this._esql.executeQueryAndReturnResult(SqlStatement.ALL_TECHNICIANS)) {
+         snap.technicians.add(row.get(0));
+      }
+      this._reloads.incrementAndGet();
+      return snap;
+   }
+}//end ReferenceCache
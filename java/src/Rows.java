@@ -0,0 +1,74 @@
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+
+/**
+ * Typed column getters for RowMapper and RowHandler.  Each reads the
+ * column as its own type and tells SQL NULL apart without a string per
+ * cell: the primitive getters return the given default for NULL, the
+ * others return null.
+ */
+public final class Rows {
+
+   private Rows() {
+   }
+
+   /**
+    * @return the column as an int, or orElse when it is NULL
+    */
+   public static int getInt(ResultSet rs, int column, int orElse) throws SQLException {
+      int value = rs.getInt(column);
+      return rs.wasNull() ? orElse : value;
+   }
+
+   /**
+    * @return the column as a long, or orElse when it is NULL
+    */
+   public static long getLong(ResultSet rs, int column, long orElse) throws SQLException {
+      long value = rs.getLong(column);
+      return rs.wasNull() ? orElse : value;
+   }
+
+   /**
+    * @return the column as an Integer, null when it is NULL
+    */
+   public static Integer getInteger(ResultSet rs, int column) throws SQLException {
+      int value = rs.getInt(column);
+      return rs.wasNull() ? null : value;
+   }
+
+   /**
+    * @return the column as a Boolean, null when it is NULL
+    */
+   public static Boolean getBoolean(ResultSet rs, int column) throws SQLException {
+      boolean value = rs.getBoolean(column);
+      return rs.wasNull() ? null : value;
+   }
+
+   /**
+    * @return the column as a BigDecimal, null when it is NULL
+    */
+   public static BigDecimal getDecimal(ResultSet rs, int column) throws SQLException {
+      return rs.getBigDecimal(column);
+   }
+
+   /**
+    * @return a DATE (or 'YYYY-MM-DD' text) column as a LocalDate, null when
+    *         it is NULL
+    */
+   public static LocalDate getDate(ResultSet rs, int column) throws SQLException {
+      Date value = rs.getDate(column);
+      return value != null ? value.toLocalDate() : null;
+   }
+
+   /**
+    * @return a DATE (or 'YYYY-MM-DD' text) column as an epoch day, or
+    *         orElse when it is NULL
+    */
+   public static long getEpochDay(ResultSet rs, int column, long orElse) throws SQLException {
+      Date value = rs.getDate(column);
+      return value != null ? value.toLocalDate().toEpochDay() : orElse;
+   }
+}//end Rows
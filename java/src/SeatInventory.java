@@ -0,0 +1,425 @@
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * The seats sold on every flight instance, counted in memory for feature2.
+ *
+ * The counters are a copy, never the authority: several processes (more
+ * consoles, BatchRunner, the benchmarks) book the same flights, so seats
+ * are given out by the database, by book_seats and the waitlist promotion
+ * under a per-instance lock.  After a commit the seats it changed are
+ * added here through sold(), and every RECONCILE_MS the counters are read
+ * again to pick up the other processes.
+ *
+ * A change of this process must be counted exactly once whichever read
+ * happens around it.  Every read records its database snapshot, and every
+ * change the transaction that made it: a change is added to the counters
+ * only when their snapshot did not see its transaction, and it is kept
+ * until a read that did see it replaces them.
+ *
+ * The count is persisted write-behind.  A booking commits one SeatDelta
+ * row (+n seats) with its reservations; inserts into SeatDelta never wait
+ * on each other.  Every FLUSH_MS a single statement moves the deltas into
+ * FlightInstance.SeatsSold and deletes them.  SeatsSold plus the deltas
+ * not yet moved is always the committed count, which is what the counters
+ * are read from, even after a crash.
+ *
+ * The counters are kept in arrays indexed by load position; instances
+ * created after the last read are read from the database when asked for.
+ */
+public class SeatInventory {
+
+   // how often the committed deltas are moved into FlightInstance
+   private static final long FLUSH_MS = Long.getLong("airline.seats.flushMs", 1000L);
+
+   // how often the counters are read again from the database
+   private static final long RECONCILE_MS = Long.getLong("airline.seats.reconcileMs", 5000L);
+
+   // the day of an instance without FlightDate
+   private static final long NO_DAY = Long.MIN_VALUE;
+
+   /**
+    * The seats of one flight instance at one moment.
+    */
+   public static class Seats {
+      public final int flightInstanceID;
+      public final int total;
+      public final int sold;
+
+      Seats(int flightInstanceID, int total, int sold) {
+         this.flightInstanceID = flightInstanceID;
+         this.total = total;
+         this.sold = sold;
+      }
+
+      public int available() {
+         return Math.max(0, this.total - this.sold);
+      }
+   }//end Seats
+
+   // txid_current_snapshot(): the transactions a read saw
+   private static final class Snapshot {
+      final long xmin;
+      final long xmax;
+      // running when the read started, sorted
+      final long[] running;
+
+      Snapshot(long xmin, long xmax, long[] running) {
+         this.xmin = xmin;
+         this.xmax = xmax;
+         this.running = running;
+      }
+
+      // 'xmin:xmax:running,running,...'
+      static Snapshot parse(String text) {
+         String[] parts = text.split(":", -1);
+         long[] running = new long[0];
+         if (parts.length > 2 && !parts[2].isEmpty()) {
+            String[] ids = parts[2].split(",");
+            running = new long[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+               running[i] = Long.parseLong(ids[i]);
+            }
+            Arrays.sort(running);
+         }
+         return new Snapshot(Long.parseLong(parts[0]), Long.parseLong(parts[1]), running);
+      }
+
+      // whether the read saw what the committed transaction wrote
+      boolean sees(long txid) {
+         return txid < this.xmin || (txid < this.xmax && Arrays.binarySearch(this.running, txid) < 0);
+      }
+   }//end Snapshot
+
+   // a committed change of this process
+   private static final class Change {
+      final int flightInstanceID;
+      final int seats;
+      final long txid;
+
+      Change(int flightInstanceID, int seats, long txid) {
+         this.flightInstanceID = flightInstanceID;
+         this.seats = seats;
+         this.txid = txid;
+      }
+   }//end Change
+
+   // the days one flight flies and the load positions of those instances
+   private static final class Days {
+      final long[] days;
+      final int[] positions;
+
+      Days(long[] days, int[] positions) {
+         this.days = days;
+         this.positions = positions;
+      }
+   }//end Days
+
+   // the instances as of one read
+   private static final class Counters {
+      final Snapshot snapshot;
+      final int[] ids;
+      final int[] totals;
+      final AtomicIntegerArray sold;
+      // (id << 32 | position), sorted, to find an instance by id
+      final long[] byId;
+      final Map<String, Days> flights;
+
+      Counters(Snapshot snapshot, int[] ids, int[] totals, int[] sold, Map<String, Days> flights) {
+         this.snapshot = snapshot;
+         this.ids = ids;
+         this.totals = totals;
+         this.sold = new AtomicIntegerArray(sold);
+         this.flights = flights;
+         this.byId = new long[ids.length];
+         for (int i = 0; i < ids.length; i++) {
+            this.byId[i] = ((long) ids[i] << 32) | i;
+         }
+         Arrays.sort(this.byId);
+      }
+
+      int position(int id) {
+         int lo = 0;
+         int hi = this.byId.length - 1;
+         while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int found = (int) (this.byId[mid] >> 32);
+            if (found < id) {
+               lo = mid + 1;
+            } else if (found > id) {
+               hi = mid - 1;
+            } else {
+               return (int) this.byId[mid];
+            }
+         }
+         return -1;
+      }
+   }//end Counters
+
+   private final AirlineManagement _esql;
+   // replaced, and changed, under this
+   private volatile Counters _counters = null;
+   // changes not seen by every read since; guarded by this
+   private final List<Change> _pending = new ArrayList<Change>();
+   // instances created after the last read, known to exist
+   private final Set<Integer> _late = ConcurrentHashMap.newKeySet();
+   private ScheduledExecutorService _flusher = null;
+
+   public SeatInventory(AirlineManagement esql) {
+      this._esql = esql;
+   }
+
+   /**
+    * @return whether the flight instance exists
+    * @throws java.sql.SQLException when the counters have to be loaded or
+    *         reading FlightInstance fails
+    */
+   public boolean exists(int flightInstanceID) throws SQLException {
+      if (counters().position(flightInstanceID) >= 0 || this._late.contains(flightInstanceID)) {
+         return true;
+      }
+      if (this._esql.executeQueryAndMap(SqlStatement.SEAT_COUNT_BY_ID, SeatInventory::seatsOf, flightInstanceID).isEmpty()) {
+         return false;
+      }
+      this._late.add(flightInstanceID);
+      return true;
+   }
+
+   /**
+    * Records seats sold (positive) or given back (negative) on an instance
+    * by a committed transaction.  Instances created after the last read
+    * are left to the next one.
+    *
+    * @param txid the transaction that made the change (txid_current())
+    */
+   public synchronized void sold(int flightInstanceID, int seats, long txid) {
+      Counters counters = this._counters;
+      if (counters == null || counters.snapshot.sees(txid)) {
+         return;
+      }
+      int p = counters.position(flightInstanceID);
+      if (p >= 0) {
+         counters.sold.addAndGet(p, seats);
+         this._pending.add(new Change(flightInstanceID, seats, txid));
+      }
+   }
+
+   /**
+    * @return the seats of every instance of the flight on that date; empty
+    *         when it does not fly that day
+    * @throws java.sql.SQLException when reading FlightInstance fails
+    */
+   public List<Seats> seats(String flightNumber, LocalDate date) throws SQLException {
+      Counters counters = counters();
+      List<Seats> seats = new ArrayList<Seats>();
+      Days days = counters.flights.get(flightNumber);
+      if (days != null) {
+         long day = date.toEpochDay();
+         for (int i = lowerBound(days.days, day); i < days.days.length && days.days[i] == day; i++) {
+            int p = days.positions[i];
+            seats.add(new Seats(counters.ids[p], counters.totals[p], counters.sold.get(p)));
+         }
+         if (!seats.isEmpty()) {
+            return seats;
+         }
+      }
+      // instances created after the last read: as committed now
+      return this._esql.executeQueryAndMap(SqlStatement.SEAT_COUNT_BY_FLIGHT_DATE, SeatInventory::seatsOf,
+                                           flightNumber, date.toString());
+   }
+
+   private static int lowerBound(long[] days, long day) {
+      int lo = 0;
+      int hi = days.length;
+      while (lo < hi) {
+         int mid = (lo + hi) >>> 1;
+         if (days[mid] < day) {
+            lo = mid + 1;
+         } else {
+            hi = mid;
+         }
+      }
+      return lo;
+   }
+
+   /**
+    * Moves the committed deltas into FlightInstance.SeatsSold now.
+    */
+   public void flush() throws SQLException {
+      this._esql.executeUpdate(SqlStatement.SEAT_DELTA_APPLY);
+   }
+
+   /**
+    * Reads the counters again from the committed counts in the database,
+    * adding the changes of this process the read did not see.
+    *
+    * @throws java.sql.SQLException when reading FlightInstance fails
+    */
+   public void reconcile() throws SQLException {
+      if (this._counters == null) {
+         counters();
+         return;
+      }
+      Counters fresh = load();
+      synchronized (this) {
+         this._pending.removeIf(c -> fresh.snapshot.sees(c.txid));
+         for (Change c : this._pending) {
+            int p = fresh.position(c.flightInstanceID);
+            if (p >= 0) {
+               fresh.sold.addAndGet(p, c.seats);
+            }
+         }
+         this._counters = fresh;
+      }
+      this._late.clear();
+   }
+
+   /**
+    * Stops the periodic flush after a last one.
+    */
+   public void close() {
+      ScheduledExecutorService flusher;
+      synchronized (this) {
+         flusher = this._flusher;
+         this._flusher = null;
+      }
+      if (flusher == null) {
+         return;
+      }
+      flusher.shutdownNow();
+      try {
+         flush();
+      } catch (SQLException e) {
+         // the deltas stay in SeatDelta and are applied by the next run.
+      }
+   }
+
+   private Counters counters() throws SQLException {
+      Counters current = this._counters;
+      if (current != null) {
+         return current;
+      }
+      synchronized (this) {
+         if (this._counters == null) {
+            this._counters = load();
+            this._flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+               Thread t = new Thread(r, "seat-inventory");
+               t.setDaemon(true);
+               return t;
+            });
+            this._flusher.scheduleWithFixedDelay(() -> {
+               try {
+                  flush();
+               } catch (SQLException e) {
+                  // retried on the next round; nothing is lost meanwhile.
+               }
+            }, FLUSH_MS, FLUSH_MS, TimeUnit.MILLISECONDS);
+            this._flusher.scheduleWithFixedDelay(() -> {
+               try {
+                  reconcile();
+               } catch (SQLException e) {
+                  // tried again on the next round; the old counters stay.
+               }
+            }, RECONCILE_MS, RECONCILE_MS, TimeUnit.MILLISECONDS);
+         }
+         return this._counters;
+      }
+   }
+
+   private Counters load() throws SQLException {
+      Loader loader = new Loader();
+      this._esql.executeQueryForEach(SqlStatement.SEAT_COUNTS, loader);
+      return loader.counters();
+   }
+
+   static Seats seatsOf(ResultSet rs) throws SQLException {
+      return new Seats(rs.getInt(1), Rows.getInt(rs, 4, 0), Rows.getInt(rs, 5, 0));
+   }
+
+   // reads SEAT_COUNTS, which comes ordered by flight and day, into arrays
+   private static final class Loader implements AirlineManagement.RowHandler {
+      int n = 0;
+      int[] ids = new int[1024];
+      int[] totals = new int[1024];
+      int[] sold = new int[1024];
+      long[] days = new long[1024];
+      final Map<String, Days> flights = new HashMap<String, Days>();
+      String flight = null;
+      int first = 0;
+      // of the read; one that returned no rows saw nothing this process did
+      Snapshot snapshot = null;
+
+      public void row(ResultSet rs) throws SQLException {
+         if (this.snapshot == null) {
+            this.snapshot = Snapshot.parse(rs.getString(6));
+         }
+         String flightNumber = rs.getString(2);
+         if (this.n > 0 && !same(flightNumber, this.flight)) {
+            index();
+            this.first = this.n;
+         }
+         this.flight = flightNumber;
+         if (this.n == this.ids.length) {
+            int size = this.n * 2;
+            this.ids = Arrays.copyOf(this.ids, size);
+            this.totals = Arrays.copyOf(this.totals, size);
+            this.sold = Arrays.copyOf(this.sold, size);
+            this.days = Arrays.copyOf(this.days, size);
+         }
+         this.ids[this.n] = rs.getInt(1);
+         this.days[this.n] = Rows.getEpochDay(rs, 3, NO_DAY);
+         this.totals[this.n] = Rows.getInt(rs, 4, 0);
+         this.sold[this.n] = Rows.getInt(rs, 5, 0);
+         this.n++;
+      }
+
+      // indexes the dated instances of the flight just read
+      void index() {
+         int dated = 0;
+         for (int i = this.first; i < this.n; i++) {
+            if (this.days[i] != NO_DAY) {
+               dated++;
+            }
+         }
+         if (this.flight == null || dated == 0) {
+            return;
+         }
+         long[] days = new long[dated];
+         int[] positions = new int[dated];
+         int d = 0;
+         for (int i = this.first; i < this.n; i++) {
+            if (this.days[i] != NO_DAY) {
+               days[d] = this.days[i];
+               positions[d] = i;
+               d++;
+            }
+         }
+         this.flights.put(this.flight, new Days(days, positions));
+      }
+
+      Counters counters() {
+         if (this.n > 0) {
+            index();
+         }
+         Snapshot seen = this.snapshot != null ? this.snapshot : new Snapshot(0L, 0L, new long[0]);
+         return new Counters(seen, Arrays.copyOf(this.ids, this.n), Arrays.copyOf(this.totals, this.n),
+                             Arrays.copyOf(this.sold, this.n), this.flights);
+      }
+   }//end Loader
+
+   private static boolean same(String a, String b) {
+      return a == null ? b == null : a.equals(b);
+   }
+}//end SeatInventory
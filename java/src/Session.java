@@ -0,0 +1,313 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The input and output of one user of the menu.  The console is one
+ * session; in server mode every connected terminal gets its own.
+ *
+ * The feature methods read from AirlineManagement.in and print to
+ * System.out/System.err.  After install() those three are routed to the
+ * session bound to the calling thread, so the same feature code can serve
+ * many terminals at once.  The installed streams keep no lock of their
+ * own: every call goes straight to the session's stream, so a client that
+ * reads slowly only holds up its own session.
+ */
+public class Session {
+
+   /**
+    * Thrown by readChoice when the session's input has ended, so the menu
+    * loop can finish instead of prompting forever.
+    */
+   public static class EndOfInput extends RuntimeException {
+      private static final long serialVersionUID = 1L;
+
+      public EndOfInput() {
+         super("End of input");
+      }
+   }//end EndOfInput
+
+   // the terminal the program was started from
+   private static final Session CONSOLE = new Session(
+      new BufferedReader(new InputStreamReader(System.in)), System.out, System.err);
+
+   private static final ThreadLocal<Session> CURRENT = new ThreadLocal<Session>();
+
+   private final BufferedReader _in;
+   private final PrintStream _out;
+   private final PrintStream _err;
+   private final List<List<List<String>>> _tables;
+
+   public Session(BufferedReader in, PrintStream out, PrintStream err) {
+      this(in, out, err, null);
+   }
+
+   /**
+    * @param tables when not null, result tables are added here as header
+    *        and rows instead of being drawn on out
+    */
+   public Session(BufferedReader in, PrintStream out, PrintStream err, List<List<List<String>>> tables) {
+      this._in = in;
+      this._out = out;
+      this._err = err;
+      this._tables = tables;
+   }
+
+   /**
+    * @return the session bound to the calling thread, or the console
+    */
+   public static Session current() {
+      Session session = CURRENT.get();
+      return session != null ? session : CONSOLE;
+   }
+
+   /**
+    * @return the terminal the program was started from
+    */
+   public static Session console() {
+      return CONSOLE;
+   }
+
+   /**
+    * Binds a session to the calling thread until unbind() is called.
+    */
+   public static void bind(Session session) {
+      CURRENT.set(session);
+   }
+
+   public static void unbind() {
+      CURRENT.remove();
+   }
+
+   public BufferedReader in() {
+      return this._in;
+   }
+
+   public PrintStream out() {
+      return this._out;
+   }
+
+   public PrintStream err() {
+      return this._err;
+   }
+
+   /**
+    * @return where result tables are collected, or null when they are
+    *         printed
+    */
+   public List<List<List<String>>> tables() {
+      return this._tables;
+   }
+
+   /**
+    * Routes System.out and System.err to the session of the calling thread.
+    */
+   public static void install() {
+      System.setOut(new Dispatch(false));
+      System.setErr(new Dispatch(true));
+   }
+
+   /**
+    * @return a reader whose lines come from the session of the calling thread
+    */
+   public static BufferedReader input() {
+      return new Input();
+   }
+
+   /*
+    * Print stream that forwards every call to the current session's
+    * stream.  PrintStream locks itself on each print; overriding them all
+    * leaves that to the session's own stream, so sessions never wait on
+    * each other.
+    */
+   private static final class Dispatch extends PrintStream {
+      private final boolean _toErr;
+
+      Dispatch(boolean toErr) {
+         super(OutputStream.nullOutputStream(), false);
+         this._toErr = toErr;
+      }
+
+      private PrintStream target() {
+         Session session = current();
+         return this._toErr ? session._err : session._out;
+      }
+
+      public void write(int b) {
+         target().write(b);
+      }
+
+      public void write(byte[] b, int off, int len) {
+         target().write(b, off, len);
+      }
+
+      public void write(byte[] b) throws IOException {
+         target().write(b);
+      }
+
+      public void flush() {
+         target().flush();
+      }
+
+      public void close() {
+         target().close();
+      }
+
+      public boolean checkError() {
+         return target().checkError();
+      }
+
+      public void print(boolean b) {
+         target().print(b);
+      }
+
+      public void print(char c) {
+         target().print(c);
+      }
+
+      public void print(int i) {
+         target().print(i);
+      }
+
+      public void print(long l) {
+         target().print(l);
+      }
+
+      public void print(float f) {
+         target().print(f);
+      }
+
+      public void print(double d) {
+         target().print(d);
+      }
+
+      public void print(char[] s) {
+         target().print(s);
+      }
+
+      public void print(String s) {
+         target().print(s);
+      }
+
+      public void print(Object obj) {
+         target().print(obj);
+      }
+
+      public void println() {
+         target().println();
+      }
+
+      public void println(boolean x) {
+         target().println(x);
+      }
+
+      public void println(char x) {
+         target().println(x);
+      }
+
+      public void println(int x) {
+         target().println(x);
+      }
+
+      public void println(long x) {
+         target().println(x);
+      }
+
+      public void println(float x) {
+         target().println(x);
+      }
+
+      public void println(double x) {
+         target().println(x);
+      }
+
+      public void println(char[] x) {
+         target().println(x);
+      }
+
+      public void println(String x) {
+         target().println(x);
+      }
+
+      public void println(Object x) {
+         target().println(x);
+      }
+
+      public PrintStream printf(String format, Object... args) {
+         target().printf(format, args);
+         return this;
+      }
+
+      public PrintStream printf(Locale l, String format, Object... args) {
+         target().printf(l, format, args);
+         return this;
+      }
+
+      public PrintStream format(String format, Object... args) {
+         target().format(format, args);
+         return this;
+      }
+
+      public PrintStream format(Locale l, String format, Object... args) {
+         target().format(l, format, args);
+         return this;
+      }
+
+      public PrintStream append(CharSequence csq) {
+         target().append(csq);
+         return this;
+      }
+
+      public PrintStream append(CharSequence csq, int start, int end) {
+         target().append(csq, start, end);
+         return this;
+      }
+
+      public PrintStream append(char c) {
+         target().append(c);
+         return this;
+      }
+   }//end Dispatch
+
+   /*
+    * Reader that forwards to the current session.  Pending output is
+    * flushed first so the user sees the prompt before input is awaited.
+    */
+   private static final class Input extends BufferedReader {
+      Input() {
+         super(new StringReader(""));
+      }
+
+      private BufferedReader target() {
+         Session session = current();
+         System.out.flush();
+         session._out.flush();
+         return session._in;
+      }
+
+      public String readLine() throws IOException {
+         return target().readLine();
+      }
+
+      public int read() throws IOException {
+         return target().read();
+      }
+
+      public int read(char[] cbuf, int off, int len) throws IOException {
+         return target().read(cbuf, off, len);
+      }
+
+      public boolean ready() throws IOException {
+         return current()._in.ready();
+      }
+
+      public void close() throws IOException {
+         current()._in.close();
+      }
+   }//end Input
+}//end Session
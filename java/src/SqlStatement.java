@@ -0,0 +1,292 @@
+import java.util.List;
+
+/**
+ * Registry of every SQL shape issued by the menu features.  Each constant
+ * is one operation; user input is never concatenated into the text, it is
+ * bound to the '?' placeholders when the statement is executed.
+ *
+ * Dates are passed as strings and cast on the server so that both the
+ * MM/DD/YY and the YYYY-MM-DD inputs keep working exactly as before.
+ */
+public enum SqlStatement {
+
+   // key generation, see IdAllocator
+   SEQUENCE_NEXT_VALUE(
+      "SELECT nextval(CAST(? AS regclass))"),
+   SEQUENCE_CURRENT_VALUE(
+      "SELECT currval(CAST(? AS regclass))"),
+
+   // bulk loading, see BulkLoader
+   BULK_LOAD_PROGRESS(
+      "SELECT RowsLoaded, Finished FROM BulkLoadProgress " +
+      "WHERE TableName = ? AND FileName = ? AND FileSize = ?"),
+   BULK_LOAD_START(
+      "INSERT INTO BulkLoadProgress (TableName, FileName, FileSize, RowsLoaded, Finished) " +
+      "VALUES (?, ?, ?, 0, FALSE)"),
+   BULK_LOAD_ADVANCE(
+      "UPDATE BulkLoadProgress SET RowsLoaded = ?, Finished = ? " +
+      "WHERE TableName = ? AND FileName = ? AND FileSize = ?"),
+   CUSTOMER_ID_SYNC(
+      "SELECT setval('customer_id_seq', COALESCE((SELECT MAX(CustomerID) FROM Customer), 0) + 1, false)"),
+   RESERVATION_ID_SYNC(
+      "SELECT setval('reservation_id_seq', COALESCE((SELECT MAX(CAST(SUBSTRING(ReservationID FROM 2) AS INTEGER)) FROM Reservation), 0) + 1, false)"),
+   REPAIR_ID_SYNC(
+      "SELECT setval('repair_id_seq', COALESCE((SELECT MAX(RepairID) FROM Repair), 0) + 1, false)"),
+   REQUEST_ID_SYNC(
+      "SELECT setval('request_id_seq', COALESCE((SELECT MAX(RequestID) FROM MaintenanceRequest), 0) + 1, false)"),
+
+   // users
+   USER_BY_NAME(
+      "SELECT * FROM Users WHERE username = ?"),
+   USER_INSERT(
+      "INSERT INTO Users (username, password, role) VALUES (?, ?, ?)"),
+   USER_LOGIN(
+      "SELECT role FROM Users WHERE username = ? AND password = ?"),
+
+   // reference tables, see ReferenceCache (feature1, 7, 13, 17, 18)
+   ALL_PLANES(
+      "SELECT PlaneID, Make, Model, Year, LastRepairDate FROM Plane"),
+   ALL_FLIGHTS(
+      "SELECT FlightNumber, PlaneID, DepartureCity, ArrivalCity FROM Flight"),
+   ALL_SCHEDULES(
+      "SELECT FlightNumber, DayOfWeek, DepartureTime, ArrivalTime FROM Schedule ORDER BY DayNumber, ScheduleID"),
+   ALL_PILOTS(
+      "SELECT PilotID FROM Pilot"),
+   ALL_TECHNICIANS(
+      "SELECT TechnicianID FROM Technician"),
+
+   // the maintenance history of every plane, see MaintenanceTimeline
+   ALL_REPAIRS(
+      "SELECT RepairID, PlaneID, RepairCode, RepairDate, TechnicianID FROM Repair " +
+      "WHERE PlaneID IS NOT NULL AND RepairDate IS NOT NULL"),
+   ALL_REQUESTS(
+      "SELECT RequestID, PlaneID, RepairCode, RequestDate, PilotID FROM MaintenanceRequest " +
+      "WHERE PlaneID IS NOT NULL AND RequestDate IS NOT NULL"),
+
+   // feature3 reads FlightColumns; the query is kept for FeatureBenchmark
+   FLIGHT_STATUS(
+      "SELECT FlightNumber AS flight_number, FlightDate AS flight_date, " +
+      "CASE " +
+         "WHEN DepartedOnTime THEN 'Yes' " +
+         "WHEN NOT DepartedOnTime THEN 'No' " +
+         "ELSE 'Unknown' " +
+      "END AS DepartedOnTime, " +
+      "CASE " +
+         "WHEN ArrivedOnTime THEN 'Yes' " +
+         "WHEN NOT ArrivedOnTime THEN 'No' " +
+         "ELSE 'Unknown' " +
+      "END AS ArrivedOnTime " +
+      "FROM FlightInstance " +
+      "WHERE FlightNumber = ? " +
+      "AND FlightDate = CAST(? AS DATE)"),
+
+   // feature4, see DeparturesBoard
+   FLIGHTS_OF_DAY(
+      "SELECT fi.FlightNumber AS flight_number, f.DepartureCity AS departure_city, f.ArrivalCity AS arrival_city, s.DepartureTime AS departure_time, s.ArrivalTime AS arrival_time " +
+      "FROM FlightInstance fi JOIN Schedule s ON fi.FlightNumber = s.FlightNumber AND fi.FlightDay = s.DayNumber " +
+      "JOIN Flight f ON fi.FlightNumber = f.FlightNumber " +
+      "WHERE fi.FlightDate = CAST(? AS DATE) " +
+      "ORDER BY s.DepartureTime, fi.FlightNumber"),
+
+   // feature5: one page of passengers, see PassengerManifest; a NULL
+   // Status sorts as '' so its rows are paged like any other
+   MANIFEST_PAGE(
+      "SELECT r.ReservationID AS reservation_id, c.FirstName AS first_name, c.LastName AS last_name, r.Status AS status " +
+      "FROM Reservation r JOIN Customer c ON c.CustomerID = r.CustomerID " +
+      "WHERE r.FlightInstanceID = ? " +
+      "AND (COALESCE(r.Status, ''), r.ReservationID) > (?, ?) " +
+      "ORDER BY COALESCE(r.Status, ''), r.ReservationID " +
+      "LIMIT ?"),
+   MANIFEST_PAGE_BY_STATUS(
+      "SELECT r.ReservationID AS reservation_id, c.FirstName AS first_name, c.LastName AS last_name, r.Status AS status " +
+      "FROM Reservation r JOIN Customer c ON c.CustomerID = r.CustomerID " +
+      "WHERE r.FlightInstanceID = ? " +
+      "AND COALESCE(r.Status, '') = ? " +
+      "AND r.ReservationID > ? " +
+      "ORDER BY r.ReservationID " +
+      "LIMIT ?"),
+   // every passenger in one result (FeatureBenchmark compares it with the pages)
+   FLIGHT_PASSENGERS(
+      "SELECT FirstName AS first_name, LastName AS last_name, Status " +
+      "FROM Customer c JOIN Reservation r on c.CustomerID = r.CustomerID " +
+      "JOIN FlightInstance fi ON fi.FlightInstanceID = r.FlightInstanceID " +
+      "WHERE fi.FlightNumber = ? " +
+      "AND fi.FlightDate = CAST(? AS DATE)"),
+
+   // feature6
+   TRAVELER_BY_RESERVATION(
+      "SELECT FirstName AS first_name, LastName AS last_name, Gender, DOB, Address, Phone, Zip " +
+      "FROM Customer c JOIN Reservation r on c.CustomerID = r.CustomerID " +
+      "WHERE r.ReservationID = ?"),
+
+   // feature8
+   REPAIRS_BY_TECHNICIAN(
+      "SELECT PlaneID, RepairCode AS repair_code, RepairDate AS repair_date " +
+      "FROM Repair r join Technician t ON r.TechnicianID = t.TechnicianID " +
+      "WHERE t.technicianID = ?"),
+
+   // FlightInstance for the columnar reports, see FlightColumns (feature3,
+   // feature10, feature11); seats sold include the SeatDelta rows not yet
+   // moved into SeatsSold
+   FLIGHT_COLUMNS(
+      "SELECT fi.FlightInstanceID, fi.FlightNumber, TO_CHAR(fi.FlightDate, 'YYYY-MM-DD'), fi.SeatsTotal, " +
+      "COALESCE(fi.SeatsSold, 0) + COALESCE(d.Seats, 0), fi.NumOfStops, fi.DepartedOnTime, fi.ArrivedOnTime " +
+      "FROM FlightInstance fi " +
+      "LEFT JOIN (SELECT FlightInstanceID, SUM(Seats) AS Seats FROM SeatDelta GROUP BY FlightInstanceID) d " +
+      "ON d.FlightInstanceID = fi.FlightInstanceID " +
+      "WHERE fi.FlightNumber IS NOT NULL " +
+      "ORDER BY fi.FlightNumber, fi.FlightDate, fi.FlightInstanceID"),
+   // the rows written by transactions from the given one on
+   FLIGHT_COLUMNS_CHANGED(
+      "SELECT fi.FlightInstanceID, fi.FlightNumber, TO_CHAR(fi.FlightDate, 'YYYY-MM-DD'), fi.SeatsTotal, " +
+      "COALESCE(fi.SeatsSold, 0) + COALESCE((SELECT SUM(d.Seats) FROM SeatDelta d WHERE d.FlightInstanceID = fi.FlightInstanceID), 0), " +
+      "fi.NumOfStops, fi.DepartedOnTime, fi.ArrivedOnTime " +
+      "FROM FlightInstance fi " +
+      "WHERE fi.FlightNumber IS NOT NULL AND fi.ChangeTxid >= ?"),
+   // every transaction before this one has finished
+   CURRENT_XMIN(
+      "SELECT txid_snapshot_xmin(txid_current_snapshot())"),
+   // committed seat counts and their write-behind, see SeatInventory (feature2, feature14)
+   SEAT_COUNTS(
+      "SELECT fi.FlightInstanceID, fi.FlightNumber, TO_CHAR(fi.FlightDate, 'YYYY-MM-DD'), fi.SeatsTotal, " +
+      "COALESCE(fi.SeatsSold, 0) + COALESCE(d.Seats, 0), txid_current_snapshot() " +
+      "FROM FlightInstance fi " +
+      "LEFT JOIN (SELECT FlightInstanceID, SUM(Seats) AS Seats FROM SeatDelta GROUP BY FlightInstanceID) d " +
+      "ON d.FlightInstanceID = fi.FlightInstanceID " +
+      "ORDER BY fi.FlightNumber, fi.FlightDate"),
+   SEAT_COUNT_BY_ID(
+      "SELECT fi.FlightInstanceID, fi.FlightNumber, TO_CHAR(fi.FlightDate, 'YYYY-MM-DD'), fi.SeatsTotal, " +
+      "COALESCE(fi.SeatsSold, 0) + (SELECT COALESCE(SUM(d.Seats), 0) FROM SeatDelta d WHERE d.FlightInstanceID = fi.FlightInstanceID) " +
+      "FROM FlightInstance fi " +
+      "WHERE fi.FlightInstanceID = ?"),
+   SEAT_COUNT_BY_FLIGHT_DATE(
+      "SELECT fi.FlightInstanceID, fi.FlightNumber, TO_CHAR(fi.FlightDate, 'YYYY-MM-DD'), fi.SeatsTotal, " +
+      "COALESCE(fi.SeatsSold, 0) + (SELECT COALESCE(SUM(d.Seats), 0) FROM SeatDelta d WHERE d.FlightInstanceID = fi.FlightInstanceID) " +
+      "FROM FlightInstance fi " +
+      "WHERE fi.FlightNumber = ? AND fi.FlightDate = CAST(? AS DATE) " +
+      "ORDER BY fi.FlightInstanceID"),
+   // moves the deltas into SeatsSold and deletes them in one statement, so
+   // a delta committed meanwhile is neither lost nor applied twice
+   SEAT_DELTA_APPLY(
+      "WITH applied AS (DELETE FROM SeatDelta RETURNING FlightInstanceID, Seats) " +
+      "UPDATE FlightInstance fi SET SeatsSold = COALESCE(fi.SeatsSold, 0) + a.Seats " +
+      "FROM (SELECT FlightInstanceID, SUM(Seats) AS Seats FROM applied GROUP BY FlightInstanceID) a " +
+      "WHERE fi.FlightInstanceID = a.FlightInstanceID"),
+   // feature12
+   TICKET_COSTS(
+      "SELECT FlightInstanceID AS flight_instance, TicketCost AS ticket_costs_for_flight, FlightDate AS flight_date " +
+      "FROM FlightInstance " +
+      "WHERE FlightNumber = ? " +
+      "ORDER BY FlightInstanceID"),
+
+   // feature14: the customers, reservations and seat deltas of a group of
+   // bookings as one statement, see BookingEngine and book_seats in
+   // create_tables.sql; every placeholder is an array (see array()) with
+   // one element per row.  Returns the reservations that got a seat, each
+   // with the transaction that wrote them.
+   BOOKING_WRITE(
+      "SELECT b.ReservationID, txid_current() FROM book_seats(" +
+      "CAST(? AS INTEGER[]), CAST(? AS TEXT[]), CAST(? AS TEXT[]), CAST(? AS TEXT[]), " +
+      "CAST(? AS DATE[]), CAST(? AS TEXT[]), CAST(? AS TEXT[]), CAST(? AS TEXT[]), " +
+      "CAST(? AS TEXT[]), CAST(? AS INTEGER[]), CAST(? AS INTEGER[])) AS b(ReservationID)"),
+   // the lock book_seats takes on an instance before checking its seats
+   SEAT_LOCK(
+      "SELECT pg_advisory_xact_lock(?)"),
+   SEAT_DELTA_INSERT(
+      "INSERT INTO SeatDelta (FlightInstanceID, Seats) VALUES (?, ?)"),
+   // the transaction a change was committed by, see SeatInventory.sold
+   CURRENT_TXID(
+      "SELECT txid_current()"),
+
+   // feature19 and the waitlist, see BookingEngine.cancel and WaitlistPromoter
+   RESERVATION_FOR_UPDATE(
+      "SELECT FlightInstanceID, Status, txid_current() FROM Reservation WHERE ReservationID = ? FOR UPDATE"),
+   RESERVATION_CANCEL(
+      "UPDATE Reservation SET Status = 'cancelled' WHERE ReservationID = ?"),
+   RESERVATION_PROMOTE(
+      "UPDATE Reservation SET Status = 'reserved' WHERE ReservationID = ? AND Status = 'waitlist'"),
+   WAITLIST_ALL(
+      "SELECT FlightInstanceID, ReservationID FROM Reservation " +
+      "WHERE Status = 'waitlist' AND FlightInstanceID IS NOT NULL " +
+      "ORDER BY FlightInstanceID, LENGTH(ReservationID), ReservationID"),
+
+   // feature16
+   REQUESTS_BY_PILOT(
+      "SELECT p.Name AS pilot_name, mr.RequestID, mr.PlaneID, mr.RepairCode, mr.RequestDate " +
+      "FROM MaintenanceRequest mr " +
+      "JOIN Pilot p ON mr.PilotID = p.PilotID " +
+      "WHERE mr.PilotID = ? " +
+      "ORDER BY mr.RequestDate"),
+
+   // every request and repair, see MaintenanceMatcher; on the same day
+   // 'request' sorts before 'repair' (Kind DESC)
+   MAINTENANCE_EVENTS(
+      "SELECT PlaneID, RepairCode, EventDate, Kind, ID, Person FROM (" +
+      "SELECT PlaneID, RepairCode, RequestDate AS EventDate, 'request' AS Kind, RequestID AS ID, PilotID AS Person FROM MaintenanceRequest " +
+      "UNION ALL " +
+      "SELECT PlaneID, RepairCode, RepairDate, 'repair', RepairID, TechnicianID FROM Repair) e " +
+      "WHERE PlaneID IS NOT NULL AND RepairCode IS NOT NULL AND EventDate IS NOT NULL " +
+      "ORDER BY PlaneID, RepairCode, EventDate, Kind DESC, ID"),
+
+   // feature17 and feature18: a group of repairs and maintenance requests,
+   // and the LastRepairDate of the repaired planes, as one statement, see
+   // WriteBatcher; the date never moves back.  Every placeholder is an
+   // array with one element per row
+   MAINTENANCE_WRITE(
+      "WITH repairs AS (" +
+      "INSERT INTO Repair (RepairID, PlaneID, RepairCode, RepairDate, TechnicianID) " +
+      "SELECT * FROM UNNEST(CAST(? AS INTEGER[]), CAST(? AS TEXT[]), CAST(? AS TEXT[]), CAST(? AS DATE[]), CAST(? AS TEXT[])) " +
+      "RETURNING PlaneID, RepairDate), " +
+      "requests AS (" +
+      "INSERT INTO MaintenanceRequest (RequestID, PlaneID, RepairCode, RequestDate, PilotID) " +
+      "SELECT * FROM UNNEST(CAST(? AS INTEGER[]), CAST(? AS TEXT[]), CAST(? AS TEXT[]), CAST(? AS DATE[]), CAST(? AS TEXT[])) " +
+      "RETURNING 1), " +
+      "planes AS (" +
+      "UPDATE Plane p SET LastRepairDate = GREATEST(p.LastRepairDate, l.RepairDate) " +
+      "FROM (SELECT PlaneID, MAX(RepairDate) AS RepairDate FROM repairs GROUP BY PlaneID) l " +
+      "WHERE p.PlaneID = l.PlaneID " +
+      "RETURNING 1) " +
+      "SELECT (SELECT COUNT(*) FROM repairs), (SELECT COUNT(*) FROM requests), (SELECT COUNT(*) FROM planes)");
+
+   private final String sql;
+
+   SqlStatement(String sql) {
+      this.sql = sql;
+   }
+
+   /**
+    * @return the parameterized SQL text of this operation
+    */
+   public String sql() {
+      return this.sql;
+   }
+
+   /**
+    * @return the values as one array literal, to bind to a
+    *         CAST(? AS type[]) placeholder; null values become NULL
+    *         elements
+    */
+   public static String array(List<?> values) {
+      StringBuilder literal = new StringBuilder("{");
+      for (Object value : values) {
+         if (literal.length() > 1) {
+            literal.append(',');
+         }
+         if (value == null) {
+            literal.append("NULL");
+            continue;
+         }
+         literal.append('"');
+         String text = value.toString();
+         for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+               literal.append('\\');
+            }
+            literal.append(c);
+         }
+         literal.append('"');
+      }
+      return literal.append('}').toString();
+   }
+}//end SqlStatement
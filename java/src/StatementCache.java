@@ -0,0 +1,69 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.postgresql.PGStatement;
+
+/**
+ * Holds one PreparedStatement per SqlStatement for a single connection so
+ * that Postgres parses and plans each query shape once and every later
+ * call only binds new parameters.
+ *
+ * A PreparedStatement belongs to the connection that created it, so one
+ * cache is kept per physical connection.
+ */
+public class StatementCache {
+
+   // the connection every cached statement was prepared on
+   private final Connection _connection;
+
+   // prepared handles, created lazily on first use of each shape
+   private final Map<SqlStatement, PreparedStatement> _statements =
+      new EnumMap<SqlStatement, PreparedStatement>(SqlStatement.class);
+
+   public StatementCache(Connection connection) {
+      this._connection = connection;
+   }
+
+   /**
+    * Returns the prepared statement for the given shape with the parameters
+    * bound, preparing it on the server the first time it is requested.
+    *
+    * @param stmt the query shape
+    * @param params values for the '?' placeholders, in order
+    * @return a ready to execute statement; callers must not close it
+    * @throws java.sql.SQLException when the statement cannot be prepared
+    */
+   public PreparedStatement bind(SqlStatement stmt, Object... params) throws SQLException {
+      PreparedStatement ps = this._statements.get(stmt);
+      if (ps == null) {
+         ps = this._connection.prepareStatement(stmt.sql());
+         if (ps instanceof PGStatement) {
+            // PREPARE once on the backend and EXECUTE on every later call
+            ((PGStatement) ps).setUseServerPrepare(true);
+         }
+         this._statements.put(stmt, ps);
+      }
+      ps.clearParameters();
+      for (int i = 0; i < params.length; i++) {
+         ps.setObject(i + 1, params[i]);
+      }
+      return ps;
+   }
+
+   /**
+    * Closes every cached statement.  The connection itself is left open.
+    */
+   public void close() {
+      for (PreparedStatement ps : this._statements.values()) {
+         try {
+            ps.close();
+         } catch (SQLException e) {
+            // ignored.
+         }
+      }
+      this._statements.clear();
+   }
+}//end StatementCache
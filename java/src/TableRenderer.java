@@ -0,0 +1,163 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Draws query results as the boxed tables the menu prints, writing each
+ * row as soon as it is read instead of collecting the whole result first.
+ *
+ * Column widths are taken from the header and the first SAMPLE_ROWS rows.
+ * A later cell that is wider than its column is printed in full and only
+ * that line is pushed out of alignment.
+ */
+public class TableRenderer {
+
+   // rows buffered to size the columns before anything is printed
+   public static final int SAMPLE_ROWS = 256;
+
+   private final Writer _out;
+   private int[] _widths;
+
+   private TableRenderer(PrintStream out) {
+      this._out = new BufferedWriter(new OutputStreamWriter(out), 8192);
+   }
+
+   /**
+    * Prints every row of the result set as a table.  Nothing is printed
+    * when the result is empty.
+    *
+    * @param rs an open result set positioned before the first row
+    * @param out where the table is written
+    * @return the number of data rows printed
+    * @throws java.sql.SQLException when reading the result fails
+    */
+   public static int render(ResultSet rs, PrintStream out) throws SQLException {
+      ResultSetMetaData rsmd = rs.getMetaData ();
+      int numCol = rsmd.getColumnCount ();
+      String[] header = new String[numCol];
+      for (int i = 0; i < numCol; i++) {
+         header[i] = rsmd.getColumnLabel(i + 1);
+      }
+
+      // sample the head of the result to size the columns
+      List<String[]> sample = new ArrayList<String[]>();
+      boolean more = false;
+      while (rs.next()) {
+         sample.add(readRow(rs, numCol));
+         if (sample.size() == SAMPLE_ROWS) {
+            more = true;
+            break;
+         }
+      }
+      if (sample.isEmpty()) {
+         return 0;
+      }
+
+      TableRenderer table = new TableRenderer(out);
+      try {
+         table.begin(header, sample);
+         int rowCount = sample.size();
+         sample = null;
+         while (more && rs.next()) {
+            table.row(readRow(rs, numCol));
+            rowCount++;
+         }
+         table.end();
+         return rowCount;
+      } catch (IOException e) {
+         throw new SQLException("Unable to write the result table: " + e.getMessage());
+      }
+   }//end render
+
+   /**
+    * Prints an already materialized table whose first record holds the
+    * column labels.
+    *
+    * @param table the header record followed by the data records
+    * @param out where the table is written
+    */
+   public static void render(List<List<String>> table, PrintStream out) {
+      List<String[]> rows = new ArrayList<String[]>(table.size() - 1);
+      for (int r = 1; r < table.size(); r++) {
+         rows.add(table.get(r).toArray(new String[0]));
+      }
+      TableRenderer renderer = new TableRenderer(out);
+      try {
+         renderer.begin(table.get(0).toArray(new String[0]), rows);
+         renderer.end();
+      } catch (IOException e) {
+         // the PrintStream underneath records its own errors.
+      }
+   }//end render
+
+   private static String[] readRow(ResultSet rs, int numCol) throws SQLException {
+      String[] row = new String[numCol];
+      for (int i = 0; i < numCol; i++) {
+         row[i] = rs.getString(i + 1);
+      }
+      return row;
+   }
+
+   private void begin(String[] header, List<String[]> sample) throws IOException {
+      this._widths = new int[header.length];
+      measure(header);
+      for (String[] row : sample) {
+         measure(row);
+      }
+      separator();
+      row(header);
+      separator();
+      for (String[] row : sample) {
+         row(row);
+      }
+   }
+
+   private void end() throws IOException {
+      separator();
+      this._out.flush();
+   }
+
+   private void measure(String[] row) {
+      for (int i = 0; i < this._widths.length; i++) {
+         int len = cell(row[i]).length();
+         if (len > this._widths[i]) {
+            this._widths[i] = len;
+         }
+      }
+   }
+
+   private void separator() throws IOException {
+      for (int w : this._widths) {
+         this._out.write('+');
+         repeat('-', w + 2);
+      }
+      this._out.write("+\n");
+   }
+
+   private void row(String[] row) throws IOException {
+      for (int i = 0; i < this._widths.length; i++) {
+         String cell = cell(row[i]);
+         this._out.write("| ");
+         this._out.write(cell);
+         repeat(' ', this._widths[i] - cell.length() + 1);
+      }
+      this._out.write("|\n");
+   }
+
+   private void repeat(char c, int count) throws IOException {
+      for (int i = 0; i < count; i++) {
+         this._out.write(c);
+      }
+   }
+
+   private static String cell(String value) {
+      return value != null ? value : "null";
+   }
+}//end TableRenderer
@@ -0,0 +1,255 @@
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Moves waitlisted reservations to reserved when seats become free.
+ *
+ * The waitlist of every flight instance is kept in memory in booking
+ * order (reservation number), loaded from the Reservation rows with Status
+ * 'waitlist' and extended by BookingEngine as it waitlists.  Promotion
+ * only follows capacity appearing: a cancelled seat marks its instance
+ * through seatsFreed(), and a single background thread then promotes up
+ * to BATCH_ROWS reservations per transaction.  Bookings and cancellations
+ * therefore never wait for a promotion.
+ *
+ * Before promoting, the transaction takes the same per-instance lock as
+ * book_seats and counts the seats committed in the database, so seats sold
+ * by another process are never handed out twice.  The seats promoted are
+ * then added to SeatInventory.
+ *
+ * A reservation is promoted by an UPDATE that only matches while its
+ * Status is still 'waitlist', so it is promoted at most once whatever
+ * else runs at the same time, and the Status row itself records what was
+ * done, so a restart carries on from the table.  Nothing is promoted just
+ * because the program started.  Seats freed by other processes are only
+ * seen by the next seatsFreed() of the instance, unless a recovery sweep
+ * is asked for: with airline.waitlist.scanMs set, every SCAN_MS the
+ * waitlists are reloaded and all of them retried.
+ */
+public class WaitlistPromoter {
+
+   // reservations promoted per transaction
+   private static final int BATCH_ROWS = Integer.getInteger("airline.waitlist.batchRows", 100);
+
+   // how often the waitlists are reloaded from Reservation and retried;
+   // 0, the default, never sweeps them
+   private static final long SCAN_MS = Long.getLong("airline.waitlist.scanMs", 0L);
+
+   // the reservations a transaction looked at, how many it promoted, and
+   // the transaction
+   private static final class Promotion {
+      final List<String> candidates;
+      final int promoted;
+      final long txid;
+
+      Promotion(List<String> candidates, int promoted, long txid) {
+         this.candidates = candidates;
+         this.promoted = promoted;
+         this.txid = txid;
+      }
+   }//end Promotion
+
+   // R0999 before R1000: the numbers are compared, not the text
+   private static final Comparator<String> BOOKING_ORDER =
+      Comparator.comparingInt(String::length).thenComparing(Comparator.naturalOrder());
+
+   private final AirlineManagement _esql;
+   private volatile Map<Integer, TreeSet<String>> _queues = null;
+   private final Set<Integer> _marked = ConcurrentHashMap.newKeySet();
+   private final AtomicBoolean _draining = new AtomicBoolean(false);
+   private ScheduledExecutorService _worker = null;
+   private boolean _closed = false;
+
+   public WaitlistPromoter(AirlineManagement esql) {
+      this._esql = esql;
+   }
+
+   /**
+    * Adds a committed 'waitlist' reservation to its instance's queue.
+    */
+   public void waitlisted(int flightInstanceID, String reservationID) throws SQLException {
+      TreeSet<String> queue = queues().computeIfAbsent(flightInstanceID, k -> new TreeSet<String>(BOOKING_ORDER));
+      synchronized (queue) {
+         queue.add(reservationID);
+      }
+   }
+
+   /**
+    * Drops a reservation that left the waitlist other than by promotion.
+    */
+   public void removed(int flightInstanceID, String reservationID) throws SQLException {
+      TreeSet<String> queue = queues().get(flightInstanceID);
+      if (queue != null) {
+         synchronized (queue) {
+            queue.remove(reservationID);
+         }
+      }
+   }
+
+   /**
+    * Asks for the instance's waitlist to be promoted into any free seats.
+    * Returns at once.
+    */
+   public void seatsFreed(int flightInstanceID) {
+      this._marked.add(flightInstanceID);
+      ScheduledExecutorService worker = worker();
+      if (worker != null && this._draining.compareAndSet(false, true)) {
+         worker.execute(this::drain);
+      }
+   }
+
+   /**
+    * Stops the background thread after the promotion in progress.  Marked
+    * instances not reached yet keep their waitlisted rows.
+    */
+   public void close() {
+      ScheduledExecutorService worker;
+      synchronized (this) {
+         worker = this._worker;
+         this._worker = null;
+         this._closed = true;
+      }
+      if (worker != null) {
+         worker.shutdown();
+         try {
+            worker.awaitTermination(10, TimeUnit.SECONDS);
+         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+         }
+      }
+   }
+
+   private Map<Integer, TreeSet<String>> queues() throws SQLException {
+      Map<Integer, TreeSet<String>> current = this._queues;
+      if (current != null) {
+         return current;
+      }
+      synchronized (this) {
+         if (this._queues == null) {
+            this._queues = load();
+         }
+         return this._queues;
+      }
+   }
+
+   // null once closed
+   private synchronized ScheduledExecutorService worker() {
+      if (this._worker == null && !this._closed) {
+         this._worker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "waitlist-promoter");
+            t.setDaemon(true);
+            return t;
+         });
+         if (SCAN_MS > 0) {
+            this._worker.scheduleWithFixedDelay(this::scan, SCAN_MS, SCAN_MS, TimeUnit.MILLISECONDS);
+         }
+      }
+      return this._worker;
+   }
+
+   private Map<Integer, TreeSet<String>> load() throws SQLException {
+      Map<Integer, TreeSet<String>> queues = new ConcurrentHashMap<Integer, TreeSet<String>>();
+      this._esql.executeQueryForEach(SqlStatement.WAITLIST_ALL, rs ->
+         queues.computeIfAbsent(rs.getInt(1), k -> new TreeSet<String>(BOOKING_ORDER)).add(rs.getString(2)));
+      return queues;
+   }
+
+   /*
+    * Runs on the worker when the sweep is on: reloads the waitlists and
+    * retries all of them.
+    */
+   private void scan() {
+      try {
+         Map<Integer, TreeSet<String>> queues = load();
+         this._queues = queues;
+         this._marked.addAll(queues.keySet());
+      } catch (SQLException e) {
+         // keep the queues we have; the next scan reloads them.
+      }
+      this._draining.set(true);
+      drain();
+   }
+
+   /*
+    * Runs on the worker: promotes the marked instances until none is left.
+    */
+   private void drain() {
+      this._draining.set(false);
+      for (Integer id : new ArrayList<Integer>(this._marked)) {
+         this._marked.remove(id);
+         try {
+            while (promote(id) == BATCH_ROWS) {
+               // a full batch: there may be more seats and more waiting.
+            }
+         } catch (SQLException e) {
+            // picked up again by the next scan.
+         }
+      }
+   }
+
+   /*
+    * Promotes the head of one waitlist into the seats it can take.
+    *
+    * @return how many reservations were looked at
+    */
+   private int promote(int flightInstanceID) throws SQLException {
+      TreeSet<String> queue = this._queues.get(flightInstanceID);
+      if (queue == null) {
+         return 0;
+      }
+      List<String> head = new ArrayList<String>();
+      synchronized (queue) {
+         for (String reservationID : queue) {
+            if (head.size() == BATCH_ROWS) {
+               break;
+            }
+            head.add(reservationID);
+         }
+      }
+      if (head.isEmpty()) {
+         return 0;
+      }
+      Promotion done = this._esql.executeTransaction(() -> {
+         // the lock and count of book_seats
+         this._esql.executeQueryAndReturnResult(SqlStatement.SEAT_LOCK, flightInstanceID);
+         List<SeatInventory.Seats> counts =
+            this._esql.executeQueryAndMap(SqlStatement.SEAT_COUNT_BY_ID, SeatInventory::seatsOf, flightInstanceID);
+         int free = counts.isEmpty() ? 0 : Math.max(0, Math.min(head.size(), counts.get(0).available()));
+         List<String> candidates = head.subList(0, free);
+         List<Object[]> rows = new ArrayList<Object[]>(candidates.size());
+         for (String reservationID : candidates) {
+            rows.add(new Object[] { reservationID });
+         }
+         int count = 0;
+         if (!rows.isEmpty()) {
+            for (int updated : this._esql.executeBatch(SqlStatement.RESERVATION_PROMOTE, rows)) {
+               count += updated > 0 ? 1 : 0;
+            }
+         }
+         if (count == 0) {
+            return new Promotion(candidates, 0, 0L);
+         }
+         this._esql.executeUpdate(SqlStatement.SEAT_DELTA_INSERT, flightInstanceID, count);
+         long txid = this._esql.executeQueryAndMap(SqlStatement.CURRENT_TXID, rs -> rs.getLong(1)).get(0);
+         return new Promotion(candidates, count, txid);
+      });
+      synchronized (queue) {
+         queue.removeAll(done.candidates);
+      }
+      if (done.promoted > 0) {
+         this._esql.seats().sold(flightInstanceID, done.promoted, done.txid);
+         this._esql.columns().seatsSold(flightInstanceID, done.promoted);
+      }
+      return done.candidates.size();
+   }//end promote
+}//end WaitlistPromoter
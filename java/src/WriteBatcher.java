@@ -0,0 +1,238 @@
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Group commit for the Repair and MaintenanceRequest rows logged by
+ * feature17 and feature18.
+ *
+ * A write is checked against the reference tables in memory, queued, and
+ * the caller waits until it is committed.  The queue is flushed as one
+ * composite statement (MAINTENANCE_WRITE), a single round trip that
+ * commits all or nothing, when it holds BATCH_ROWS writes, or
+ * MAX_DELAY_MS after the first write arrived, whichever comes first.  So
+ * many sessions logging at the same time (a hangar uploading a shift
+ * through BatchRunner, or the menu server) share one commit instead of
+ * paying one each, and a lone write waits at most MAX_DELAY_MS longer.
+ *
+ * When a batch fails, its writes are retried one by one so only the
+ * offending write reports the error.
+ *
+ * The statement of a batch with repairs also moves Plane.LastRepairDate
+ * forward to the latest repair of each plane, and every committed row is
+ * added to the MaintenanceTimeline and the MaintenanceMatcher.
+ */
+public class WriteBatcher {
+
+   // writes that trigger a flush at once
+   private static final int BATCH_ROWS = Integer.getInteger("airline.writes.batchRows", 200);
+
+   // longest a queued write waits for more writes to share its commit
+   private static final long MAX_DELAY_MS = Long.getLong("airline.writes.maxDelayMs", 20L);
+
+   // one queued row and, once flushed, its outcome
+   private static final class Write {
+      final MaintenanceTimeline.Event event;
+      private boolean _done = false;
+      private SQLException _failure = null;
+
+      Write(MaintenanceTimeline.Event event) {
+         this.event = event;
+      }
+
+      synchronized void finish(SQLException failure) {
+         this._failure = failure;
+         this._done = true;
+         notifyAll();
+      }
+
+      synchronized void await() throws SQLException {
+         boolean interrupted = false;
+         while (!this._done) {
+            try {
+               wait();
+            } catch (InterruptedException e) {
+               // the write is already queued; wait for its outcome anyway
+               interrupted = true;
+            }
+         }
+         if (interrupted) {
+            Thread.currentThread().interrupt();
+         }
+         if (this._failure != null) {
+            throw this._failure;
+         }
+      }
+   }//end Write
+
+   private final AirlineManagement _esql;
+   private final ScheduledExecutorService _flusher;
+   private List<Write> _pending = new ArrayList<Write>();
+   private boolean _scheduled = false;
+   private boolean _closed = false;
+
+   public WriteBatcher(AirlineManagement esql) {
+      this._esql = esql;
+      this._flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+         Thread t = new Thread(r, "write-batcher");
+         t.setDaemon(true);
+         return t;
+      });
+   }
+
+   /**
+    * Logs a repair and returns once it is committed.
+    *
+    * @throws java.sql.SQLException when the plane or technician does not
+    *         exist or the INSERT fails
+    */
+   public void repair(int repairID, String planeID, String repairCode, String repairDate, String technicianID)
+         throws SQLException {
+      ReferenceCache references = this._esql.references();
+      if (!references.planeExists(planeID)) {
+         throw new SQLException("Plane " + planeID + " does not exist");
+      }
+      if (!references.technicianExists(technicianID)) {
+         throw new SQLException("Technician " + technicianID + " does not exist");
+      }
+      write(MaintenanceTimeline.Event.repair(repairID, planeID, repairCode, date(repairDate), technicianID));
+   }
+
+   /**
+    * Logs a maintenance request and returns once it is committed.
+    *
+    * @throws java.sql.SQLException when the plane or pilot does not exist
+    *         or the INSERT fails
+    */
+   public void request(int requestID, String planeID, String repairCode, String requestDate, String pilotID)
+         throws SQLException {
+      ReferenceCache references = this._esql.references();
+      if (!references.planeExists(planeID)) {
+         throw new SQLException("Plane " + planeID + " does not exist");
+      }
+      if (!references.pilotExists(pilotID)) {
+         throw new SQLException("Pilot " + pilotID + " does not exist");
+      }
+      write(MaintenanceTimeline.Event.request(requestID, planeID, repairCode, date(requestDate), pilotID));
+   }
+
+   private static LocalDate date(String value) throws SQLException {
+      try {
+         return LocalDate.parse(value.trim());
+      } catch (DateTimeParseException e) {
+         throw new SQLException("Invalid date " + value + ", expected YYYY-MM-DD");
+      }
+   }
+
+   /**
+    * Commits what is queued and stops the flush thread.  Writes arriving
+    * afterwards fail.
+    */
+   public void close() {
+      synchronized (this) {
+         if (this._closed) {
+            return;
+         }
+         this._closed = true;
+      }
+      this._flusher.execute(this::flush);
+      this._flusher.shutdown();
+      try {
+         this._flusher.awaitTermination(1, TimeUnit.MINUTES);
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+   }
+
+   private void write(MaintenanceTimeline.Event event) throws SQLException {
+      Write write = new Write(event);
+      synchronized (this) {
+         if (this._closed) {
+            throw new SQLException("The database connection is closing");
+         }
+         this._pending.add(write);
+         if (this._pending.size() >= BATCH_ROWS) {
+            this._flusher.execute(this::flush);
+         } else if (!this._scheduled) {
+            this._scheduled = true;
+            this._flusher.schedule(this::flush, MAX_DELAY_MS, TimeUnit.MILLISECONDS);
+         }
+      }
+      write.await();
+   }
+
+   /*
+    * Runs on the flush thread: commits everything queued so far.
+    */
+   private void flush() {
+      List<Write> batch;
+      synchronized (this) {
+         batch = this._pending;
+         this._pending = new ArrayList<Write>();
+         this._scheduled = false;
+      }
+      if (batch.isEmpty()) {
+         return;
+      }
+      try {
+         commit(batch);
+         for (Write write : batch) {
+            committed(write);
+            write.finish(null);
+         }
+      } catch (SQLException e) {
+         // one bad row fails the whole batch; find it by writing them singly
+         for (Write write : batch) {
+            try {
+               commit(Collections.singletonList(write));
+               committed(write);
+               write.finish(null);
+            } catch (SQLException single) {
+               write.finish(single);
+            }
+         }
+      } catch (RuntimeException e) {
+         for (Write write : batch) {
+            write.finish(new SQLException("Write failed: " + e));
+         }
+      }
+   }//end flush
+
+   private void committed(Write write) {
+      this._esql.timeline().added(write.event);
+      this._esql.matcher().added(write.event);
+      if (write.event.kind == MaintenanceTimeline.Event.Kind.REPAIR) {
+         // MAINTENANCE_WRITE moved Plane.LastRepairDate with it
+         this._esql.references().repaired(write.event.planeID, write.event.date);
+      }
+   }
+
+   private void commit(List<Write> batch) throws SQLException {
+      // one list per placeholder of MAINTENANCE_WRITE: five for the
+      // repairs, then five for the requests
+      List<List<Object>> columns = new ArrayList<List<Object>>();
+      for (int c = 0; c < 10; c++) {
+         columns.add(new ArrayList<Object>(batch.size()));
+      }
+      for (Write write : batch) {
+         MaintenanceTimeline.Event e = write.event;
+         int first = e.kind == MaintenanceTimeline.Event.Kind.REPAIR ? 0 : 5;
+         columns.get(first).add(e.id);
+         columns.get(first + 1).add(e.planeID);
+         columns.get(first + 2).add(e.repairCode);
+         columns.get(first + 3).add(e.date);
+         columns.get(first + 4).add(e.personID);
+      }
+      Object[] params = new Object[columns.size()];
+      for (int c = 0; c < params.length; c++) {
+         params[c] = SqlStatement.array(columns.get(c));
+      }
+      this._esql.executeComposite(SqlStatement.MAINTENANCE_WRITE, params);
+   }
+}//end WriteBatcher
@@ -1,14 +1,9 @@
 #!/bin/bash
-cs166_psql $USER'_project_phase_3_DB' < sql/src/create_tables.sql
-#psql -h localhost -p $PGPORT $DB_NAME < create_tables.sql > /dev/null
-sleep 5
-
-echo "Query time without indexes"
-cat <(echo '\timing') sql/src/queries.sql | psql -h localhost -p $PGPORT $USER'_project_phase_3_DB' | grep Time | awk -F "Time" '{print "Query" FNR $2;}'
+# usage: source sql/scripts/measure.sh [output directory]
+# creates the indexes of create_indexes.sql, then captures the plans of the
+# feature queries and validates further indexes (see IndexAdvisor); the
+# plans and report.txt end up in the output directory.
 
 psql -h localhost -p $PGPORT $USER'_project_phase_3_DB' < sql/src/create_indexes.sql > /dev/null
-cs166_psql $USER'_project_phase_3_DB' < sql/src/create_tables.sql
-
-echo "Query time with indexes"
-cat <(echo '\timing') sql/src/queries.sql |psql -h localhost -p $PGPORT $USER'_project_phase_3_DB' | grep Time | awk -F "Time" '{print "Query" FNR $2;}'
 
+source java/scripts/advise.sh "${1:-sql/plans}"
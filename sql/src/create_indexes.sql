@@ -10,17 +10,22 @@ DROP INDEX IF EXISTS customer_id_index;
 DROP INDEX IF EXISTS reservation_customer_index;
 DROP INDEX IF EXISTS reservation_flight_index;
 DROP INDEX IF EXISTS plane_id_index;
-
+DROP INDEX IF EXISTS flight_instance_date_index;
+DROP INDEX IF EXISTS schedule_flight_day_index;
+DROP INDEX IF EXISTS flight_instance_change_index;
+-- the primary keys already index PlaneID, FlightNumber, CustomerID, PilotID
+-- and TechnicianID; the old copies above are only dropped
 
 CREATE INDEX repair_plane_date_index ON Repair (PlaneID, RepairDate);
 CREATE INDEX repair_tech_id_index ON Repair (TechnicianID);
 CREATE INDEX mr_pilot_date_index ON MaintenanceRequest (PilotID, RequestDate);
 CREATE INDEX mr_plane_code_date_index ON MaintenanceRequest (PlaneID, RepairCode, RequestDate);
-CREATE INDEX flight_number_index ON Flight (FlightNumber);
 CREATE INDEX flight_instance_number_date_index ON FlightInstance (FlightNumber, FlightDate);
-CREATE INDEX pilot_id_index ON Pilot (PilotID);
-CREATE INDEX tech_id_index ON Technician (TechnicianID);
-CREATE INDEX customer_id_index ON Customer (CustomerID);
+-- feature4 lists every flight of a day and joins each to its departure
+CREATE INDEX flight_instance_date_index ON FlightInstance (FlightDate, FlightNumber, FlightDay);
+CREATE INDEX schedule_flight_day_index ON Schedule (FlightNumber, DayNumber);
+-- the rows FlightColumns reads on every refresh
+CREATE INDEX flight_instance_change_index ON FlightInstance (ChangeTxid);
 CREATE INDEX reservation_customer_index ON Reservation (CustomerID);
-CREATE INDEX reservation_flight_index ON Reservation (FlightInstanceID, Status);
-CREATE INDEX plane_id_index ON Plane (PlaneID);
\ No newline at end of file
+-- also the keyset order of the feature5 pages (PassengerManifest)
+CREATE INDEX reservation_flight_index ON Reservation (FlightInstanceID, (COALESCE(Status, '')), ReservationID);
\ No newline at end of file
@@ -1,4 +1,5 @@
 -- Drop existing tables
+DROP TABLE IF EXISTS SeatDelta;
 DROP TABLE IF EXISTS MaintenanceRequest;
 DROP TABLE IF EXISTS Repair;
 DROP TABLE IF EXISTS Technician;
@@ -10,6 +11,11 @@ DROP TABLE IF EXISTS Flight;
 DROP TABLE IF EXISTS Plane;
 DROP TABLE IF EXISTS Pilot;
 DROP TABLE IF EXISTS Users;
+DROP TABLE IF EXISTS BulkLoadProgress;
+DROP SEQUENCE IF EXISTS customer_id_seq;
+DROP SEQUENCE IF EXISTS reservation_id_seq;
+DROP SEQUENCE IF EXISTS repair_id_seq;
+DROP SEQUENCE IF EXISTS request_id_seq;
 
 -- Plane Table
 CREATE TABLE Plane (
@@ -36,9 +42,26 @@ CREATE TABLE Schedule (
     DayOfWeek TEXT,
     DepartureTime TIME,
     ArrivalTime TIME,
+    -- DayOfWeek as a number, 1 = Monday .. 7 = Sunday (ISO); set by
+    -- schedule_day, so the CSV files and loaders keep the day names
+    DayNumber SMALLINT,
     FOREIGN KEY (FlightNumber) REFERENCES Flight(FlightNumber)
 );
 
+-- a trigger rather than a generated column, which needs PostgreSQL 12
+CREATE OR REPLACE FUNCTION schedule_day() RETURNS trigger AS $$
+BEGIN
+    NEW.DayNumber := CASE NEW.DayOfWeek
+        WHEN 'Monday' THEN 1 WHEN 'Tuesday' THEN 2 WHEN 'Wednesday' THEN 3
+        WHEN 'Thursday' THEN 4 WHEN 'Friday' THEN 5 WHEN 'Saturday' THEN 6
+        WHEN 'Sunday' THEN 7 END;
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER schedule_day BEFORE INSERT OR UPDATE ON Schedule
+    FOR EACH ROW EXECUTE PROCEDURE schedule_day();
+
 -- FlightInstance Table
 CREATE TABLE FlightInstance (
     FlightInstanceID INTEGER PRIMARY KEY,
@@ -50,9 +73,27 @@ CREATE TABLE FlightInstance (
     SeatsSold INTEGER,
     NumOfStops INTEGER,
     TicketCost DECIMAL(10,2),
+    -- weekday of FlightDate, numbered like Schedule.DayNumber; set by
+    -- flight_instance_touch
+    FlightDay SMALLINT,
+    -- the transaction that last wrote the row, set by flight_instance_touch
+    ChangeTxid BIGINT,
     FOREIGN KEY (FlightNumber) REFERENCES Flight(FlightNumber)
 );
 
+-- stamps every written FlightInstance row so FlightColumns can read just
+-- the rows changed since its last refresh, and keeps its weekday
+CREATE OR REPLACE FUNCTION flight_instance_touch() RETURNS trigger AS $$
+BEGIN
+    NEW.FlightDay := CAST(EXTRACT(ISODOW FROM NEW.FlightDate) AS SMALLINT);
+    NEW.ChangeTxid := txid_current();
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER flight_instance_touch BEFORE INSERT OR UPDATE ON FlightInstance
+    FOR EACH ROW EXECUTE PROCEDURE flight_instance_touch();
+
 -- Customer Table
 CREATE TABLE Customer (
     CustomerID INTEGER PRIMARY KEY,
@@ -70,7 +111,7 @@ CREATE TABLE Reservation (
     ReservationID TEXT PRIMARY KEY,
     CustomerID INTEGER,
     FlightInstanceID INTEGER,
-    Status TEXT CHECK(Status IN ('reserved', 'waitlist', 'flown')),
+    Status TEXT CHECK(Status IN ('reserved', 'waitlist', 'flown', 'cancelled')),
     FOREIGN KEY (CustomerID) REFERENCES Customer(CustomerID),
     FOREIGN KEY (FlightInstanceID) REFERENCES FlightInstance(FlightInstanceID)
 );
@@ -114,4 +155,85 @@ CREATE TABLE Users (
    username TEXT UNIQUE NOT NULL,
    password TEXT NOT NULL,
    role text NOT NULL
-);
\ No newline at end of file
+);
+
+-- ID sequences, advanced past the loaded data at the end of load_data.sql.
+-- Each nextval reserves a block of 50 IDs that the application hands out
+-- from memory; the increment must match IdAllocator.BLOCK_SIZE.
+CREATE SEQUENCE customer_id_seq INCREMENT BY 50;
+-- numeric part of ReservationID ('R' || lpad(n, 4, '0'))
+CREATE SEQUENCE reservation_id_seq INCREMENT BY 50;
+CREATE SEQUENCE repair_id_seq INCREMENT BY 50;
+CREATE SEQUENCE request_id_seq INCREMENT BY 50;
+
+-- How far the Java bulk loader (BulkLoader) got with each data file, so an
+-- interrupted load resumes where it stopped.  Updated in the same
+-- transaction as the rows it counts.
+CREATE TABLE BulkLoadProgress (
+    TableName TEXT,
+    FileName TEXT,
+    FileSize BIGINT,
+    RowsLoaded BIGINT,
+    Finished BOOLEAN,
+    PRIMARY KEY (TableName, FileName, FileSize)
+);
+
+-- Seats sold by committed bookings that SeatInventory has not yet added to
+-- FlightInstance.SeatsSold.  Bookings only insert here, so they never wait
+-- on a FlightInstance row lock; the application moves the rows into
+-- SeatsSold every second (SEAT_DELTA_APPLY).
+CREATE TABLE SeatDelta (
+    FlightInstanceID INTEGER NOT NULL,
+    Seats INTEGER NOT NULL,
+    FOREIGN KEY (FlightInstanceID) REFERENCES FlightInstance(FlightInstanceID)
+);
+
+-- Writes a group of bookings (BookingEngine): the customers and their
+-- reservations, one array element per row.  Several processes book the same
+-- flights, so the seats are given out here: every instance booked is locked
+-- (an advisory lock on its FlightInstanceID, also taken by the waitlist
+-- promotion), and its free seats, SeatsTotal less SeatsSold and SeatDelta,
+-- go to its reservations in array order; the others are waitlisted.  The
+-- seats given out are added to SeatDelta, and the reservations that got one
+-- are returned.
+CREATE OR REPLACE FUNCTION book_seats(
+    p_customer_ids INTEGER[], p_first_names TEXT[], p_last_names TEXT[], p_genders TEXT[],
+    p_dobs DATE[], p_addresses TEXT[], p_phones TEXT[], p_zips TEXT[],
+    p_reservation_ids TEXT[], p_reservation_customers INTEGER[], p_reservation_instances INTEGER[])
+RETURNS SETOF TEXT AS $$
+DECLARE
+    v_instance INTEGER;
+BEGIN
+    -- in FlightInstanceID order, so two groups never wait on each other
+    FOREACH v_instance IN ARRAY ARRAY(SELECT DISTINCT i FROM UNNEST(p_reservation_instances) i ORDER BY i) LOOP
+        PERFORM pg_advisory_xact_lock(v_instance);
+    END LOOP;
+    INSERT INTO Customer (CustomerID, FirstName, LastName, Gender, DOB, Address, Phone, Zip)
+    SELECT * FROM UNNEST(p_customer_ids, p_first_names, p_last_names, p_genders,
+                         p_dobs, p_addresses, p_phones, p_zips);
+    -- a new statement, so the free seats count everything committed
+    -- before the locks
+    INSERT INTO Reservation (ReservationID, CustomerID, FlightInstanceID, Status)
+    SELECT r.ReservationID, r.CustomerID, r.FlightInstanceID,
+           CASE WHEN r.Rank <= f.Free THEN 'reserved' ELSE 'waitlist' END
+    FROM (SELECT u.ReservationID, u.CustomerID, u.FlightInstanceID,
+                 ROW_NUMBER() OVER (PARTITION BY u.FlightInstanceID ORDER BY u.N) AS Rank
+          FROM UNNEST(p_reservation_ids, p_reservation_customers, p_reservation_instances)
+               WITH ORDINALITY AS u(ReservationID, CustomerID, FlightInstanceID, N)) r
+    LEFT JOIN (SELECT fi.FlightInstanceID,
+                      COALESCE(fi.SeatsTotal, 0) - COALESCE(fi.SeatsSold, 0)
+                      - (SELECT COALESCE(SUM(s.Seats), 0) FROM SeatDelta s WHERE s.FlightInstanceID = fi.FlightInstanceID) AS Free
+               FROM FlightInstance fi
+               WHERE fi.FlightInstanceID = ANY(p_reservation_instances)) f
+    ON f.FlightInstanceID = r.FlightInstanceID;
+    INSERT INTO SeatDelta (FlightInstanceID, Seats)
+    SELECT res.FlightInstanceID, COUNT(*)
+    FROM Reservation res
+    WHERE res.ReservationID = ANY(p_reservation_ids) AND res.Status = 'reserved'
+    GROUP BY res.FlightInstanceID;
+    RETURN QUERY
+    SELECT res.ReservationID
+    FROM Reservation res
+    WHERE res.ReservationID = ANY(p_reservation_ids) AND res.Status = 'reserved';
+END;
+$$ LANGUAGE plpgsql;
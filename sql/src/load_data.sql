@@ -4,9 +4,9 @@
 
 \copy Flight FROM 'data/Flight.csv' WITH DELIMITER ',' CSV HEADER; 
 
-\copy Schedule FROM 'data/Schedule.csv' WITH DELIMITER ',' CSV HEADER; 
+\copy Schedule (ScheduleID, FlightNumber, DayOfWeek, DepartureTime, ArrivalTime) FROM 'data/Schedule.csv' WITH DELIMITER ',' CSV HEADER; 
 
-\copy FlightInstance FROM 'data/FlightInstance.csv' WITH DELIMITER ',' CSV HEADER; 
+\copy FlightInstance (FlightInstanceID, FlightNumber, FlightDate, DepartedOnTime, ArrivedOnTime, SeatsTotal, SeatsSold, NumOfStops, TicketCost) FROM 'data/FlightInstance.csv' WITH DELIMITER ',' CSV HEADER; 
 
 \copy Customer FROM 'data/Customer.csv' WITH DELIMITER ',' CSV HEADER; 
 
@@ -20,3 +20,12 @@
 
 \copy MaintenanceRequest FROM 'data/MaintenanceRequest.csv' WITH DELIMITER ',' CSV HEADER; 
 
+/* Move the ID sequences past the loaded rows*/
+
+SELECT setval('customer_id_seq', COALESCE((SELECT MAX(CustomerID) FROM Customer), 0) + 1, false);
+
+SELECT setval('reservation_id_seq', COALESCE((SELECT MAX(CAST(SUBSTRING(ReservationID FROM 2) AS INTEGER)) FROM Reservation), 0) + 1, false);
+
+SELECT setval('repair_id_seq', COALESCE((SELECT MAX(RepairID) FROM Repair), 0) + 1, false);
+
+SELECT setval('request_id_seq', COALESCE((SELECT MAX(RequestID) FROM MaintenanceRequest), 0) + 1, false);
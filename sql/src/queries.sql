@@ -32,15 +32,7 @@ VALUES ('R9999', 999, 1001, 'reserved');
 SELECT DayOfWeek, DepartureTime, ArrivalTime 
 FROM Schedule 
 WHERE flightNumber = 'F100' 
-ORDER BY CASE 
-  WHEN DayOfWeek = 'Monday' THEN 1 
-  WHEN DayOfWeek = 'Tuesday' THEN 2 
-  WHEN DayOfWeek = 'Wednesday' THEN 3 
-  WHEN DayOfWeek = 'Thursday' THEN 4 
-  WHEN DayOfWeek = 'Friday' THEN 5 
-  WHEN DayOfWeek = 'Saturday' THEN 6 
-  WHEN DayOfWeek = 'Sunday' THEN 7 
-END;
+ORDER BY DayNumber;
 
 SELECT SeatsTotal - SeatsSold AS seats_available, SeatsSold AS seats_sold 
 FROM FlightInstance 
@@ -64,10 +56,10 @@ AND FlightDate = '2025-06-10';
 
 SELECT fi.FlightNumber, f.DepartureCity, f.ArrivalCity, s.DepartureTime, s.ArrivalTime 
 FROM FlightInstance fi 
-JOIN Schedule s ON fi.FlightNumber = s.FlightNumber 
+JOIN Schedule s ON fi.FlightNumber = s.FlightNumber AND fi.FlightDay = s.DayNumber 
 JOIN Flight f ON fi.FlightNumber = f.FlightNumber 
 WHERE fi.FlightDate = '2025-06-10' 
-AND TRIM(TO_CHAR(fi.FlightDate, 'Day')) = s.DayOfWeek;
+ORDER BY s.DepartureTime, fi.FlightNumber;
 
 SELECT FirstName, LastName, Status 
 FROM Customer c 
@@ -121,13 +113,13 @@ FROM Flight f
 JOIN Plane p ON f.PlaneID = p.PlaneID 
 WHERE FlightNumber = 'F100';
 
-SELECT MAX(CustomerID) FROM Customer;
+SELECT nextval('customer_id_seq');
 
-SELECT SeatsTotal, SeatsSold FROM FlightInstance WHERE FlightInstanceID = 1001;
+UPDATE FlightInstance SET SeatsSold = SeatsSold + 1 WHERE FlightInstanceID = 1001 AND SeatsSold < SeatsTotal;
 
-UPDATE FlightInstance SET SeatsSold = SeatsSold + 1 WHERE FlightInstanceID = 1001;
+SELECT 1 FROM FlightInstance WHERE FlightInstanceID = 1001;
 
-SELECT MAX(ReservationID) FROM Reservation;
+SELECT nextval('reservation_id_seq');
 
 /*technician & pilot queries 28-36*/
 SELECT mr.RepairCode AS repair_code, mr.RequestDate AS request_date 
@@ -146,14 +138,26 @@ SELECT 1 FROM Plane WHERE PlaneID = 'PL002';
 
 SELECT 1 FROM Technician WHERE TechnicianID = 'T999';
 
-SELECT MAX(RepairID) FROM Repair;
-
-INSERT INTO Repair (RepairID, PlaneID, RepairCode, RepairDate, TechnicianID)
-VALUES (2000, 'PL002', 'RC001', DATE '2025-04-06', 'T999');
+SELECT nextval('repair_id_seq');
 
 SELECT 1 FROM Pilot WHERE PilotID = 'P002';
 
-SELECT MAX(RequestID) FROM MaintenanceRequest;
-
-INSERT INTO MaintenanceRequest (RequestID, PlaneID, RepairCode, RequestDate, PilotID)
-VALUES (3000, 'PL002', 'RC001', DATE '2025-04-06', 'P002');
+SELECT nextval('request_id_seq');
+
+/*repairs and requests are written together, one statement per group*/
+WITH repairs AS (
+    INSERT INTO Repair (RepairID, PlaneID, RepairCode, RepairDate, TechnicianID)
+    SELECT * FROM UNNEST(CAST('{2000}' AS INTEGER[]), CAST('{PL002}' AS TEXT[]), CAST('{RC001}' AS TEXT[]),
+                         CAST('{2025-04-06}' AS DATE[]), CAST('{T999}' AS TEXT[]))
+    RETURNING PlaneID, RepairDate),
+requests AS (
+    INSERT INTO MaintenanceRequest (RequestID, PlaneID, RepairCode, RequestDate, PilotID)
+    SELECT * FROM UNNEST(CAST('{3000}' AS INTEGER[]), CAST('{PL002}' AS TEXT[]), CAST('{RC001}' AS TEXT[]),
+                         CAST('{2025-04-06}' AS DATE[]), CAST('{P002}' AS TEXT[]))
+    RETURNING 1),
+planes AS (
+    UPDATE Plane p SET LastRepairDate = GREATEST(p.LastRepairDate, l.RepairDate)
+    FROM (SELECT PlaneID, MAX(RepairDate) AS RepairDate FROM repairs GROUP BY PlaneID) l
+    WHERE p.PlaneID = l.PlaneID
+    RETURNING 1)
+SELECT (SELECT COUNT(*) FROM repairs), (SELECT COUNT(*) FROM requests), (SELECT COUNT(*) FROM planes);